@@ -12,37 +12,65 @@ import org.apache.arrow.vector.types.pojo.Schema;
 import org.duckdb.DuckDBConnection;
 import org.duckdb.DuckDBDriver;
 import org.duckdb.DuckDBResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.RecordComponent;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public enum ConnectionPool {
     INSTANCE;
 
     private static final String DUCKDB_PROPERTY_FILENAME = "duckdb.properties";
+    /**
+     * Comma separated extensions which are loaded in the background once the pool is created
+     */
+    public static final String WARM_UP_EXTENSIONS_PROPERTY = "warm_up.extensions";
+    /**
+     * Path of a file with one sql per line which is parsed and prepared in the background once the pool is created
+     */
+    public static final String WARM_UP_WORKLOAD_PROPERTY = "warm_up.workload";
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
     private final DuckDBConnection connection;
 
+    // Warm up properties are not DuckDB settings hence they are removed before the database is opened
+    private final Properties warmUpProperties = new Properties();
+
     private final ArrayList<String> preGetConnectionStatements = new ArrayList<>();
 
+    private volatile boolean warmedUp = false;
+
+    private volatile long warmUpMillis = -1;
+
     static {
         try {
             Class.forName("org.duckdb.DuckDBDriver");
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
+        warmUpAsync(INSTANCE.warmUpProperties);
     }
 
     ConnectionPool() {
         try {
             final Properties properties = loadProperties();
+            for (String key : List.of(WARM_UP_EXTENSIONS_PROPERTY, WARM_UP_WORKLOAD_PROPERTY)) {
+                Object value = properties.remove(key);
+                if (value != null) {
+                    warmUpProperties.put(key, value);
+                }
+            }
             if (!properties.contains(DuckDBDriver.JDBC_STREAM_RESULTS)) {
                 properties.setProperty(DuckDBDriver.JDBC_STREAM_RESULTS, String.valueOf(true));
             }
@@ -404,6 +432,110 @@ public enum ConnectionPool {
         return preGetConnectionStatements;
     }
 
+    /**
+     * Warm up the pool so that first request does not pay for extension install/load and first use cost.
+     * Extensions are loaded in the database and hence are visible to all the connections returned by getConnection().
+     * Every extension and sql is warmed up on its own, failures are logged and do not stop the warm up.
+     * It also runs in the background when the pool is created if {@link #WARM_UP_EXTENSIONS_PROPERTY} or
+     * {@link #WARM_UP_WORKLOAD_PROPERTY} is set in duckdb.properties.
+     * @param extensions extensions to install and load. For example httpfs, delta, json, tpcds
+     * @param workload sqls which are parsed and prepared (not executed). DuckDB does not cache the prepared
+     *                 statements hence this only warms the parser, the binding of the catalog and the autoload of
+     *                 the extensions used by the sqls. Typical use case will be the queries fired right after a deployment.
+     * @return number of extensions and sqls which failed
+     */
+    public static int warmUp(List<String> extensions, List<String> workload) {
+        long start = System.currentTimeMillis();
+        int failures = 0;
+        try (DuckDBConnection connection = getConnection()) {
+            for (String extension : extensions) {
+                try {
+                    loadExtension(connection, extension);
+                } catch (RuntimeException e) {
+                    failures++;
+                    logger.atWarn().log("Warm up could not load extension {} : {}", extension, e.getMessage());
+                }
+            }
+            for (String sql : workload) {
+                try {
+                    Transformations.parseToTree(connection, sql);
+                    connection.prepareStatement(sql).close();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    failures++;
+                    logger.atWarn().log("Warm up could not prepare {} : {}", sql, e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error warming up connection pool", e);
+        }
+        INSTANCE.warmUpMillis = System.currentTimeMillis() - start;
+        INSTANCE.warmedUp = true;
+        return failures;
+    }
+
+    /**
+     *
+     * @param extensions extensions to install and load
+     * @param workload sqls to parse and prepare
+     * @return future with the number of failures which is completed once warm up is finished.
+     * It completes exceptionally only if a connection can not be created.
+     * Runs the warm up in the background. Readiness can also be checked with isWarmedUp()
+     */
+    public static CompletableFuture<Integer> warmUpAsync(List<String> extensions, List<String> workload) {
+        return CompletableFuture.supplyAsync(() -> warmUp(extensions, workload));
+    }
+
+    /**
+     * Warm up configured with {@link #WARM_UP_EXTENSIONS_PROPERTY} and {@link #WARM_UP_WORKLOAD_PROPERTY}
+     * @return future of the warm up or null if nothing is configured
+     */
+    static CompletableFuture<Integer> warmUpAsync(Properties properties) {
+        String extensions = properties.getProperty(WARM_UP_EXTENSIONS_PROPERTY, "");
+        String workloadFile = properties.getProperty(WARM_UP_WORKLOAD_PROPERTY, "");
+        if (extensions.isBlank() && workloadFile.isBlank()) {
+            return null;
+        }
+        List<String> workload = List.of();
+        if (!workloadFile.isBlank()) {
+            try {
+                workload = Files.readAllLines(Path.of(workloadFile.trim())).stream()
+                        .filter(line -> !line.isBlank()).toList();
+            } catch (IOException e) {
+                logger.atWarn().log("Warm up could not read workload {} : {}", workloadFile, e.getMessage());
+            }
+        }
+        return warmUpAsync(Arrays.stream(extensions.split(",")).map(String::trim).filter(e -> !e.isEmpty()).toList(),
+                workload);
+    }
+
+    /**
+     *
+     * @param connection
+     * @param extension name of the extension
+     * Built-in and already installed extensions are only loaded, the rest are installed first.
+     */
+    public static void loadExtension(Connection connection, String extension) {
+        try {
+            execute(connection, String.format("LOAD %s", extension));
+        } catch (RuntimeException e) {
+            executeBatch(connection, new String[]{
+                    String.format("INSTALL %s", extension),
+                    String.format("LOAD %s", extension)});
+        }
+    }
+
+    public static boolean isWarmedUp() {
+        return INSTANCE.warmedUp;
+    }
+
+    /**
+     *
+     * @return time taken by the last warm up in milliseconds or -1 if the pool is not warmed up yet
+     */
+    public static long getWarmUpMillis() {
+        return INSTANCE.warmUpMillis;
+    }
+
     private static Properties loadProperties() {
         Properties properties = new Properties();
 
@@ -15,6 +15,8 @@ public class ExpressionConstants {
     public static final String COMPARE_TYPE_GREATERTHANOREQUALTO = "COMPARE_GREATERTHANOREQUALTO";
     public static final String COMPARE_TYPE_LESSTHAN = "COMPARE_LESSTHAN";
     public static final String COMPARE_TYPE_GREATERTHAN = "COMPARE_GREATERTHAN";
+    public static final String COMPARE_TYPE_NOTEQUAL = "COMPARE_NOTEQUAL";
+    public static final String OPERATOR_TYPE_NOT = "OPERATOR_NOT";
     public static final String CASE_CLASS = "CASE";
     public static final String CASE_TYPE_EXPR = "CASE_EXPR";
     public static final String CAST_CLASS = "CAST";
@@ -25,4 +27,6 @@ public class ExpressionConstants {
     public static final String SELECT_NODE_TYPE = "SELECT_NODE";
     public static final String FUNCTION_CLASS = "FUNCTION";
     public static final String FUNCTION_TYPE = "FUNCTION";
+    public static final String PARAMETER_CLASS = "PARAMETER";
+    public static final String PARAMETER_TYPE = "VALUE_PARAMETER";
 }
@@ -96,6 +96,31 @@ public class ExpressionFactory {
         return result;
     }
 
+    public static JsonNode notExpr(JsonNode child) {
+        ObjectNode result = withClassType("OPERATOR", ExpressionConstants.OPERATOR_TYPE_NOT);
+        ArrayNode arrayNode = new ArrayNode(JsonNodeFactory.instance);
+        arrayNode.add(child);
+        result.set("children", arrayNode);
+        return result;
+    }
+
+    public static JsonNode isNullExpr(JsonNode child) {
+        ObjectNode result = withClassType("OPERATOR", "OPERATOR_IS_NULL");
+        ArrayNode arrayNode = new ArrayNode(JsonNodeFactory.instance);
+        arrayNode.add(child);
+        result.set("children", arrayNode);
+        return result;
+    }
+
+    /**
+     * @param identifier 1 based position of the parameter, rendered as $identifier
+     */
+    public static JsonNode parameter(int identifier) {
+        ObjectNode result = withClassType(ExpressionConstants.PARAMETER_CLASS, ExpressionConstants.PARAMETER_TYPE);
+        result.put("identifier", String.valueOf(identifier));
+        return result;
+    }
+
     public static JsonNode createFunction(String name, String schema, String catalog, JsonNode children) {
         var orderBy = new ObjectNode(JsonNodeFactory.instance);
         orderBy.put("type", "ORDER_MODIFIER");
@@ -0,0 +1,244 @@
+package io.github.tanejagagan.sql.commons;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Compact list of files used for the results of the pruning.
+ * Directories are dictionary encoded, hence the base path and the partition directories are stored once per directory
+ * and not once per file. File names are stored as UTF-8 in one array, sizes and modification times in primitive arrays.
+ * {@link FileStatus} is created on every {@link #get(int)}, callers which keep the list should not keep its elements.
+ * <p>
+ * List supports add, insert, set, remove, sort and clear. It is not thread safe.
+ */
+public class FileStatusList extends AbstractList<FileStatus> implements RandomAccess {
+
+    private final List<String> directories;
+    private final Map<String, Integer> directoryIds;
+    private int[] directory;
+    private long[] sizes;
+    private long[] lastModified;
+    private int[] nameStarts;
+    private int[] nameLengths;
+    private byte[] names;
+    private int namesLength;
+    private int count;
+
+    public FileStatusList() {
+        this(16);
+    }
+
+    public FileStatusList(int initialCapacity) {
+        this.directories = new ArrayList<>();
+        this.directoryIds = new HashMap<>();
+        int capacity = Math.max(initialCapacity, 1);
+        this.directory = new int[capacity];
+        this.sizes = new long[capacity];
+        this.lastModified = new long[capacity];
+        this.nameStarts = new int[capacity];
+        this.nameLengths = new int[capacity];
+        this.names = new byte[capacity * 16];
+    }
+
+    public FileStatusList(List<FileStatus> files) {
+        this(files.size());
+        addAll(files);
+    }
+
+    @Override
+    public FileStatus get(int index) {
+        checkIndex(index);
+        String name = new String(names, nameStarts[index], nameLengths[index], StandardCharsets.UTF_8);
+        return new FileStatus(directories.get(directory[index]) + name, sizes[index], lastModified[index]);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean add(FileStatus fileStatus) {
+        add(fileStatus.fileName(), fileStatus.size(), fileStatus.lastModified());
+        return true;
+    }
+
+    /**
+     * Same as add(new FileStatus(fileName, size, lastModified)) without creating the FileStatus
+     */
+    public void add(String fileName, long size, long lastModified) {
+        if (count == sizes.length) {
+            grow();
+        }
+        store(count, fileName, size, lastModified);
+        count++;
+        modCount++;
+    }
+
+    /**
+     * Files after the index are shifted, same as {@link ArrayList#add(int, Object)}
+     */
+    @Override
+    public void add(int index, FileStatus fileStatus) {
+        if (index < 0 || index > count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        if (count == sizes.length) {
+            grow();
+        }
+        move(index, index + 1, count - index);
+        store(index, fileStatus.fileName(), fileStatus.size(), fileStatus.lastModified());
+        count++;
+        modCount++;
+    }
+
+    /**
+     * Name of the removed file is not reclaimed till the list is sorted
+     */
+    @Override
+    public FileStatus remove(int index) {
+        FileStatus previous = get(index);
+        move(index + 1, index, count - index - 1);
+        count--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        move(toIndex, fromIndex, count - toIndex);
+        count -= toIndex - fromIndex;
+        modCount++;
+    }
+
+    /**
+     * Remaining files are compacted in one pass. If the filter throws, the files which are not tested are kept.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super FileStatus> filter) {
+        int size = count;
+        int kept = 0;
+        int i = 0;
+        try {
+            for (; i < size; i++) {
+                if (!filter.test(get(i))) {
+                    move(i, kept, 1);
+                    kept++;
+                }
+            }
+        } finally {
+            move(i, kept, size - i);
+            kept += size - i;
+            if (kept != size) {
+                count = kept;
+                modCount++;
+            }
+        }
+        return kept != size;
+    }
+
+    /**
+     * Name of the replaced file is not reclaimed till the list is sorted
+     */
+    @Override
+    public FileStatus set(int index, FileStatus fileStatus) {
+        FileStatus previous = get(index);
+        store(index, fileStatus.fileName(), fileStatus.size(), fileStatus.lastModified());
+        return previous;
+    }
+
+    /**
+     * Sorted list is stored again, which also reclaims the names replaced by set
+     */
+    @Override
+    public void sort(Comparator<? super FileStatus> c) {
+        FileStatus[] files = toArray(new FileStatus[0]);
+        Arrays.sort(files, c);
+        clear();
+        for (FileStatus file : files) {
+            add(file);
+        }
+    }
+
+    @Override
+    public void clear() {
+        directories.clear();
+        directoryIds.clear();
+        namesLength = 0;
+        count = 0;
+        modCount++;
+    }
+
+    /**
+     * Release the unused capacity, for example once the pruning is complete
+     */
+    public void trimToSize() {
+        int capacity = Math.max(count, 1);
+        directory = Arrays.copyOf(directory, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        names = Arrays.copyOf(names, namesLength);
+    }
+
+    /**
+     * @return number of distinct directories of the files
+     */
+    public int directoryCount() {
+        return directories.size();
+    }
+
+    private void store(int index, String fileName, long size, long lastModified) {
+        int slash = fileName.lastIndexOf('/') + 1;
+        String dir = fileName.substring(0, slash);
+        Integer id = directoryIds.get(dir);
+        if (id == null) {
+            id = directories.size();
+            directories.add(dir);
+            directoryIds.put(dir, id);
+        }
+        byte[] name = fileName.substring(slash).getBytes(StandardCharsets.UTF_8);
+        if (namesLength + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + name.length, names.length * 2));
+        }
+        System.arraycopy(name, 0, names, namesLength, name.length);
+        nameStarts[index] = namesLength;
+        nameLengths[index] = name.length;
+        namesLength += name.length;
+        directory[index] = id;
+        this.sizes[index] = size;
+        this.lastModified[index] = lastModified;
+    }
+
+    private void move(int from, int to, int length) {
+        System.arraycopy(directory, from, directory, to, length);
+        System.arraycopy(sizes, from, sizes, to, length);
+        System.arraycopy(lastModified, from, lastModified, to, length);
+        System.arraycopy(nameStarts, from, nameStarts, to, length);
+        System.arraycopy(nameLengths, from, nameLengths, to, length);
+    }
+
+    private void grow() {
+        int capacity = sizes.length * 2;
+        directory = Arrays.copyOf(directory, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+}
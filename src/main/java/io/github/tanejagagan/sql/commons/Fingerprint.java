@@ -3,14 +3,21 @@ package io.github.tanejagagan.sql.commons;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.*;
 
 /**
  * Limitation :
@@ -21,6 +28,29 @@ public class Fingerprint {
 
     private static Logger logger = LoggerFactory.getLogger(Fingerprint.class);
 
+    /**
+     * Literal extracted from the query
+     * @param type DuckDB type id of the literal i.e. VARCHAR, INTEGER or DECIMAL
+     * @param value String, Integer or BigDecimal
+     */
+    public record Parameter(String type, Object value) {
+    }
+
+    /**
+     * Query with literals replaced by parameters.
+     * @param fingerprint same as {@link #generate(String)}
+     * @param sql parameterised sql with $1, $2 ... placeholders. Queries which only differ in the literals have the
+     *            same sql, hence it can be used as the key to cache the PreparedStatement.
+     * @param parameters literals in the order of the placeholders
+     */
+    public record Template(String fingerprint, String sql, List<Parameter> parameters) {
+        public void bind(PreparedStatement statement) throws SQLException {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i).value());
+            }
+        }
+    }
+
     public static void main(String[] args) throws SQLException, IOException, NoSuchAlgorithmException {
         //String sql1 = "select  2.0, 3, 'one', 4.0, 5 , true from t where num > 1 and num >= 1 and str = 'str1' and date in ('2014-01-01') and if(min_a=null, true, min_a <= cast(x as int))";
         String sql1 = "select * from t where num1 > 1 and num2 < 1.0 and str = 'str1'";
@@ -41,37 +71,339 @@ public class Fingerprint {
     }
 
     public static String generate(String sql) throws IOException, SQLException {
+        return generate(sql, EnumSet.noneOf(Normalization.class));
+    }
+
+    /**
+     * @param normalizations structural differences to be ignored in addition to the literals
+     */
+    public static String generate(String sql, Set<Normalization> normalizations) throws IOException, SQLException {
         JsonNode tree = Transformations.parseToTree(sql);
         if (tree.get("error").asBoolean()) {
             throw new SQLException("error parsing sql");
         }
-        JsonNode fingerPrintedNode = getFingerprintedTree(tree);
-        String jsonString = fingerPrintedNode.toString();
-        String sqlToExecute = String.format(Transformations.JSON_DESERIALIZE_SQL, jsonString);
-        logger.atInfo().log("Fingerprint SQL{}", ConnectionPool.collectFirst(sqlToExecute, String.class));
-        return generateSHA256(fingerPrintedNode.toString());
+        JsonNode fingerPrintedNode = normalize(getFingerprintedTree(tree), normalizations);
+        logger.atDebug().log("Fingerprinted tree {}", fingerPrintedNode);
+        return generateSHA256(fingerPrintedNode);
+    }
+
+    /**
+     * Optional normalisation of the fingerprinted tree before hashing
+     */
+    public enum Normalization {
+        /**
+         * a IN (1, 2, 3) is same as a IN (1). Applies to NOT IN as well and only when the list is constants.
+         */
+        IN_LIST,
+        /**
+         * Children of AND and OR are sorted, a = 1 AND b = 2 is same as b = 2 AND a = 1
+         */
+        CONJUNCTION_ORDER,
+        /**
+         * Constant is moved to the right of the comparison, 10 &lt; a is same as a &gt; 10
+         */
+        COMPARISON_ORIENTATION,
+        /**
+         * Aliases of expressions and tables are removed
+         */
+        ALIAS;
+
+        public static final Set<Normalization> ALL = Collections.unmodifiableSet(EnumSet.allOf(Normalization.class));
     }
 
-    private static String generateSHA256(String input) {
+    private static final Map<String, String> FLIPPED_COMPARISON = Map.of(
+            ExpressionConstants.COMPARE_TYPE_LESSTHAN, ExpressionConstants.COMPARE_TYPE_GREATERTHAN,
+            ExpressionConstants.COMPARE_TYPE_GREATERTHAN, ExpressionConstants.COMPARE_TYPE_LESSTHAN,
+            ExpressionConstants.COMPARE_TYPE_LESSTHANOREQUALTO, ExpressionConstants.COMPARE_TYPE_GREATERTHANOREQUALTO,
+            ExpressionConstants.COMPARE_TYPE_GREATERTHANOREQUALTO, ExpressionConstants.COMPARE_TYPE_LESSTHANOREQUALTO);
+
+    /**
+     * Normalise the tree in place. Children are normalised before their parent so that the conjunctions are sorted
+     * on the normalised children. It is meant for trees whose constants are already replaced, otherwise the
+     * literals decide the order of the conjunction.
+     */
+    public static JsonNode normalize(JsonNode tree, Set<Normalization> normalizations) {
+        if (normalizations.isEmpty() || !tree.isContainerNode()) {
+            return tree;
+        }
+        for (JsonNode child : tree) {
+            normalize(child, normalizations);
+        }
+        if (!tree.isObject()) {
+            return tree;
+        }
+        ObjectNode node = (ObjectNode) tree;
+        if (normalizations.contains(Normalization.ALIAS) && node.path("alias").isTextual()) {
+            node.put("alias", "");
+        }
+        if (normalizations.contains(Normalization.IN_LIST) && "OPERATOR".equals(node.path("class").asText())
+                && (node.get("type").asText().equals("COMPARE_IN") || node.get("type").asText().equals("COMPARE_NOT_IN"))) {
+            ArrayNode children = (ArrayNode) node.get("children");
+            boolean constants = true;
+            for (int i = 1; i < children.size(); i++) {
+                constants &= Transformations.IS_CONSTANT.apply(children.get(i));
+            }
+            while (constants && children.size() > 2) {
+                children.remove(children.size() - 1);
+            }
+        }
+        if (normalizations.contains(Normalization.CONJUNCTION_ORDER)
+                && (Transformations.IS_CONJUNCTION_AND.apply(node) || Transformations.IS_CONJUNCTION_OR.apply(node))) {
+            ArrayNode children = (ArrayNode) node.get("children");
+            List<JsonNode> sorted = new ArrayList<>();
+            children.forEach(sorted::add);
+            sorted.sort(Comparator.comparing(JsonNode::toString));
+            children.removeAll();
+            children.addAll(sorted);
+        }
+        if (normalizations.contains(Normalization.COMPARISON_ORIENTATION) && Transformations.IS_COMPARISON.apply(node)
+                && Transformations.IS_CONSTANT.apply(node.get("left")) && !Transformations.IS_CONSTANT.apply(node.get("right"))) {
+            JsonNode left = node.get("left");
+            node.set("left", node.get("right"));
+            node.set("right", left);
+            node.put("type", FLIPPED_COMPARISON.getOrDefault(node.get("type").asText(), node.get("type").asText()));
+        }
+        return node;
+    }
+
+    /**
+     * Literals replaced by {@link Transformations#REPLACE_CONSTANT} are extracted as parameters.
+     * Literals which are not replaced are kept in the sql and so are the positional references of GROUP BY and
+     * ORDER BY and the arguments of table functions like the path of read_parquet.
+     */
+    public static Template generateTemplate(String sql) throws IOException, SQLException {
+        JsonNode tree = Transformations.parseToTree(sql);
+        if (tree.get("error").asBoolean()) {
+            throw new SQLException("error parsing sql");
+        }
+        JsonNode templateTree = tree.deepCopy();
+        List<Parameter> parameters = new ArrayList<>();
+        replaceWithParameters(templateTree, parameters);
+        String fingerprint = generateSHA256(getFingerprintedTree(tree));
+        return new Template(fingerprint, Transformations.parseToSql(templateTree), List.copyOf(parameters));
+    }
+
+    /**
+     * Fingerprint of a parse tree, tree is modified and its constants are replaced
+     */
+    static String generateInPlace(JsonNode tree) throws IOException {
+        return generateSHA256(getFingerprintedTree(tree));
+    }
+
+    /**
+     * Template tree of a tree modified by {@link #generateInPlace(JsonNode)}. Replaced constants keep their type
+     * hence the template sql is the same as the one of {@link #generateTemplate(String)}.
+     */
+    static JsonNode templateInPlace(JsonNode fingerprintedTree) {
+        replaceWithParameters(fingerprintedTree, new ArrayList<>());
+        return fingerprintedTree;
+    }
+
+    private static void replaceWithParameters(JsonNode node, List<Parameter> parameters) {
+        if (node.isObject()) {
+            if (TABLE_FUNCTION.equals(node.path("type").asText()) && node.has("function")) {
+                return;
+            }
+            ObjectNode objectNode = (ObjectNode) node;
+            Iterator<Map.Entry<String, JsonNode>> fields = objectNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode child = field.getValue();
+                // Constant in ORDER BY is a position
+                boolean positional = field.getKey().equals("expression") && objectNode.has("null_order");
+                if (!positional && isParameter(child)) {
+                    field.setValue(toParameter(child, parameters));
+                } else if (field.getKey().equals("group_expressions")) {
+                    for (JsonNode groupExpression : child) {
+                        if (!Transformations.IS_CONSTANT.apply(groupExpression)) {
+                            replaceWithParameters(groupExpression, parameters);
+                        }
+                    }
+                } else {
+                    replaceWithParameters(child, parameters);
+                }
+            }
+        } else if (node.isArray()) {
+            ArrayNode arrayNode = (ArrayNode) node;
+            for (int i = 0; i < arrayNode.size(); i++) {
+                JsonNode child = arrayNode.get(i);
+                if (isParameter(child)) {
+                    arrayNode.set(i, toParameter(child, parameters));
+                } else {
+                    replaceWithParameters(child, parameters);
+                }
+            }
+        }
+    }
+
+    private static boolean isParameter(JsonNode node) {
+        return Transformations.IS_CONSTANT.apply(node) && !node.get("value").path("is_null").asBoolean()
+                && PLACEHOLDER_TYPES.contains(node.get("value").get("type").get("id").asText());
+    }
+
+    private static JsonNode toParameter(JsonNode constant, List<Parameter> parameters) {
+        JsonNode value = constant.get("value");
+        String id = value.get("type").get("id").asText();
+        Object javaValue = switch (id) {
+            case "VARCHAR" -> value.get("value").asText();
+            case "INTEGER" -> value.get("value").asInt();
+            default -> new BigDecimal(unscaled(value.get("value")), value.get("type").get("type_info").get("scale").asInt());
+        };
+        parameters.add(new Parameter(id, javaValue));
+        return ExpressionFactory.parameter(parameters.size());
+    }
+
+    /**
+     * Decimal wider than 18 digits is serialised as hugeint with upper and unsigned lower 64 bits
+     */
+    private static BigInteger unscaled(JsonNode value) {
+        if (!value.isObject()) {
+            return new BigInteger(value.asText());
+        }
+        return BigInteger.valueOf(value.get("upper").asLong()).shiftLeft(64)
+                .add(new BigInteger(Long.toUnsignedString(value.get("lower").asLong())));
+    }
+
+    /**
+     * Fast fingerprint which does not create any intermediate string and does not need DuckDB after parsing.
+     * Constants are replaced the same way as {@link #generate(String)} except that the width and the scale of DECIMAL
+     * constants and query_location are ignored, hence the same query with literals of different length has the same
+     * fingerprint. Value is not compatible with {@link #generate(String)}.
+     * @return 16 hex characters of {@link #hash(JsonNode)}
+     */
+    public static String generateFast(String sql) throws IOException, SQLException {
+        JsonNode tree = Transformations.parseToTree(sql);
+        if (tree.get("error").asBoolean()) {
+            throw new SQLException("error parsing sql");
+        }
+        return HEX.toHexDigits(hash(tree));
+    }
+
+    /**
+     * 64 bit non cryptographic hash of the fingerprinted tree computed in a single iterative walk.
+     * Tree is not modified.
+     */
+    public static long hash(JsonNode tree) {
+        long h = SEED;
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Object top = stack.pop();
+            if (top == END) {
+                h = mix(h, END_TAG);
+                continue;
+            }
+            if (top instanceof String fieldName) {
+                h = hashString(h, fieldName);
+                continue;
+            }
+            JsonNode node = (JsonNode) top;
+            if (node.isObject()) {
+                if (Transformations.IS_CONSTANT.apply(node)) {
+                    JsonNode value = node.get("value");
+                    String id = value.path("type").path("id").asText();
+                    h = hashString(mix(h, CONSTANT_TAG), id);
+                    if (!PLACEHOLDER_TYPES.contains(id)) {
+                        stack.push(value);
+                    }
+                    continue;
+                }
+                h = mix(h, OBJECT_TAG);
+                stack.push(END);
+                // Fields are hashed in the reverse order which is still deterministic
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    if (!field.getKey().equals("query_location")) {
+                        stack.push(field.getValue());
+                        stack.push(field.getKey());
+                    }
+                }
+            } else if (node.isArray()) {
+                h = mix(h, ARRAY_TAG ^ node.size());
+                stack.push(END);
+                for (JsonNode element : node) {
+                    stack.push(element);
+                }
+            } else if (node.isTextual()) {
+                h = hashString(mix(h, TEXT_TAG), node.textValue());
+            } else if (node.isIntegralNumber() && node.canConvertToLong()) {
+                h = mix(mix(h, LONG_TAG), node.longValue());
+            } else if (node.isFloatingPointNumber()) {
+                h = mix(mix(h, DOUBLE_TAG), Double.doubleToLongBits(node.doubleValue()));
+            } else if (node.isBoolean()) {
+                h = mix(h, node.booleanValue() ? TRUE_TAG : FALSE_TAG);
+            } else if (node.isNull() || node.isMissingNode()) {
+                h = mix(h, NULL_TAG);
+            } else {
+                h = hashString(mix(h, TEXT_TAG), node.asText());
+            }
+        }
+        return fmix64(h);
+    }
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final String TABLE_FUNCTION = "TABLE_FUNCTION";
+    private static final Object END = new Object();
+    private static final Set<String> PLACEHOLDER_TYPES = Set.of("VARCHAR", "INTEGER", "DECIMAL");
+    private static final long SEED = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final long OBJECT_TAG = 1, ARRAY_TAG = 2L << 32, END_TAG = 3, TEXT_TAG = 4, LONG_TAG = 5,
+            DOUBLE_TAG = 6, TRUE_TAG = 7, FALSE_TAG = 8, NULL_TAG = 9, CONSTANT_TAG = 10;
+
+    private static long mix(long h, long value) {
+        return Long.rotateLeft((h ^ value) * 0x9e3779b97f4a7c15L, 31);
+    }
+
+    private static long hashString(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * PRIME;
+        }
+        return mix(h, s.length());
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Json is written directly to the digest, it is the same as digest of node.toString()
+     */
+    private static String generateSHA256(JsonNode node) throws IOException {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hashBytes);
+            try (DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                objectMapper.writeValue(out, node);
+            }
+            return HEX.formatHex(digest.digest());
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 algorithm not found.", e);
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = String.format("%02x", b);
-            hexString.append(hex);
-        }
-        return hexString.toString();
-    }
-
+    /**
+     * query_location is set to 0 as it depends on the length of the literals before the node
+     */
     private static JsonNode getFingerprintedTree(JsonNode tree) throws JsonProcessingException {
-        return Transformations.transform(tree, Transformations.IS_CONSTANT, Transformations.REPLACE_CONSTANT);
+        JsonNode result = Transformations.transform(tree, Transformations.IS_CONSTANT, Transformations.REPLACE_CONSTANT);
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(result);
+        while (!stack.isEmpty()) {
+            JsonNode node = stack.pop();
+            if (node.isObject() && node.has("query_location")) {
+                ((ObjectNode) node).put("query_location", 0);
+            }
+            for (JsonNode child : node) {
+                if (child.isContainerNode()) {
+                    stack.push(child);
+                }
+            }
+        }
+        return result;
     }
 }
@@ -0,0 +1,182 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fingerprint a query log in parallel.
+ * Log is read through DuckDB, hence it can be any file DuckDB can scan by its extension (parquet, csv, json).
+ * Queries are parsed in batches of {@link Transformations#BATCH_SIZE} and every batch is fingerprinted by a worker
+ * with its own pooled connection. Output is a parquet file with one row per fingerprint:
+ * fingerprint, template (see {@link Fingerprint#generateTemplate(String)}) and count, ordered by count.
+ */
+public class FingerprintJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintJob.class);
+
+    private static final String TEMP_TABLE = "fingerprint_job_output";
+
+    /**
+     * @param errors queries which could not be parsed, including null
+     */
+    public record Stats(long queries, long errors, long fingerprints, long elapsedNanos) {
+        public double queriesPerSecond() {
+            return elapsedNanos == 0 ? 0 : queries * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+
+    private record Aggregate(JsonNode template, LongAdder count) {
+    }
+
+    public static Stats run(String inputPath, String queryColumn, String outputPath) throws SQLException, IOException {
+        return run(inputPath, queryColumn, outputPath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param queryColumn column of the log with the sql text
+     * @param parallelism number of workers. At most two batches per worker are read ahead.
+     */
+    public static Stats run(String inputPath, String queryColumn, String outputPath, int parallelism) throws SQLException, IOException {
+        long start = System.nanoTime();
+        Map<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+        LongAdder errors = new LongAdder();
+        long queries = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        try (Connection connection = ConnectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(String.format("SELECT %s FROM %s",
+                     SqlRenderer.quoteIdentifier(queryColumn), SqlRenderer.quoteString(inputPath)))) {
+            List<String> batch = new ArrayList<>(Transformations.BATCH_SIZE);
+            while (resultSet.next()) {
+                queries++;
+                String sql = resultSet.getString(1);
+                if (sql == null) {
+                    errors.increment();
+                    continue;
+                }
+                batch.add(sql);
+                if (batch.size() == Transformations.BATCH_SIZE) {
+                    futures.add(submit(executor, inFlight, batch, aggregates, errors));
+                    batch = new ArrayList<>(Transformations.BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                futures.add(submit(executor, inFlight, batch, aggregates, errors));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Fingerprint job interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error fingerprinting " + inputPath, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        write(aggregates, outputPath);
+        Stats stats = new Stats(queries, errors.sum(), aggregates.size(), System.nanoTime() - start);
+        logger.atInfo().log("Fingerprinted {} queries of {} into {} fingerprints with {} errors at {} queries/s",
+                stats.queries(), inputPath, stats.fingerprints(), stats.errors(), (long) stats.queriesPerSecond());
+        return stats;
+    }
+
+    private static Future<?> submit(ExecutorService executor, Semaphore inFlight, List<String> batch,
+                                    Map<String, Aggregate> aggregates, LongAdder errors) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return executor.submit(() -> {
+                try {
+                    fingerprint(batch, aggregates, errors);
+                } finally {
+                    inFlight.release();
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private static void fingerprint(List<String> batch, Map<String, Aggregate> aggregates,
+                                    LongAdder errors) throws SQLException, IOException {
+        List<JsonNode> trees;
+        try (Connection connection = ConnectionPool.getConnection()) {
+            trees = parse(connection, batch);
+        }
+        for (JsonNode tree : trees) {
+            if (tree == null || tree.get("error").asBoolean()) {
+                errors.increment();
+                continue;
+            }
+            String fingerprint = Fingerprint.generateInPlace(tree);
+            aggregates.computeIfAbsent(fingerprint,
+                            k -> new Aggregate(Fingerprint.templateInPlace(tree), new LongAdder()))
+                    .count().increment();
+        }
+    }
+
+    /**
+     * Batch is parsed in one round trip. If the batch fails, queries are parsed one by one
+     * and the ones which fail are returned as null.
+     */
+    private static List<JsonNode> parse(Connection connection, List<String> batch) throws IOException {
+        try {
+            return Transformations.parseToTrees(connection, batch, false);
+        } catch (RuntimeException e) {
+            List<JsonNode> trees = new ArrayList<>(batch.size());
+            for (String sql : batch) {
+                try {
+                    trees.add(Transformations.parseToTrees(connection, List.of(sql), false).get(0));
+                } catch (RuntimeException ignore) {
+                    trees.add(null);
+                }
+            }
+            return trees;
+        }
+    }
+
+    private static void write(Map<String, Aggregate> aggregates, String outputPath) throws SQLException {
+        List<Map.Entry<String, Aggregate>> entries = new ArrayList<>(aggregates.entrySet());
+        // Temp table is only visible to this connection hence concurrent jobs do not conflict
+        try (DuckDBConnection connection = ConnectionPool.getConnection()) {
+            List<String> templates = Transformations.parseToSqls(connection,
+                    entries.stream().map(e -> e.getValue().template()).toList());
+            ConnectionPool.execute(connection, String.format(
+                    "CREATE OR REPLACE TEMP TABLE %s (fingerprint VARCHAR, template VARCHAR, count BIGINT)", TEMP_TABLE));
+            try {
+                try (DuckDBAppender appender = connection.createAppender(DuckDBConnection.DEFAULT_SCHEMA, TEMP_TABLE)) {
+                    for (int i = 0; i < entries.size(); i++) {
+                        appender.beginRow();
+                        appender.append(entries.get(i).getKey());
+                        appender.append(templates.get(i));
+                        appender.append(entries.get(i).getValue().count().sum());
+                        appender.endRow();
+                    }
+                }
+                ConnectionPool.execute(connection, String.format(
+                        "COPY (SELECT * FROM %s ORDER BY count DESC, fingerprint) TO %s (FORMAT PARQUET)", TEMP_TABLE,
+                        SqlRenderer.quoteString(outputPath)));
+            } finally {
+                ConnectionPool.execute(connection, String.format("DROP TABLE IF EXISTS %s", TEMP_TABLE));
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of parse trees keyed by the sql text.
+ * Trees returned by the cache are copies, hence callers are free to transform them in place
+ * without corrupting the cached entry.
+ * All the methods are thread safe.
+ */
+public class ParseTreeCache {
+
+    private final LinkedHashMap<String, JsonNode> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private int maxSize;
+
+    /**
+     *
+     * @param maxSize maximum number of trees kept in the cache. 0 disables the cache
+     */
+    public ParseTreeCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize should not be negative : " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     *
+     * @param sql sql text
+     * @return copy of the cached tree or null if the sql is not cached
+     */
+    public JsonNode get(String sql) {
+        JsonNode tree;
+        synchronized (this) {
+            tree = entries.get(sql);
+        }
+        if (tree == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return tree.deepCopy();
+    }
+
+    /**
+     *
+     * @param sql sql text
+     * @param tree parse tree of the sql. Cache keeps its own copy
+     */
+    public void put(String sql, JsonNode tree) {
+        if (maxSize == 0) {
+            return;
+        }
+        JsonNode copy = tree.deepCopy();
+        synchronized (this) {
+            entries.put(sql, copy);
+            evictIfRequired();
+        }
+    }
+
+    public synchronized void resize(int newMaxSize) {
+        if (newMaxSize < 0) {
+            throw new IllegalArgumentException("maxSize should not be negative : " + newMaxSize);
+        }
+        this.maxSize = newMaxSize;
+        evictIfRequired();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     *
+     * @return hits / (hits + misses) or 0 if the cache is never looked up
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private void evictIfRequired() {
+        Iterator<Map.Entry<String, JsonNode>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
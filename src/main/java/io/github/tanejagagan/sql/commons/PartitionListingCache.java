@@ -0,0 +1,150 @@
+package io.github.tanejagagan.sql.commons;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of directory listings of a local or mounted file system, used by {@link io.github.tanejagagan.sql.commons.hive.HivePartitionWalker}
+ * to list the partition directories and files and by the delta pruning to keep the files of a table.
+ * A listing is valid as long as the modification time of its directory is unchanged, hence only the directories
+ * which changed since the last listing are listed again. Adding or removing a file or partition directory changes
+ * the modification time of its parent directory. A file rewritten in place with the same name does not,
+ * ttl can be used to bound the staleness in that case.
+ * <p>
+ * Listings of the directories modified within {@link #RACY_INTERVAL} of the listing are not trusted since a change
+ * in the same tick of the file system clock would not change the modification time.
+ * Size of the cache is the total number of entries of the listings. All the methods are thread safe.
+ */
+public class PartitionListingCache {
+
+    public static final Duration RACY_INTERVAL = Duration.ofSeconds(2);
+
+    public interface Lister<T> {
+        List<T> list() throws IOException;
+    }
+
+    private record Entry(long lastModified, long listedAt, List<?> listing) {
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final long maxSize;
+    private final long ttlMillis;
+    private long size;
+
+    /**
+     * @param maxSize maximum number of entries of all the cached listings. 0 disables the cache
+     */
+    public PartitionListingCache(long maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * @param ttl listings older than ttl are listed again even if the directory is not modified. null for no ttl
+     */
+    public PartitionListingCache(long maxSize, Duration ttl) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize should not be negative : " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl == null ? Long.MAX_VALUE : ttl.toMillis();
+    }
+
+    /**
+     * @param directory directory whose modification time validates the listing
+     * @param key       key of the listing, there can be more than one listing for a directory
+     * @param lister    lists the directory on a miss. Its list is cached as it is hence it should not be modified later
+     * @return cached or new listing, it should not be modified. Callers which modify it should copy it
+     * @throws java.nio.file.NoSuchFileException if the directory does not exist
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(Path directory, String key, Lister<T> lister) throws IOException {
+        long lastModified = Files.getLastModifiedTime(directory).toMillis();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified() == lastModified && now - entry.listedAt() < ttlMillis) {
+                hits.incrementAndGet();
+                return (List<T>) entry.listing();
+            }
+        }
+        misses.incrementAndGet();
+        // Modification time is read before listing hence a change while listing invalidates the entry
+        List<T> listing = lister.list();
+        if (maxSize > 0 && now - lastModified >= RACY_INTERVAL.toMillis()) {
+            synchronized (this) {
+                Entry previous = entries.put(key, new Entry(lastModified, now, listing));
+                size += weight(listing) - (previous == null ? 0 : weight(previous.listing()));
+                evictIfRequired();
+            }
+        }
+        return listing;
+    }
+
+    public synchronized void invalidate(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            size -= weight(previous.listing());
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return total number of entries of the cached listings
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return hits / (hits + misses) or 0 if the cache is never looked up
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    // Empty listing still takes an entry
+    private static long weight(List<?> listing) {
+        return Math.max(1, listing.size());
+    }
+
+    private void evictIfRequired() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= weight(it.next().getValue().listing());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Applies an ordered list of rules to a json tree in a single traversal.
+ * Traversal is pre order and uses an explicit stack so that very deep trees (thousands of OR/IN terms)
+ * do not overflow the stack. At every node the first matching rule replaces the node and the
+ * replacement is not traversed again in the same pass. With untilFixedPoint the passes are repeated
+ * until no rule fires or maxPasses is reached.
+ * Tree is modified in place same as {@link Transformations#transform}.
+ * Instance keeps the firing count of every rule and the number of passes across the rewrites and is not thread safe.
+ */
+public class RewriteEngine {
+
+    public record Rule(String name, Function<JsonNode, Boolean> matchFn, Function<JsonNode, JsonNode> transformFn) {
+    }
+
+    private record Slot(JsonNode parent, String field, int index) {
+        JsonNode get() {
+            return field == null ? parent.get(index) : parent.get(field);
+        }
+
+        void set(JsonNode value) {
+            if (field == null) {
+                ((ArrayNode) parent).set(index, value);
+            } else {
+                ((ObjectNode) parent).set(field, value);
+            }
+        }
+    }
+
+    private final List<Rule> rules;
+    private final boolean untilFixedPoint;
+    private final int maxPasses;
+    private final long[] firingCounts;
+    private int passes;
+
+    public RewriteEngine(List<Rule> rules) {
+        this(rules, false, 1);
+    }
+
+    public RewriteEngine(List<Rule> rules, boolean untilFixedPoint, int maxPasses) {
+        this.rules = List.copyOf(rules);
+        this.untilFixedPoint = untilFixedPoint;
+        this.maxPasses = maxPasses;
+        this.firingCounts = new long[rules.size()];
+    }
+
+    /**
+     *
+     * @param node root of the tree
+     * @return root of the rewritten tree. It is a different node only if a rule fired on the root
+     */
+    public JsonNode rewrite(JsonNode node) {
+        JsonNode current = node;
+        int pass = 0;
+        do {
+            pass++;
+            passes++;
+            long before = totalFiringCount();
+            current = rewriteOnce(current);
+            if (totalFiringCount() == before) {
+                break;
+            }
+        } while (untilFixedPoint && pass < maxPasses);
+        return current;
+    }
+
+    /**
+     *
+     * @return number of times each rule fired, keyed by the rule name in the order of the rules
+     */
+    public Map<String, Long> getFiringCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            result.merge(rules.get(i).name(), firingCounts[i], Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return number of passes of all the rewrites, maxPasses applies to each rewrite
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    private JsonNode rewriteOnce(JsonNode root) {
+        JsonNode replaced = apply(root);
+        if (replaced != null) {
+            return replaced;
+        }
+        Deque<Slot> stack = new ArrayDeque<>();
+        pushChildren(stack, root);
+        while (!stack.isEmpty()) {
+            Slot slot = stack.pop();
+            JsonNode current = slot.get();
+            JsonNode newNode = apply(current);
+            if (newNode != null) {
+                slot.set(newNode);
+            } else {
+                pushChildren(stack, current);
+            }
+        }
+        return root;
+    }
+
+    private JsonNode apply(JsonNode node) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (rule.matchFn().apply(node)) {
+                firingCounts[i]++;
+                return rule.transformFn().apply(node);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Children are pushed in reverse so that they are popped in the document order
+     */
+    private static void pushChildren(Deque<Slot> stack, JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            List<String> fields = new ArrayList<>(objectNode.size());
+            objectNode.fieldNames().forEachRemaining(fields::add);
+            for (int i = fields.size() - 1; i >= 0; i--) {
+                stack.push(new Slot(objectNode, fields.get(i), -1));
+            }
+        } else if (node instanceof ArrayNode arrayNode) {
+            for (int i = arrayNode.size() - 1; i >= 0; i--) {
+                stack.push(new Slot(arrayNode, null, i));
+            }
+        }
+    }
+
+    private long totalFiringCount() {
+        long total = 0;
+        for (long count : firingCounts) {
+            total += count;
+        }
+        return total;
+    }
+}
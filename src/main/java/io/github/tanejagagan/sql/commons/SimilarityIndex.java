@@ -0,0 +1,324 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory index to find the query templates which are similar to a query.
+ * Every template is reduced to a set of structural features (see {@link #features(JsonNode)}) and the
+ * similarity of two templates is the Jaccard similarity of their features, estimated with a MinHash signature.
+ * Signatures are split into bands and indexed with LSH, only the templates which share at least one band with the
+ * query are compared hence templates whose similarity is well below (1 / bands) ^ (1 / rows) are usually not returned.
+ * <p>
+ * Adds are serialised, lookups run in parallel. Index can be saved to and loaded from a snapshot file.
+ */
+public class SimilarityIndex {
+
+    public static final int DEFAULT_BANDS = 32;
+    public static final int DEFAULT_ROWS = 4;
+
+    private static final int MAGIC = 0x53494458;
+    private static final int VERSION = 1;
+
+    public record Match(String key, double similarity) {
+    }
+
+    private final int bands;
+    private final int rows;
+    private final int numHashes;
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int[] signatures;
+    // Per band, band hash to ids. First element of the posting is the number of ids
+    private final List<Map<Long, int[]>> bandIndex = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SimilarityIndex() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /**
+     * @param bands number of LSH bands, more bands find less similar templates
+     * @param rows  MinHash values per band, more rows find less false candidates
+     */
+    public SimilarityIndex(int bands, int rows) {
+        this.bands = bands;
+        this.rows = rows;
+        this.numHashes = bands * rows;
+        this.signatures = new int[numHashes * 16];
+        for (int b = 0; b < bands; b++) {
+            bandIndex.add(new HashMap<>());
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param key key of the template, for example fingerprint or template sql. A key is only added once.
+     */
+    public void add(String key, JsonNode tree) {
+        add(key, signature(features(tree)));
+    }
+
+    public void add(String key, String sql) throws SQLException, IOException {
+        add(key, Transformations.parseToTree(sql));
+    }
+
+    /**
+     * @return up to k templates ordered by the estimated similarity
+     */
+    public List<Match> topK(JsonNode tree, int k) {
+        int[] signature = signature(features(tree));
+        lock.readLock().lock();
+        try {
+            Set<Integer> candidates = new HashSet<>();
+            for (int b = 0; b < bands; b++) {
+                int[] posting = bandIndex.get(b).get(bandHash(signature, b));
+                if (posting != null) {
+                    for (int i = 1; i <= posting[0]; i++) {
+                        candidates.add(posting[i]);
+                    }
+                }
+            }
+            PriorityQueue<Match> top = new PriorityQueue<>(Comparator.comparingDouble(Match::similarity));
+            for (int id : candidates) {
+                int same = 0;
+                int offset = id * numHashes;
+                for (int i = 0; i < numHashes; i++) {
+                    if (signatures[offset + i] == signature[i]) {
+                        same++;
+                    }
+                }
+                top.add(new Match(keys.get(id), (double) same / numHashes));
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+            List<Match> result = new ArrayList<>(top);
+            result.sort(Comparator.comparingDouble(Match::similarity).reversed().thenComparing(Match::key));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Match> topK(String sql, int k) throws SQLException, IOException {
+        return topK(Transformations.parseToTree(sql), k);
+    }
+
+    /**
+     * Structural features of a query, literals are ignored:
+     * tables, table functions, columns, functions, predicates as operator and column, joins, set operations and clauses.
+     */
+    public static Set<String> features(JsonNode tree) {
+        Set<String> features = new HashSet<>();
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            JsonNode node = stack.pop();
+            if (node.isObject()) {
+                String clazz = node.path("class").asText();
+                String type = node.path("type").asText();
+                switch (type) {
+                    case "BASE_TABLE" -> features.add("table:" + node.path("table_name").asText().toLowerCase());
+                    case "TABLE_FUNCTION" -> features.add("table_function:" + node.path("function").path("function_name").asText());
+                    case "JOIN" -> features.add("join:" + node.path("join_type").asText());
+                    case "SET_OPERATION_NODE" -> features.add("set_operation:" + node.path("setop_type").asText());
+                    case "SELECT_NODE" -> addClauses(node, features);
+                    default -> {
+                    }
+                }
+                if (Transformations.IS_REFERENCE.apply(node)) {
+                    features.add("column:" + columnName(node));
+                } else if (clazz.equals(ExpressionConstants.FUNCTION_CLASS)) {
+                    features.add("function:" + node.path("function_name").asText().toLowerCase());
+                } else if (clazz.equals(ExpressionConstants.COMPARISON_CLASS)) {
+                    addPredicate(features, type, node.get("left"), node.get("right"));
+                } else if (clazz.equals("OPERATOR") && node.path("children").size() > 0) {
+                    addPredicate(features, type, node.get("children").get(0), null);
+                } else if (clazz.equals("BETWEEN")) {
+                    addPredicate(features, type, node.get("input"), null);
+                }
+            }
+            if (node.isContainerNode()) {
+                for (JsonNode child : node) {
+                    if (child.isContainerNode()) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+        return features;
+    }
+
+    private static void addPredicate(Set<String> features, String type, JsonNode left, JsonNode right) {
+        if (left != null && Transformations.IS_REFERENCE.apply(left)) {
+            features.add("predicate:" + type + ":" + columnName(left));
+        } else if (right != null && Transformations.IS_REFERENCE.apply(right)) {
+            features.add("predicate:" + type + ":" + columnName(right));
+        } else {
+            features.add("predicate:" + type);
+        }
+    }
+
+    private static void addClauses(JsonNode select, Set<String> features) {
+        if (!select.path("where_clause").isNull() && !select.path("where_clause").isMissingNode()) {
+            features.add("clause:where");
+        }
+        if (select.path("group_expressions").size() > 0) {
+            features.add("clause:group_by");
+        }
+        if (!select.path("having").isNull() && !select.path("having").isMissingNode()) {
+            features.add("clause:having");
+        }
+        for (JsonNode modifier : select.path("modifiers")) {
+            features.add("clause:" + modifier.path("type").asText());
+        }
+    }
+
+    private static String columnName(JsonNode reference) {
+        JsonNode names = reference.get("column_names");
+        return names.get(names.size() - 1).asText().toLowerCase();
+    }
+
+    /**
+     * Snapshot is written to a temporary file which replaces the path atomically
+     */
+    public void save(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bands);
+            out.writeInt(rows);
+            out.writeInt(keys.size());
+            for (int id = 0; id < keys.size(); id++) {
+                byte[] bytes = keys.get(id).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                for (int i = 0; i < numHashes; i++) {
+                    out.writeInt(signatures[id * numHashes + i]);
+                }
+            }
+            out.writeInt(MAGIC);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SimilarityIndex load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a similarity index " + path);
+            }
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported version of similarity index " + path);
+            }
+            SimilarityIndex index = new SimilarityIndex(in.readInt(), in.readInt());
+            int count = in.readInt();
+            for (int id = 0; id < count; id++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                int[] signature = new int[index.numHashes];
+                for (int i = 0; i < signature.length; i++) {
+                    signature[i] = in.readInt();
+                }
+                index.add(new String(bytes, StandardCharsets.UTF_8), signature);
+            }
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Truncated similarity index " + path);
+            }
+            return index;
+        }
+    }
+
+    private void add(String key, int[] signature) {
+        lock.writeLock().lock();
+        try {
+            if (ids.containsKey(key)) {
+                return;
+            }
+            int id = keys.size();
+            keys.add(key);
+            ids.put(key, id);
+            if ((id + 1) * numHashes > signatures.length) {
+                signatures = Arrays.copyOf(signatures, signatures.length * 2);
+            }
+            System.arraycopy(signature, 0, signatures, id * numHashes, numHashes);
+            for (int b = 0; b < bands; b++) {
+                bandIndex.get(b).merge(bandHash(signature, b), new int[]{1, id}, (posting, ignore) -> {
+                    if (posting[0] + 1 == posting.length) {
+                        posting = Arrays.copyOf(posting, posting.length * 2);
+                    }
+                    posting[++posting[0]] = id;
+                    return posting;
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * MinHash with numHashes hash functions derived from two 64 bit hashes of the feature
+     */
+    private int[] signature(Set<String> features) {
+        int[] signature = new int[numHashes];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String feature : features) {
+            long h = hash64(feature);
+            long h1 = h;
+            long h2 = Long.rotateLeft(h, 32) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                int value = (int) (fmix64(h1 + i * h2) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bandHash(int[] signature, int band) {
+        long h = band;
+        for (int r = 0; r < rows; r++) {
+            h = fmix64(h * 31 + signature[band * rows + r]);
+        }
+        return h;
+    }
+
+    private static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static io.github.tanejagagan.sql.commons.ExpressionConstants.*;
+
+/**
+ * Render expressions of the json parse tree to DuckDB sql without a round trip to DuckDB.
+ * Supports column references, constants, comparisons, conjunctions, casts, BETWEEN, IN, IS NULL, NOT,
+ * CASE and functions/operators. Identifiers are always quoted and string constants are escaped.
+ * Every other expression throws UnsupportedOperationException and the caller can fall back to
+ * {@link Transformations#parseToSql(JsonNode)}.
+ */
+public class SqlRenderer {
+
+    private static final Map<String, String> COMPARISON_OPERATORS = Map.of(
+            COMPARE_TYPE_EQUAL, "=",
+            COMPARE_TYPE_NOTEQUAL, "<>",
+            COMPARE_TYPE_LESSTHAN, "<",
+            COMPARE_TYPE_GREATERTHAN, ">",
+            COMPARE_TYPE_LESSTHANOREQUALTO, "<=",
+            COMPARE_TYPE_GREATERTHANOREQUALTO, ">=",
+            "COMPARE_DISTINCT_FROM", "IS DISTINCT FROM",
+            "COMPARE_NOT_DISTINCT_FROM", "IS NOT DISTINCT FROM");
+
+    private static final Pattern FUNCTION_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final Pattern OPERATOR_NAME = Pattern.compile("[-+*/%^!~<>=|&@#]+");
+
+    public static String render(JsonNode expression) {
+        StringBuilder sb = new StringBuilder();
+        render(expression, sb);
+        return sb.toString();
+    }
+
+    public static String quoteIdentifier(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    public static String quoteString(String value) {
+        return '\'' + value.replace("'", "''") + '\'';
+    }
+
+    /**
+     * @param type json object with id and type_info
+     */
+    public static String renderType(JsonNode type) {
+        String id = type.get("id").asText();
+        JsonNode typeInfo = type.get("type_info");
+        if (typeInfo == null || typeInfo.isNull()) {
+            return id;
+        }
+        switch (id) {
+            case "DECIMAL" -> {
+                return String.format("DECIMAL(%s,%s)", typeInfo.get("width").asInt(), typeInfo.get("scale").asInt());
+            }
+            case "LIST" -> {
+                return renderType(typeInfo.get("child_type")) + "[]";
+            }
+            default -> throw unsupported("type", type);
+        }
+    }
+
+    private static void render(JsonNode node, StringBuilder sb) {
+        if (node == null || node.isNull() || !node.has("class")) {
+            throw unsupported("expression", node);
+        }
+        if (!node.path("alias").asText().isEmpty()) {
+            throw unsupported("alias", node);
+        }
+        String clazz = node.get("class").asText();
+        String type = node.get("type").asText();
+        switch (clazz) {
+            case COLUMN_REF_CLASS -> renderColumnRef(node, sb);
+            case CONSTANT_CLASS -> renderConstant(node.get("value"), sb);
+            case COMPARISON_CLASS -> {
+                String operator = COMPARISON_OPERATORS.get(type);
+                if (operator == null) {
+                    throw unsupported("comparison", node);
+                }
+                sb.append('(');
+                render(node.get("left"), sb);
+                sb.append(' ').append(operator).append(' ');
+                render(node.get("right"), sb);
+                sb.append(')');
+            }
+            case CONJUNCTION_CLASS -> {
+                String operator = switch (type) {
+                    case CONJUNCTION_TYPE_AND -> " AND ";
+                    case CONJUNCTION_TYPE_OR -> " OR ";
+                    default -> throw unsupported("conjunction", node);
+                };
+                sb.append('(');
+                renderList(node.get("children"), operator, sb);
+                sb.append(')');
+            }
+            case CAST_CLASS -> {
+                sb.append(node.get("try_cast").asBoolean() ? "TRY_CAST(" : "CAST(");
+                render(node.get("child"), sb);
+                sb.append(" AS ").append(renderType(node.get("cast_type"))).append(')');
+            }
+            case "BETWEEN" -> {
+                sb.append('(');
+                render(node.get("input"), sb);
+                sb.append(" BETWEEN ");
+                render(node.get("lower"), sb);
+                sb.append(" AND ");
+                render(node.get("upper"), sb);
+                sb.append(')');
+            }
+            case "OPERATOR" -> renderOperator(node, type, sb);
+            case CASE_CLASS -> {
+                sb.append("CASE");
+                for (JsonNode check : node.get("case_checks")) {
+                    sb.append(" WHEN ");
+                    render(check.get("when_expr"), sb);
+                    sb.append(" THEN ");
+                    render(check.get("then_expr"), sb);
+                }
+                sb.append(" ELSE ");
+                render(node.get("else_expr"), sb);
+                sb.append(" END");
+            }
+            case FUNCTION_CLASS -> renderFunction(node, sb);
+            default -> throw unsupported("expression", node);
+        }
+    }
+
+    private static void renderColumnRef(JsonNode node, StringBuilder sb) {
+        boolean first = true;
+        for (JsonNode name : node.get("column_names")) {
+            if (!first) {
+                sb.append('.');
+            }
+            sb.append(quoteIdentifier(name.asText()));
+            first = false;
+        }
+    }
+
+    private static void renderConstant(JsonNode value, StringBuilder sb) {
+        if (value.get("is_null").asBoolean()) {
+            sb.append("NULL");
+            return;
+        }
+        JsonNode type = value.get("type");
+        JsonNode v = value.get("value");
+        switch (type.get("id").asText()) {
+            case "VARCHAR" -> sb.append(quoteString(v.asText()));
+            case "BOOLEAN" -> sb.append(v.asBoolean() ? "true" : "false");
+            case "TINYINT", "SMALLINT", "INTEGER", "BIGINT" -> sb.append(v.asLong());
+            case "DECIMAL" -> {
+                // Value is unscaled
+                BigDecimal decimal = new BigDecimal(v.bigIntegerValue(), type.get("type_info").get("scale").asInt());
+                sb.append(decimal.toPlainString());
+            }
+            case "DOUBLE" -> {
+                double d = v.asDouble();
+                if (Double.isFinite(d)) {
+                    // Exponent makes DuckDB parse it as DOUBLE instead of DECIMAL
+                    String s = Double.toString(d);
+                    sb.append(s.contains("E") ? s : s + "E0");
+                } else {
+                    sb.append("CAST(").append(quoteString(Double.isNaN(d) ? "nan" : d > 0 ? "inf" : "-inf"))
+                            .append(" AS DOUBLE)");
+                }
+            }
+            default -> throw unsupported("constant", value);
+        }
+    }
+
+    private static void renderOperator(JsonNode node, String type, StringBuilder sb) {
+        JsonNode children = node.get("children");
+        switch (type) {
+            case OPERATOR_TYPE_NOT -> {
+                sb.append("(NOT ");
+                render(children.get(0), sb);
+                sb.append(')');
+            }
+            case "OPERATOR_IS_NULL", "OPERATOR_IS_NOT_NULL" -> {
+                sb.append('(');
+                render(children.get(0), sb);
+                sb.append(type.equals("OPERATOR_IS_NULL") ? " IS NULL)" : " IS NOT NULL)");
+            }
+            case "COMPARE_IN", "COMPARE_NOT_IN" -> {
+                sb.append('(');
+                Iterator<JsonNode> it = children.iterator();
+                render(it.next(), sb);
+                sb.append(type.equals("COMPARE_IN") ? " IN (" : " NOT IN (");
+                boolean first = true;
+                while (it.hasNext()) {
+                    if (!first) {
+                        sb.append(", ");
+                    }
+                    render(it.next(), sb);
+                    first = false;
+                }
+                sb.append("))");
+            }
+            default -> throw unsupported("operator", node);
+        }
+    }
+
+    private static void renderFunction(JsonNode node, StringBuilder sb) {
+        JsonNode filter = node.get("filter");
+        JsonNode orders = node.path("order_bys").path("orders");
+        if ((filter != null && !filter.isNull()) || orders.size() > 0 || node.get("export_state").asBoolean()) {
+            throw unsupported("function", node);
+        }
+        String name = node.get("function_name").asText();
+        JsonNode children = node.get("children");
+        if (node.get("is_operator").asBoolean() && OPERATOR_NAME.matcher(name).matches()
+                && (children.size() == 1 || children.size() == 2)) {
+            sb.append('(');
+            if (children.size() == 1) {
+                sb.append(name).append(' ');
+                render(children.get(0), sb);
+            } else {
+                render(children.get(0), sb);
+                sb.append(' ').append(name).append(' ');
+                render(children.get(1), sb);
+            }
+            sb.append(')');
+            return;
+        }
+        if (!FUNCTION_NAME.matcher(name).matches()) {
+            throw unsupported("function", node);
+        }
+        String catalog = node.get("catalog").asText();
+        String schema = node.get("schema").asText();
+        if (!catalog.isEmpty()) {
+            sb.append(quoteIdentifier(catalog)).append('.');
+        }
+        if (!schema.isEmpty()) {
+            sb.append(quoteIdentifier(schema)).append('.');
+        }
+        sb.append(name).append('(');
+        if (node.get("distinct").asBoolean()) {
+            sb.append("DISTINCT ");
+        }
+        renderList(children, ", ", sb);
+        sb.append(')');
+    }
+
+    private static void renderList(JsonNode nodes, String separator, StringBuilder sb) {
+        boolean first = true;
+        for (JsonNode child : nodes) {
+            if (!first) {
+                sb.append(separator);
+            }
+            render(child, sb);
+            first = false;
+        }
+    }
+
+    private static UnsupportedOperationException unsupported(String what, JsonNode node) {
+        String s = String.valueOf(node);
+        return new UnsupportedOperationException("Unsupported " + what + " : " +
+                (s.length() > 200 ? s.substring(0, 200) + "..." : s));
+    }
+}
@@ -1,14 +1,23 @@
 package io.github.tanejagagan.sql.commons;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.ast.AstConverter;
+import io.github.tanejagagan.sql.commons.ast.Expression;
+import io.github.tanejagagan.sql.commons.ast.PredicateSimplifier;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.function.Consumer;
@@ -22,9 +31,19 @@ public class Transformations {
     public record CatalogSchemaTable(String catalog, String schema, String tableOrPath, String type) { }
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    public static final String JSON_SERIALIZE_SQL = "SELECT  cast(json_serialize_sql('%s') as string)";
+    public static final int DEFAULT_PARSE_TREE_CACHE_SIZE = 1024;
 
-    public static final String JSON_DESERIALIZE_SQL = "SELECT json_deserialize_sql( cast('%s' as json))";
+    private static final ParseTreeCache parseTreeCache = new ParseTreeCache(DEFAULT_PARSE_TREE_CACHE_SIZE);
+
+    public static final String PREPARED_JSON_SERIALIZE_SQL = "SELECT cast(json_serialize_sql(cast(? as varchar)) as string)";
+
+    public static final String PREPARED_JSON_DESERIALIZE_SQL = "SELECT json_deserialize_sql(cast(? as json))";
+
+    private static final String BATCH_JSON_SERIALIZE_SQL = "SELECT cast(json_serialize_sql(s) as string) FROM (VALUES %s) t(i, s) ORDER BY i";
+
+    private static final String BATCH_JSON_DESERIALIZE_SQL = "SELECT json_deserialize_sql(cast(s as json)) FROM (VALUES %s) t(i, s) ORDER BY i";
+
+    public static final int BATCH_SIZE = 1000;
 
     public static final Function<JsonNode, Boolean> IS_CONSTANT = isClassAndType(CONSTANT_CLASS,
             CONSTANT_TYPE);
@@ -56,6 +75,8 @@ public class Transformations {
 
     public static final Function<JsonNode, Boolean> IS_SUBQUERY = isType(SUBQUERY_TYPE);
 
+    public static final Function<JsonNode, Boolean> IS_NOT = isClassAndType("OPERATOR", OPERATOR_TYPE_NOT);
+
     /**
      * Set string to ?, Integer to -1 and Decimal to -1.0
      */
@@ -73,7 +94,7 @@ public class Transformations {
             ObjectNode typeInfo = (ObjectNode) type.get("type_info").deepCopy();
             typeInfo.put("width", 1);
             typeInfo.put("scale", 1);
-            valueNode.set("type_info", typeInfo);
+            type.set("type_info", typeInfo);
         }
         return result;
     };
@@ -107,7 +128,7 @@ public class Transformations {
         return n -> {
             JsonNode node = n.deepCopy();
             List<JsonNode> references = collectReferences(node);
-            if (references.isEmpty()) {
+            if (references.isEmpty() || !IS_COMPARISON.apply(node)) {
                 return ExpressionFactory.trueExpression();
             }
 
@@ -124,22 +145,25 @@ public class Transformations {
                 }
             }
             List<JsonNode> literalObjects = collectLiterals(node);
-            if (literalObjects.size() != 1 || references.size() != 1) {
-                failed = true;
+            if (failed || literalObjects.size() != 1 || references.size() != 1) {
+                return ExpressionFactory.trueExpression();
             }
             JsonNode literalObject = literalObjects.get(0);
-            JsonNode refObject = references.get(0);
-            String[] col = getReferenceName(refObject);
-            if (failed) {
-                return ExpressionFactory.trueExpression();
+            String[] col = getReferenceName(references.get(0));
+            String dataType = dataTypeMap.get(col[0]);
+            // a <= x can only match if min(a) <= x and a >= x can only match if max(a) >= x
+            JsonNode minPredicate = isUpperBound(node) ?
+                    constructLowerBoundPredicate(new String[]{minMapping.get(col[0])}, literalObject.deepCopy(), dataType) : null;
+            JsonNode maxPredicate = isLowerBound(node) ?
+                    constructUpperBoundPredicate(new String[]{maxMapping.get(col[0])}, literalObject.deepCopy(), dataType) : null;
+            if (minPredicate != null && maxPredicate != null) {
+                return ExpressionFactory.andFilters(minPredicate, maxPredicate);
             }
-            if (isUpperBound(node)) {
-                String maxC = maxMapping.get(col[0]);
-                return constructUpperBoundPredicate(new String[]{maxC}, literalObject, dataTypeMap.get(col[0]));
+            if (minPredicate != null) {
+                return minPredicate;
             }
-            if (isLowerBound(node)) {
-                String minC = minMapping.get(col[0]);
-                return constructLowerBoundPredicate(new String[]{minC}, literalObject, dataTypeMap.get(col[0]));
+            if (maxPredicate != null) {
+                return maxPredicate;
             }
             return ExpressionFactory.trueExpression();
         };
@@ -169,25 +193,111 @@ public class Transformations {
     public static Function<JsonNode, JsonNode> removeNonPartitionColumnsPredicatesInQuery(Set<String> partitionColumns) {
         return n -> {
             ObjectNode c = n.deepCopy();
-            JsonNode where = n.get("where_clause");
+            JsonNode where = c.get("where_clause");
             if (where == null || where instanceof NullNode) {
                 return c;
             }
-            if (IS_CONJUNCTION_AND.apply(where)) {
-                JsonNode w = transform(where, Transformations.IS_CONJUNCTION_AND,
-                        removeNonPartitionColumnsPredicatesFromAndConjunction(partitionColumns));
-                c.set("where_clause", w);
-            } else if (IS_COMPARISON.apply(where)) {
-                JsonNode w = transform(where, IS_COMPARISON,
-                        removeNonPartitionColumnsPredicatesFromComparison(partitionColumns));
-                c.set("where_clause", w);
-            } else {
-                c.set("where_clause", null);
-            }
+            c.set("where_clause", removeNonPartitionColumnsPredicates(where, partitionColumns));
             return c;
         };
     }
 
+    /**
+     * Simplification and relaxation run on the typed ast with one conversion from and to json.
+     * @param where where clause. It is not modified.
+     * @return filter which only refers to the partition columns, or NullNode if there is no such filter
+     */
+    public static JsonNode removeNonPartitionColumnsPredicates(JsonNode where, Set<String> partitionColumns) {
+        if (where == null || where instanceof NullNode) {
+            return NullNode.getInstance();
+        }
+        Expression expression = AstConverter.toExpression(where);
+        // Simplify first so that a constant FALSE is not relaxed to TRUE
+        Expression simplified = PredicateSimplifier.simplify(expression);
+        Expression result = PredicateSimplifier.isFalse(simplified) ? simplified :
+                PredicateSimplifier.simplify(relaxToPartitionColumns(simplified, partitionColumns));
+        if (PredicateSimplifier.isTrue(result)) {
+            return NullNode.getInstance();
+        }
+        return result == expression ? where : AstConverter.toJson(result);
+    }
+
+    /**
+     * Weaken the predicate so that it only refers to the partition columns.
+     * Every row which satisfies the input also satisfies the output hence the output can be used for pruning.
+     * AND and OR are relaxed child by child. NOT of AND/OR is pushed down with De Morgan's law.
+     * Any other expression, for example comparison, IN, BETWEEN, IS NULL or function, is kept only if all its columns
+     * are partition columns and it does not have a sub query, otherwise it is replaced by TRUE.
+     * Input is not modified.
+     */
+    public static JsonNode relaxToPartitionColumns(JsonNode node, Set<String> partitionColumns) {
+        Expression expression = AstConverter.toExpression(node);
+        Expression result = relaxToPartitionColumns(expression, partitionColumns);
+        return result == expression ? node : AstConverter.toJson(result);
+    }
+
+    /**
+     * Same as {@link #relaxToPartitionColumns(JsonNode, Set)}, sub trees which are kept are shared with the input
+     */
+    public static Expression relaxToPartitionColumns(Expression expression, Set<String> partitionColumns) {
+        if (expression instanceof Expression.Conjunction conjunction && (conjunction.isAnd() || conjunction.isOr())) {
+            return conjunction.transformChildren(child -> relaxToPartitionColumns(child, partitionColumns));
+        }
+        if (expression instanceof Expression.Operator not && not.type().equals(OPERATOR_TYPE_NOT)
+                && not.children().size() == 1) {
+            Expression child = not.children().get(0);
+            if (child instanceof Expression.Conjunction conjunction && (conjunction.isAnd() || conjunction.isOr())) {
+                List<Expression> negated = new ArrayList<>(conjunction.children().size());
+                for (Expression c : conjunction.children()) {
+                    negated.add(new Expression.Operator(OPERATOR_TYPE_NOT, List.of(c)));
+                }
+                String type = conjunction.isAnd() ? CONJUNCTION_TYPE_OR : CONJUNCTION_TYPE_AND;
+                return relaxToPartitionColumns(new Expression.Conjunction(type, negated), partitionColumns);
+            }
+            if (child instanceof Expression.Operator inner && inner.type().equals(OPERATOR_TYPE_NOT)
+                    && inner.children().size() == 1) {
+                return relaxToPartitionColumns(inner.children().get(0), partitionColumns);
+            }
+        }
+        List<List<String>> columnNames = new ArrayList<>();
+        if (!collectColumnNames(expression, columnNames) || columnNames.isEmpty()) {
+            return PredicateSimplifier.trueExpression();
+        }
+        for (List<String> columnName : columnNames) {
+            if (columnName.size() != 1 || !partitionColumns.contains(columnName.get(0))) {
+                return PredicateSimplifier.trueExpression();
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Json which is not modeled by the ast is searched with the json functions
+     * @return false if the expression has a sub query
+     */
+    private static boolean collectColumnNames(Expression expression, List<List<String>> result) {
+        List<JsonNode> json = new ArrayList<>();
+        if (expression instanceof Expression.ColumnRef ref) {
+            result.add(ref.columnNames());
+        } else if (expression instanceof Expression.Other other) {
+            json.add(other.node());
+        } else if (expression instanceof Expression.Function function && function.orderBys() != null) {
+            json.add(function.orderBys());
+        }
+        for (JsonNode node : json) {
+            if (!collectSubQueries(node).isEmpty()) {
+                return false;
+            }
+            result.addAll(collectColumnNames(collectReferences(node)));
+        }
+        for (Expression child : expression.children()) {
+            if (!collectColumnNames(child, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static Function<JsonNode, JsonNode> replaceEqualMinMaxInQuery(String statTable,
                                                                          Map<String, String> minMapping,
                                                                          Map<String, String> maxMapping,
@@ -196,14 +306,14 @@ public class Transformations {
             ObjectNode c = n.deepCopy();
             ObjectNode from_table = (ObjectNode) c.get("from_table");
             from_table.put("table_name", statTable);
-            JsonNode where = n.get("where_clause");
+            JsonNode where = c.get("where_clause");
             if (where == null || where instanceof NullNode) {
                 return c;
             }
             if (IS_CONJUNCTION_AND.apply(where)) {
                 JsonNode w = Transformations.transform(where, IS_CONJUNCTION_AND, replaceEqualMinMaxFromAndConjunction(minMapping, maxMapping, dataTypeMap));
                 c.set("where_clause", w);
-            } else if (IS_COMPARISON.apply(n)) {
+            } else if (IS_COMPARISON.apply(where)) {
                 JsonNode w = Transformations.transform(where, IS_COMPARISON, replaceEqualMinMaxFromComparison(minMapping, maxMapping, dataTypeMap));
                 c.set("where_clause", w);
             } else {
@@ -263,24 +373,22 @@ public class Transformations {
 
 
     /**
-     *  if(max_a=null, true, cast(max_a as int) &gt;= cast(x as int)
+     *  if(max_a is null, true, cast(max_a as int) &gt;= cast(x as int)
      **/
     public static JsonNode constructUpperBoundPredicate(String[] col, JsonNode literal, String datatype) {
-        JsonNode nullNode = ExpressionFactory.constant(null);
         JsonNode referenceNode = ExpressionFactory.reference(col);
-        JsonNode ifCondition = ExpressionFactory.equalExpr(referenceNode, nullNode);
+        JsonNode ifCondition = ExpressionFactory.isNullExpr(referenceNode);
         JsonNode then = ExpressionFactory.cast(ExpressionFactory.constant("t"), "BOOLEAN");
         JsonNode elseExpression = ExpressionFactory.greaterThanOrEqualExpr(ExpressionFactory.cast(referenceNode.deepCopy(), datatype), ExpressionFactory.cast(literal, datatype));
         return ExpressionFactory.ifExpr(ifCondition, then, elseExpression);
     }
 
     /**
-     *  if(min_a=null, true, cast(min_a as int) &lt;= cast(x as int)
+     *  if(min_a is null, true, cast(min_a as int) &lt;= cast(x as int)
      **/
     public static JsonNode constructLowerBoundPredicate(String[] col, JsonNode literal, String datatype) {
-        JsonNode nullNode = ExpressionFactory.constant(null);
         JsonNode referenceNode = ExpressionFactory.reference(col);
-        JsonNode ifCondition = ExpressionFactory.equalExpr(referenceNode, nullNode);
+        JsonNode ifCondition = ExpressionFactory.isNullExpr(referenceNode);
         JsonNode then = ExpressionFactory.cast(ExpressionFactory.constant("t"), "BOOLEAN");
         JsonNode elseExpression = ExpressionFactory.lessThanOrEqualExpr(ExpressionFactory.cast(referenceNode.deepCopy(), datatype), ExpressionFactory.cast(literal, datatype));
         return ExpressionFactory.ifExpr(ifCondition, then, elseExpression);
@@ -288,10 +396,9 @@ public class Transformations {
 
 
     public static Function<JsonNode, JsonNode> removeNonPartitionColumnsPredicatesFromComparison(Set<String> partitions) {
-        return n -> {
-            JsonNode node = n.deepCopy();
+        return node -> {
             List<JsonNode> references = collectReferences(node);
-            if (references.isEmpty()) {
+            if (references.isEmpty() || !collectSubQueries(node).isEmpty()) {
                 return ExpressionFactory.trueExpression();
             }
             List<List<String>> columnNames = collectColumnNames(references);
@@ -309,14 +416,17 @@ public class Transformations {
     }
 
     public static Function<JsonNode, JsonNode> removeNonPartitionColumnsPredicatesFromAndConjunction(Set<String> partitions) {
+        Function<JsonNode, JsonNode> fromComparison = removeNonPartitionColumnsPredicatesFromComparison(partitions);
         return n -> {
-            ObjectNode node = n.deepCopy();
+            // Children are replaced hence a shallow copy is sufficient
+            ObjectNode node = ((ObjectNode) n).objectNode();
+            node.setAll((ObjectNode) n);
             Iterator<JsonNode> it = node.get("children").iterator();
             ArrayNode newChildren = new ArrayNode(JsonNodeFactory.instance);
 
             while (it.hasNext()) {
                 JsonNode next = it.next();
-                JsonNode nc = removeNonPartitionColumnsPredicatesFromComparison(partitions).apply(next);
+                JsonNode nc = fromComparison.apply(next);
                 newChildren.add(nc);
             }
             node.set("children", newChildren);
@@ -337,30 +447,14 @@ public class Transformations {
         return result;
     }
 
+    /**
+     * Replace every node matching matchFn with the output of transformFn. Nodes are modified in place.
+     * Traversal is iterative, see {@link RewriteEngine} to apply multiple rules in one traversal.
+     */
     public static JsonNode transform(JsonNode node, Function<JsonNode, Boolean> matchFn,
                                      Function<JsonNode, JsonNode> transformFn) {
-        if (matchFn.apply(node)) {
-            return transformFn.apply(node);
-        }
-
-        if (node instanceof ObjectNode objectNode) {
-            for (Iterator<String> it = objectNode.fieldNames(); it.hasNext(); ) {
-                String field = it.next();
-                JsonNode current = objectNode.get(field);
-                JsonNode newNode = transform(current, matchFn, transformFn);
-                objectNode.set(field, newNode);
-            }
-            return objectNode;
-        }
-        if (node instanceof ArrayNode arrayNode) {
-            for (int i = 0; i < arrayNode.size(); i++) {
-                JsonNode current = arrayNode.get(i);
-                JsonNode newNode = transform(current, matchFn, transformFn);
-                arrayNode.set(i, newNode);
-            }
-            return arrayNode;
-        }
-        return node;
+        return new RewriteEngine(List.of(new RewriteEngine.Rule("transform", matchFn, transformFn)))
+                .rewrite(node);
     }
 
     public static List<JsonNode> collectLiterals(JsonNode tree) {
@@ -383,20 +477,24 @@ public class Transformations {
 
     public static void find(JsonNode node, Function<JsonNode, Boolean> matchFn,
                             Consumer<JsonNode> collectFn) {
-        if (matchFn.apply(node)) {
-            collectFn.accept(node);
-            return;
-        }
-        if(node instanceof ArrayNode arrayNode) {
-            for (Iterator<JsonNode> it = arrayNode.elements(); it.hasNext(); ) {
-                JsonNode elem = it.next();
-                find(elem, matchFn, collectFn);
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        List<JsonNode> children = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            JsonNode current = stack.pop();
+            if (matchFn.apply(current)) {
+                collectFn.accept(current);
+                continue;
+            }
+            children.clear();
+            if (current instanceof ArrayNode arrayNode) {
+                arrayNode.elements().forEachRemaining(children::add);
+            } else {
+                getChildren(current).forEach(children::add);
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
             }
-            return;
-        }
-        Iterable<JsonNode> children = getChildren(node);
-        for (JsonNode c : children) {
-            find(c, matchFn, collectFn);
         }
     }
 
@@ -414,31 +512,246 @@ public class Transformations {
         JsonNode right = node.get("right");
         if (left != null && right != null) {
             return List.of(left, right);
-        } else {
-            return List.of();
         }
+        JsonNode input = node.get("input");
+        if (input != null && node.has("lower") && node.has("upper")) {
+            return List.of(input, node.get("lower"), node.get("upper"));
+        }
+        JsonNode caseChecks = node.get("case_checks");
+        if (caseChecks != null) {
+            List<JsonNode> result = new ArrayList<>();
+            for (JsonNode check : caseChecks) {
+                result.add(check.get("when_expr"));
+                result.add(check.get("then_expr"));
+            }
+            result.add(node.get("else_expr"));
+            return result;
+        }
+        return List.of();
+    }
+
+    /**
+     *
+     * @return cache used by parseToTree. It can be resized or cleared and exposes the hit rate
+     */
+    public static ParseTreeCache getParseTreeCache() {
+        return parseTreeCache;
     }
 
     public static JsonNode parseToTree(Connection connection, String sql) throws JsonProcessingException {
-        String escapeSql = escapeSpecialChar(sql);
-        String jsonString = ConnectionPool.collectFirst(connection, String.format(JSON_SERIALIZE_SQL, escapeSql), String.class);
-        return objectMapper.readTree(jsonString);
+        JsonNode cached = parseTreeCache.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        return parseAndCache(connection, sql);
     }
 
     public static JsonNode parseToTree(String sql) throws SQLException, JsonProcessingException {
-        String escapeSql = escapeSpecialChar(sql);
-        String jsonString = ConnectionPool.collectFirst(String.format(JSON_SERIALIZE_SQL, escapeSql), String.class);
-        return objectMapper.readTree(jsonString);
+        JsonNode cached = parseTreeCache.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection connection = ConnectionPool.getConnection()) {
+            return parseAndCache(connection, sql);
+        }
+    }
+
+    /**
+     * Miss is already counted by the caller, the cache is not looked up again
+     */
+    private static JsonNode parseAndCache(Connection connection, String sql) throws JsonProcessingException {
+        String jsonString = collectFirstWithParameter(connection, PREPARED_JSON_SERIALIZE_SQL, sql);
+        JsonNode result = objectMapper.readTree(jsonString);
+        parseTreeCache.put(sql, result);
+        return result;
+    }
+
+    /**
+     * Parse the sql and build only the requested fields of the first statement node.
+     * Output of json_serialize_sql is streamed with JsonParser, fields which are not requested are skipped
+     * without creating the nodes and parsing stops after the first statement.
+     *
+     * @param nodeFields fields of the first statement node for example where_clause and from_table.
+     *                   Field type is always included.
+     * @return tree in the same shape as returned by parseToTree hence getWhereClause, getTableOrPath,
+     * getTableFunction etc. can be used on it. Result is not cached.
+     * @throws SQLException if the sql can not be parsed
+     */
+    public static JsonNode parseToPartialTree(Connection connection, String sql, Set<String> nodeFields) throws SQLException, JsonProcessingException {
+        String jsonString = collectFirstWithParameter(connection, PREPARED_JSON_SERIALIZE_SQL, sql);
+        ObjectNode result = objectMapper.createObjectNode();
+        try (JsonParser parser = objectMapper.getFactory().createParser(jsonString)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SQLException("Invalid parse tree for sql " + sql);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("statements")) {
+                    result.set(field, readFirstStatement(parser, nodeFields));
+                    break;
+                }
+                result.set(field, objectMapper.readTree(parser));
+            }
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (result.path("error").asBoolean()) {
+            throw new SQLException(result.path("error_message").asText() + " : " + sql);
+        }
+        return result;
+    }
+
+    public static JsonNode parseToPartialTree(String sql, Set<String> nodeFields) throws SQLException, JsonProcessingException {
+        try (Connection connection = ConnectionPool.getConnection()) {
+            return parseToPartialTree(connection, sql, nodeFields);
+        }
+    }
+
+    private static ArrayNode readFirstStatement(JsonParser parser, Set<String> nodeFields) throws IOException {
+        ArrayNode statements = objectMapper.createArrayNode();
+        if (parser.currentToken() != JsonToken.START_ARRAY || parser.nextToken() != JsonToken.START_OBJECT) {
+            return statements;
+        }
+        ObjectNode statement = statements.addObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!field.equals("node")) {
+                parser.skipChildren();
+                continue;
+            }
+            ObjectNode node = statement.putObject("node");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String nodeField = parser.currentName();
+                parser.nextToken();
+                if (nodeField.equals("type") || nodeFields.contains(nodeField)) {
+                    node.set(nodeField, objectMapper.readTree(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return statements;
     }
 
     public static String parseToSql(Connection connection, JsonNode node) throws SQLException {
-        String sql = String.format(JSON_DESERIALIZE_SQL, node.toString());
-        return ConnectionPool.collectFirst(connection, sql, String.class);
+        return collectFirstWithParameter(connection, PREPARED_JSON_DESERIALIZE_SQL, node.toString());
     }
 
     public static String parseToSql(JsonNode node) throws SQLException {
-        String sql = String.format(JSON_DESERIALIZE_SQL, node.toString());
-        return ConnectionPool.collectFirst(sql, String.class);
+        try (Connection connection = ConnectionPool.getConnection()) {
+            return parseToSql(connection, node);
+        }
+    }
+
+    /**
+     *
+     * @param connection
+     * @param sqls sqls to be parsed
+     * @return parse trees in the same order as sqls.
+     * Sqls which are not cached are parsed in batches of BATCH_SIZE, one round trip per batch.
+     */
+    public static List<JsonNode> parseToTrees(Connection connection, List<String> sqls) throws JsonProcessingException {
+        return parseToTrees(connection, sqls, true);
+    }
+
+    /**
+     * @param useCache false to neither read nor populate the parse tree cache. Used for one off bulk parsing
+     *                 like query logs which would otherwise evict the entries of the interactive queries.
+     */
+    public static List<JsonNode> parseToTrees(Connection connection, List<String> sqls, boolean useCache) throws JsonProcessingException {
+        JsonNode[] result = new JsonNode[sqls.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < sqls.size(); i++) {
+            result[i] = useCache ? parseTreeCache.get(sqls.get(i)) : null;
+            if (result[i] == null) {
+                missing.add(i);
+            }
+        }
+        for (int start = 0; start < missing.size(); start += BATCH_SIZE) {
+            List<Integer> batch = missing.subList(start, Math.min(missing.size(), start + BATCH_SIZE));
+            List<String> batchSqls = batch.stream().map(sqls::get).toList();
+            List<String> jsonStrings = collectBatchWithParameters(connection, BATCH_JSON_SERIALIZE_SQL, batchSqls);
+            for (int i = 0; i < batch.size(); i++) {
+                JsonNode tree = objectMapper.readTree(jsonStrings.get(i));
+                if (useCache) {
+                    parseTreeCache.put(batchSqls.get(i), tree);
+                }
+                result[batch.get(i)] = tree;
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    public static List<JsonNode> parseToTrees(List<String> sqls) throws SQLException, JsonProcessingException {
+        try (Connection connection = ConnectionPool.getConnection()) {
+            return parseToTrees(connection, sqls);
+        }
+    }
+
+    /**
+     *
+     * @param connection
+     * @param nodes parse trees to be converted to sql
+     * @return sqls in the same order as nodes. Conversion is done in batches of BATCH_SIZE, one round trip per batch.
+     */
+    public static List<String> parseToSqls(Connection connection, List<JsonNode> nodes) {
+        List<String> result = new ArrayList<>(nodes.size());
+        for (int start = 0; start < nodes.size(); start += BATCH_SIZE) {
+            List<String> jsonStrings = nodes.subList(start, Math.min(nodes.size(), start + BATCH_SIZE))
+                    .stream().map(JsonNode::toString).toList();
+            result.addAll(collectBatchWithParameters(connection, BATCH_JSON_DESERIALIZE_SQL, jsonStrings));
+        }
+        return result;
+    }
+
+    public static List<String> parseToSqls(List<JsonNode> nodes) throws SQLException {
+        try (Connection connection = ConnectionPool.getConnection()) {
+            return parseToSqls(connection, nodes);
+        }
+    }
+
+    private static String collectFirstWithParameter(Connection connection, String sql, String parameter) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, parameter);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error running sql " + sql, e);
+        }
+    }
+
+    private static List<String> collectBatchWithParameters(Connection connection, String sql, List<String> parameters) {
+        if (parameters.isEmpty()) {
+            return List.of();
+        }
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                values.append(",");
+            }
+            values.append("(").append(i).append(", cast(? as varchar))");
+        }
+        String batchSql = String.format(sql, values);
+        try (PreparedStatement statement = connection.prepareStatement(batchSql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setString(i + 1, parameters.get(i));
+            }
+            List<String> result = new ArrayList<>(parameters.size());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    result.add(resultSet.getString(1));
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error running sql " + sql, e);
+        }
     }
 
     public static List<JsonNode> collectReferencesWithCast(JsonNode tree) {
@@ -503,7 +816,13 @@ public class Transformations {
     }
 
     public static String[][]  getHivePartition(JsonNode tree){
-        var fromTable = getFirstStatementNode(tree).get("from_table");
+        return getHivePartitionFromTable(getFirstStatementNode(tree).get("from_table"));
+    }
+
+    /**
+     * @param fromTable TABLE_FUNCTION node for example read_parquet('path', hive_types = {...})
+     */
+    public static String[][] getHivePartitionFromTable(JsonNode fromTable) {
         var tableFunction = fromTable.get("function");
         var children = (ArrayNode) tableFunction.get("children");
         JsonNode partition = null;
@@ -606,7 +925,4 @@ public class Transformations {
             }
         }
     }
-    private static String escapeSpecialChar(String sql) {
-        return sql.replaceAll("'", "''");
-    }
 }
@@ -0,0 +1,297 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.*;
+import io.github.tanejagagan.sql.commons.Transformations;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static io.github.tanejagagan.sql.commons.ExpressionConstants.*;
+
+/**
+ * Lossless conversion between the DuckDB json parse tree and the typed ast.
+ * A json node is converted to a typed record only if it has exactly the fields, in the same order,
+ * which DuckDB writes for that class. Anything else is kept as {@link Expression.Other}
+ * so that toJson(toExpression(node)) is always equal to node.
+ */
+public class AstConverter {
+
+    private static final List<String> COLUMN_REF_FIELDS = List.of("class", "type", "alias", "query_location",
+            "column_names");
+    private static final List<String> CONSTANT_FIELDS = List.of("class", "type", "alias", "query_location",
+            "value");
+    private static final List<String> COMPARISON_FIELDS = List.of("class", "type", "alias", "query_location",
+            "left", "right");
+    private static final List<String> CONJUNCTION_FIELDS = List.of("class", "type", "alias", "query_location",
+            "children");
+    private static final List<String> CAST_FIELDS = List.of("class", "type", "alias", "query_location",
+            "child", "cast_type", "try_cast");
+    private static final List<String> FUNCTION_FIELDS = List.of("class", "type", "alias", "query_location",
+            "function_name", "schema", "children", "filter", "order_bys", "distinct", "is_operator",
+            "export_state", "catalog");
+    private static final String OPERATOR_CLASS = "OPERATOR";
+
+    public static Expression toExpression(JsonNode node) {
+        if (!(node instanceof ObjectNode objectNode) || !node.has("class") || !node.has("type")) {
+            return new Expression.Other(node);
+        }
+        String clazz = node.get("class").asText();
+        String type = node.get("type").asText();
+        String alias = node.path("alias").asText();
+        switch (clazz) {
+            case COLUMN_REF_CLASS -> {
+                if (type.equals(COLUMN_REF_TYPE) && hasFields(objectNode, COLUMN_REF_FIELDS)) {
+                    List<String> names = new ArrayList<>();
+                    for (JsonNode name : node.get("column_names")) {
+                        names.add(name.asText());
+                    }
+                    return new Expression.ColumnRef(names, alias, location(node));
+                }
+            }
+            case CONSTANT_CLASS -> {
+                if (type.equals(CONSTANT_TYPE) && hasFields(objectNode, CONSTANT_FIELDS)) {
+                    return new Expression.Constant(node.get("value"), alias, location(node));
+                }
+            }
+            case COMPARISON_CLASS -> {
+                if (hasFields(objectNode, COMPARISON_FIELDS)) {
+                    return new Expression.Comparison(type, toExpression(node.get("left")),
+                            toExpression(node.get("right")), alias, location(node));
+                }
+            }
+            case CONJUNCTION_CLASS -> {
+                if (hasFields(objectNode, CONJUNCTION_FIELDS)) {
+                    return new Expression.Conjunction(type, toExpressions(node.get("children")), alias,
+                            location(node));
+                }
+            }
+            case CAST_CLASS -> {
+                if (type.equals(CAST_TYPE_OPERATOR) && hasFields(objectNode, CAST_FIELDS)) {
+                    return new Expression.Cast(toExpression(node.get("child")), node.get("cast_type"),
+                            node.get("try_cast").asBoolean(), alias, location(node));
+                }
+            }
+            case FUNCTION_CLASS -> {
+                if (type.equals(FUNCTION_TYPE) && hasFields(objectNode, FUNCTION_FIELDS)) {
+                    JsonNode filter = node.get("filter");
+                    return new Expression.Function(node.get("function_name").asText(),
+                            node.get("schema").asText(),
+                            toExpressions(node.get("children")),
+                            filter.isNull() ? null : toExpression(filter),
+                            node.get("order_bys"),
+                            node.get("distinct").asBoolean(),
+                            node.get("is_operator").asBoolean(),
+                            node.get("export_state").asBoolean(),
+                            node.get("catalog").asText(),
+                            alias, location(node));
+                }
+            }
+            case OPERATOR_CLASS -> {
+                if (hasFields(objectNode, CONJUNCTION_FIELDS)) {
+                    return new Expression.Operator(type, toExpressions(node.get("children")), alias,
+                            location(node));
+                }
+            }
+            default -> {
+            }
+        }
+        return new Expression.Other(node);
+    }
+
+    public static JsonNode toJson(Expression expression) {
+        if (expression instanceof Expression.Other other) {
+            return other.node().deepCopy();
+        }
+        if (expression instanceof Expression.ColumnRef ref) {
+            ObjectNode result = header(COLUMN_REF_CLASS, COLUMN_REF_TYPE, ref);
+            ArrayNode names = result.putArray("column_names");
+            ref.columnNames().forEach(names::add);
+            return result;
+        }
+        if (expression instanceof Expression.Constant constant) {
+            ObjectNode result = header(CONSTANT_CLASS, CONSTANT_TYPE, constant);
+            result.set("value", constant.value().deepCopy());
+            return result;
+        }
+        if (expression instanceof Expression.Comparison comparison) {
+            ObjectNode result = header(COMPARISON_CLASS, comparison.type(), comparison);
+            result.set("left", toJson(comparison.left()));
+            result.set("right", toJson(comparison.right()));
+            return result;
+        }
+        if (expression instanceof Expression.Conjunction conjunction) {
+            ObjectNode result = header(CONJUNCTION_CLASS, conjunction.type(), conjunction);
+            result.set("children", toJson(conjunction.children()));
+            return result;
+        }
+        if (expression instanceof Expression.Cast cast) {
+            ObjectNode result = header(CAST_CLASS, CAST_TYPE_OPERATOR, cast);
+            result.set("child", toJson(cast.child()));
+            result.set("cast_type", cast.castType().deepCopy());
+            result.put("try_cast", cast.tryCast());
+            return result;
+        }
+        if (expression instanceof Expression.Function function) {
+            ObjectNode result = header(FUNCTION_CLASS, FUNCTION_TYPE, function);
+            result.put("function_name", function.functionName());
+            result.put("schema", function.schema());
+            result.set("children", toJson(function.arguments()));
+            result.set("filter", function.filter() == null ? NullNode.getInstance() : toJson(function.filter()));
+            result.set("order_bys", function.orderBys().deepCopy());
+            result.put("distinct", function.distinct());
+            result.put("is_operator", function.isOperator());
+            result.put("export_state", function.exportState());
+            result.put("catalog", function.catalog());
+            return result;
+        }
+        if (expression instanceof Expression.Operator operator) {
+            ObjectNode result = header(OPERATOR_CLASS, operator.type(), operator);
+            result.set("children", toJson(operator.children()));
+            return result;
+        }
+        throw new UnsupportedOperationException("Unsupported expression " + expression);
+    }
+
+    public static TableRef toTableRef(JsonNode node) {
+        ObjectNode template = (ObjectNode) node;
+        String type = node.get("type").asText();
+        if (type.equals("BASE_TABLE") && node.has("table_name") && node.has("schema_name")
+                && node.has("catalog_name") && node.has("alias")) {
+            return new TableRef.BaseTable(node.get("catalog_name").asText(), node.get("schema_name").asText(),
+                    node.get("table_name").asText(), node.get("alias").asText(), template);
+        }
+        if (type.equals("TABLE_FUNCTION") && node.has("function") && node.has("alias")
+                && toExpression(node.get("function")) instanceof Expression.Function function) {
+            return new TableRef.TableFunction(function, node.get("alias").asText(), template);
+        }
+        return new TableRef.Other(template);
+    }
+
+    public static JsonNode toJson(TableRef tableRef) {
+        ObjectNode template = tableRef.template();
+        ObjectNode result = new ObjectNode(JsonNodeFactory.instance);
+        for (Iterator<String> it = template.fieldNames(); it.hasNext(); ) {
+            String field = it.next();
+            JsonNode value = template.get(field);
+            if (tableRef instanceof TableRef.BaseTable baseTable) {
+                switch (field) {
+                    case "catalog_name" -> value = TextNode.valueOf(baseTable.catalogName());
+                    case "schema_name" -> value = TextNode.valueOf(baseTable.schemaName());
+                    case "table_name" -> value = TextNode.valueOf(baseTable.tableName());
+                    case "alias" -> value = TextNode.valueOf(baseTable.alias());
+                    default -> value = value.deepCopy();
+                }
+            } else if (tableRef instanceof TableRef.TableFunction tableFunction) {
+                switch (field) {
+                    case "function" -> value = toJson(tableFunction.function());
+                    case "alias" -> value = TextNode.valueOf(tableFunction.alias());
+                    default -> value = value.deepCopy();
+                }
+            } else {
+                value = value.deepCopy();
+            }
+            result.set(field, value);
+        }
+        return result;
+    }
+
+    /**
+     * @param node json object with type SELECT_NODE
+     */
+    public static Select toSelect(JsonNode node) {
+        if (!Transformations.IS_SELECT.apply(node)) {
+            throw new IllegalArgumentException("Not a select node " + node.get("type"));
+        }
+        JsonNode where = node.get("where_clause");
+        return new Select(toExpressions(node.get("select_list")),
+                toTableRef(node.get("from_table")),
+                where == null || where.isNull() ? null : toExpression(where),
+                (ObjectNode) node);
+    }
+
+    public static JsonNode toJson(Select select) {
+        ObjectNode result = new ObjectNode(JsonNodeFactory.instance);
+        for (Iterator<String> it = select.template().fieldNames(); it.hasNext(); ) {
+            String field = it.next();
+            switch (field) {
+                case "select_list" -> result.set(field, toJson(select.selectList()));
+                case "from_table" -> result.set(field, toJson(select.fromTable()));
+                case "where_clause" -> result.set(field, select.whereClause() == null ?
+                        NullNode.getInstance() : toJson(select.whereClause()));
+                default -> result.set(field, select.template().get(field).deepCopy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param tree parse tree returned by Transformations.parseToTree
+     * @return first statement of the tree as select
+     */
+    public static Select firstSelect(JsonNode tree) {
+        return toSelect(Transformations.getFirstStatementNode(tree));
+    }
+
+    /**
+     * @return copy of the tree with the first statement replaced by the select
+     */
+    public static JsonNode withFirstSelect(JsonNode tree, Select select) {
+        ObjectNode result = tree.deepCopy();
+        ObjectNode statement = (ObjectNode) result.get("statements").get(0);
+        statement.set("node", toJson(select));
+        return result;
+    }
+
+    private static List<Expression> toExpressions(JsonNode array) {
+        List<Expression> result = new ArrayList<>(array.size());
+        for (JsonNode child : array) {
+            result.add(toExpression(child));
+        }
+        return result;
+    }
+
+    private static ArrayNode toJson(List<Expression> expressions) {
+        ArrayNode result = new ArrayNode(JsonNodeFactory.instance, expressions.size());
+        for (Expression expression : expressions) {
+            result.add(toJson(expression));
+        }
+        return result;
+    }
+
+    private static boolean hasFields(ObjectNode node, List<String> fields) {
+        if (node.size() != fields.size()) {
+            return false;
+        }
+        Iterator<String> it = node.fieldNames();
+        for (String field : fields) {
+            if (!it.next().equals(field)) {
+                return false;
+            }
+        }
+        return node.get("alias").isTextual() && node.get("query_location").isIntegralNumber();
+    }
+
+    private static long location(JsonNode node) {
+        return node.get("query_location").bigIntegerValue().longValue();
+    }
+
+    private static ObjectNode header(String clazz, String type, Expression expression) {
+        ObjectNode result = new ObjectNode(JsonNodeFactory.instance);
+        result.put("class", clazz);
+        result.put("type", type);
+        result.put("alias", expression.alias());
+        long location = expression.queryLocation();
+        if (location >= 0 && location <= Integer.MAX_VALUE) {
+            result.put("query_location", (int) location);
+        } else if (location >= 0) {
+            result.put("query_location", location);
+        } else {
+            // DuckDB writes unsigned 64 bit location. For example 18446744073709551615 for generated nodes
+            result.put("query_location", new BigInteger(Long.toUnsignedString(location)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.ExpressionConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Typed and immutable view of the expressions in the DuckDB json parse tree.
+ * Sub structures which are not modeled (constant value, cast type, order by of aggregate function)
+ * are kept as JsonNode and must not be modified.
+ * Expressions which are not modeled are kept as {@link Other} so that conversion back to json is lossless.
+ * These json nodes are taken from the input of {@link AstConverter#toExpression} without a copy, hence the input
+ * must not be modified afterwards, and are copied by {@link AstConverter#toJson(Expression)} since the callers
+ * modify the json trees in place. A rewrite should therefore convert once, transform the expression and convert back
+ * once, for example {@link io.github.tanejagagan.sql.commons.Transformations#removeNonPartitionColumnsPredicates}.
+ */
+public sealed interface Expression permits Expression.ColumnRef, Expression.Constant, Expression.Comparison,
+        Expression.Conjunction, Expression.Cast, Expression.Function, Expression.Operator, Expression.Other {
+
+    String alias();
+
+    long queryLocation();
+
+    /**
+     * @return direct children of the expression in the order they appear in the json tree
+     */
+    List<Expression> children();
+
+    /**
+     * @param newChildren children in the same order as returned by children()
+     * @return new expression with the children replaced. All the other fields are shared.
+     */
+    Expression withChildren(List<Expression> newChildren);
+
+    /**
+     * Apply the function bottom up.
+     * Sub trees which are not changed by the function are shared between the input and the output
+     * and if nothing changes the same instance is returned.
+     */
+    default Expression transformUp(UnaryOperator<Expression> fn) {
+        List<Expression> children = children();
+        List<Expression> newChildren = null;
+        for (int i = 0; i < children.size(); i++) {
+            Expression child = children.get(i);
+            Expression newChild = child.transformUp(fn);
+            if (newChild != child && newChildren == null) {
+                newChildren = new ArrayList<>(children.subList(0, i));
+            }
+            if (newChildren != null) {
+                newChildren.add(newChild);
+            }
+        }
+        Expression current = newChildren == null ? this : withChildren(newChildren);
+        return fn.apply(current);
+    }
+
+    record ColumnRef(List<String> columnNames, String alias, long queryLocation) implements Expression {
+        public ColumnRef {
+            columnNames = List.copyOf(columnNames);
+        }
+
+        public ColumnRef(String... columnNames) {
+            this(List.of(columnNames), "", 0);
+        }
+
+        public String lastName() {
+            return columnNames.get(columnNames.size() - 1);
+        }
+
+        @Override
+        public List<Expression> children() {
+            return List.of();
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return this;
+        }
+    }
+
+    /**
+     * @param value json object with type, is_null and value fields
+     */
+    record Constant(JsonNode value, String alias, long queryLocation) implements Expression {
+
+        public String typeId() {
+            return value.get("type").get("id").asText();
+        }
+
+        public boolean isNull() {
+            return value.get("is_null").asBoolean();
+        }
+
+        public JsonNode valueNode() {
+            return value.get("value");
+        }
+
+        @Override
+        public List<Expression> children() {
+            return List.of();
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return this;
+        }
+    }
+
+    record Comparison(String type, Expression left, Expression right, String alias,
+                      long queryLocation) implements Expression {
+
+        public Comparison(String type, Expression left, Expression right) {
+            this(type, left, right, "", 0);
+        }
+
+        @Override
+        public List<Expression> children() {
+            return List.of(left, right);
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return new Comparison(type, newChildren.get(0), newChildren.get(1), alias, queryLocation);
+        }
+    }
+
+    record Conjunction(String type, List<Expression> children, String alias,
+                       long queryLocation) implements Expression {
+        public Conjunction {
+            children = List.copyOf(children);
+        }
+
+        public Conjunction(String type, List<Expression> children) {
+            this(type, children, "", 0);
+        }
+
+        public boolean isAnd() {
+            return type.equals(ExpressionConstants.CONJUNCTION_TYPE_AND);
+        }
+
+        public boolean isOr() {
+            return type.equals(ExpressionConstants.CONJUNCTION_TYPE_OR);
+        }
+
+        /**
+         * @return same instance if fn returns every child as it is
+         */
+        public Conjunction transformChildren(UnaryOperator<Expression> fn) {
+            List<Expression> newChildren = null;
+            for (int i = 0; i < children.size(); i++) {
+                Expression child = children.get(i);
+                Expression newChild = fn.apply(child);
+                if (newChild != child && newChildren == null) {
+                    newChildren = new ArrayList<>(children.subList(0, i));
+                }
+                if (newChildren != null) {
+                    newChildren.add(newChild);
+                }
+            }
+            return newChildren == null ? this : new Conjunction(type, newChildren, alias, queryLocation);
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return new Conjunction(type, newChildren, alias, queryLocation);
+        }
+    }
+
+    /**
+     * @param castType json object with id and type_info
+     */
+    record Cast(Expression child, JsonNode castType, boolean tryCast, String alias,
+                long queryLocation) implements Expression {
+
+        public String castTypeId() {
+            return castType.get("id").asText();
+        }
+
+        @Override
+        public List<Expression> children() {
+            return List.of(child);
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return new Cast(newChildren.get(0), castType, tryCast, alias, queryLocation);
+        }
+    }
+
+    /**
+     * @param arguments arguments of the function, the children field of the json
+     * @param filter filter of the aggregate function or null
+     * @param orderBys json object of the order by modifier
+     */
+    record Function(String functionName, String schema, List<Expression> arguments, Expression filter,
+                    JsonNode orderBys, boolean distinct, boolean isOperator, boolean exportState,
+                    String catalog, String alias, long queryLocation) implements Expression {
+        public Function {
+            arguments = List.copyOf(arguments);
+        }
+
+        /**
+         * @return arguments followed by the filter if there is one
+         */
+        @Override
+        public List<Expression> children() {
+            if (filter == null) {
+                return arguments;
+            }
+            List<Expression> result = new ArrayList<>(arguments.size() + 1);
+            result.addAll(arguments);
+            result.add(filter);
+            return result;
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            int size = arguments.size();
+            return new Function(functionName, schema, newChildren.subList(0, size),
+                    filter == null ? null : newChildren.get(size), orderBys, distinct, isOperator,
+                    exportState, catalog, alias, queryLocation);
+        }
+    }
+
+    /**
+     * Class OPERATOR for example OPERATOR_NOT, OPERATOR_IS_NULL, OPERATOR_IS_NOT_NULL, COMPARE_IN and COMPARE_NOT_IN.
+     * For IN the first child is the input and rest of the children are the list.
+     */
+    record Operator(String type, List<Expression> children, String alias,
+                    long queryLocation) implements Expression {
+        public Operator {
+            children = List.copyOf(children);
+        }
+
+        public Operator(String type, List<Expression> children) {
+            this(type, children, "", 0);
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return new Operator(type, newChildren, alias, queryLocation);
+        }
+    }
+
+    /**
+     * Expression which is not modeled. It is treated as a leaf.
+     */
+    record Other(JsonNode node) implements Expression {
+
+        @Override
+        public String alias() {
+            JsonNode alias = node.get("alias");
+            return alias == null ? "" : alias.asText();
+        }
+
+        @Override
+        public long queryLocation() {
+            JsonNode location = node.get("query_location");
+            return location == null ? 0 : location.bigIntegerValue().longValue();
+        }
+
+        @Override
+        public List<Expression> children() {
+            return List.of();
+        }
+
+        @Override
+        public Expression withChildren(List<Expression> newChildren) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.ExpressionFactory;
+
+import java.util.*;
+
+import static io.github.tanejagagan.sql.commons.ExpressionConstants.*;
+
+/**
+ * Simplify boolean predicates before they are used for pruning.
+ * Simplification is bottom up and
+ * 1. Folds NOT of TRUE/FALSE, NOT of NOT and comparison of two non null constants of the same type.
+ * 2. Removes the identity (TRUE for AND, FALSE for OR) and folds the conjunction on the absorbing element.
+ * 3. Flattens nested conjunctions of the same type and removes duplicate children.
+ * Optionally the result is converted to CNF or DNF if the number of clauses stays within a bound.
+ * TRUE and FALSE are written as cast('t' as BOOLEAN) and cast('f' as BOOLEAN), the way DuckDB parses them.
+ */
+public class PredicateSimplifier {
+
+    public enum NormalForm {NONE, CNF, DNF}
+
+    public static final int DEFAULT_MAX_CLAUSES = 64;
+
+    private static final Set<String> NUMERIC_TYPES = Set.of("TINYINT", "SMALLINT", "INTEGER", "BIGINT",
+            "UTINYINT", "USMALLINT", "UINTEGER", "UBIGINT", "FLOAT", "DOUBLE", "DECIMAL");
+
+    // Two calls of these functions are not the same value hence duplicates can not be removed
+    private static final Set<String> VOLATILE_FUNCTIONS = Set.of("random", "uuid", "gen_random_uuid", "nextval",
+            "currval", "setseed");
+
+    private static final Expression TRUE = AstConverter.toExpression(ExpressionFactory.trueExpression());
+    private static final Expression FALSE = AstConverter.toExpression(ExpressionFactory.falseExpression());
+
+    public static Expression trueExpression() {
+        return TRUE;
+    }
+
+    public static Expression falseExpression() {
+        return FALSE;
+    }
+
+    public static boolean isTrue(Expression expression) {
+        return Boolean.TRUE.equals(booleanValue(expression));
+    }
+
+    public static boolean isFalse(Expression expression) {
+        return Boolean.FALSE.equals(booleanValue(expression));
+    }
+
+    public static boolean isTrue(JsonNode node) {
+        return node != null && !node.isNull() && isTrue(AstConverter.toExpression(node));
+    }
+
+    public static boolean isFalse(JsonNode node) {
+        return node != null && !node.isNull() && isFalse(AstConverter.toExpression(node));
+    }
+
+    public static Expression simplify(Expression expression) {
+        return expression.transformUp(PredicateSimplifier::simplifyNode);
+    }
+
+    /**
+     * @param maxClauses conversion is skipped and only the simplified expression is returned if
+     *                   the normal form has more clauses than maxClauses
+     */
+    public static Expression simplify(Expression expression, NormalForm normalForm, int maxClauses) {
+        Expression simplified = simplify(expression);
+        if (normalForm == NormalForm.NONE) {
+            return simplified;
+        }
+        String outer = normalForm == NormalForm.CNF ? CONJUNCTION_TYPE_AND : CONJUNCTION_TYPE_OR;
+        String inner = normalForm == NormalForm.CNF ? CONJUNCTION_TYPE_OR : CONJUNCTION_TYPE_AND;
+        List<List<Expression>> clauses = clauses(simplified, outer, inner, maxClauses);
+        if (clauses == null) {
+            return simplified;
+        }
+        List<Expression> outerChildren = new ArrayList<>(clauses.size());
+        for (List<Expression> clause : clauses) {
+            outerChildren.add(clause.size() == 1 ? clause.get(0) : new Expression.Conjunction(inner, clause));
+        }
+        Expression result = outerChildren.size() == 1 ? outerChildren.get(0) :
+                new Expression.Conjunction(outer, outerChildren);
+        return simplify(result);
+    }
+
+    /**
+     * @param node json expression, null or NullNode
+     * @return simplified json expression. Input is not modified.
+     */
+    public static JsonNode simplify(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return node;
+        }
+        Expression expression = AstConverter.toExpression(node);
+        Expression simplified = simplify(expression);
+        return simplified == expression ? node : AstConverter.toJson(simplified);
+    }
+
+    /**
+     * Simplify the where clause. A where clause which folds to TRUE is removed.
+     * @return simplified where clause or NullNode
+     */
+    public static JsonNode simplifyWhereClause(JsonNode where) {
+        JsonNode result = simplify(where);
+        if (result == null || isTrue(result)) {
+            return NullNode.getInstance();
+        }
+        return result;
+    }
+
+    private static Expression simplifyNode(Expression expression) {
+        if (expression instanceof Expression.Conjunction conjunction) {
+            return simplifyConjunction(conjunction);
+        }
+        if (expression instanceof Expression.Operator operator && operator.type().equals(OPERATOR_TYPE_NOT)
+                && operator.children().size() == 1) {
+            Expression child = operator.children().get(0);
+            Boolean value = booleanValue(child);
+            if (value != null) {
+                return value ? FALSE : TRUE;
+            }
+            if (child instanceof Expression.Operator inner && inner.type().equals(OPERATOR_TYPE_NOT)
+                    && inner.children().size() == 1) {
+                return inner.children().get(0);
+            }
+            return expression;
+        }
+        if (expression instanceof Expression.Comparison comparison) {
+            Boolean value = foldComparison(comparison);
+            if (value != null) {
+                return value ? TRUE : FALSE;
+            }
+        }
+        return expression;
+    }
+
+    private static Expression simplifyConjunction(Expression.Conjunction conjunction) {
+        if (!conjunction.isAnd() && !conjunction.isOr()) {
+            return conjunction;
+        }
+        boolean identity = conjunction.isAnd();
+        List<Expression> newChildren = new ArrayList<>(conjunction.children().size());
+        Set<String> seen = new HashSet<>();
+        boolean changed = false;
+        for (Expression child : conjunction.children()) {
+            List<Expression> flattened;
+            if (child instanceof Expression.Conjunction c && c.type().equals(conjunction.type())) {
+                flattened = c.children();
+                changed = true;
+            } else {
+                flattened = List.of(child);
+            }
+            for (Expression e : flattened) {
+                Boolean value = booleanValue(e);
+                if (value != null && value == identity) {
+                    changed = true;
+                    continue;
+                }
+                if (value != null) {
+                    return identity ? FALSE : TRUE;
+                }
+                if (isDeterministic(e) && !seen.add(key(e))) {
+                    changed = true;
+                    continue;
+                }
+                newChildren.add(e);
+            }
+        }
+        if (newChildren.isEmpty()) {
+            return identity ? TRUE : FALSE;
+        }
+        if (newChildren.size() == 1) {
+            return newChildren.get(0);
+        }
+        if (!changed) {
+            return conjunction;
+        }
+        return new Expression.Conjunction(conjunction.type(), newChildren, conjunction.alias(),
+                conjunction.queryLocation());
+    }
+
+    /**
+     * @return clauses of the normal form or null if the number of clauses is more than maxClauses
+     */
+    private static List<List<Expression>> clauses(Expression expression, String outer, String inner,
+                                                  int maxClauses) {
+        if (expression instanceof Expression.Conjunction conjunction && conjunction.type().equals(outer)) {
+            List<List<Expression>> result = new ArrayList<>();
+            for (Expression child : conjunction.children()) {
+                List<List<Expression>> childClauses = clauses(child, outer, inner, maxClauses);
+                if (childClauses == null || result.size() + childClauses.size() > maxClauses) {
+                    return null;
+                }
+                result.addAll(childClauses);
+            }
+            return result;
+        }
+        if (expression instanceof Expression.Conjunction conjunction && conjunction.type().equals(inner)) {
+            // Distribute the inner conjunction over the outer conjunctions of the children
+            List<List<Expression>> result = new ArrayList<>();
+            result.add(List.of());
+            for (Expression child : conjunction.children()) {
+                List<List<Expression>> childClauses = clauses(child, outer, inner, maxClauses);
+                if (childClauses == null || (long) result.size() * childClauses.size() > maxClauses) {
+                    return null;
+                }
+                List<List<Expression>> product = new ArrayList<>(result.size() * childClauses.size());
+                for (List<Expression> left : result) {
+                    for (List<Expression> right : childClauses) {
+                        List<Expression> combined = new ArrayList<>(left.size() + right.size());
+                        combined.addAll(left);
+                        combined.addAll(right);
+                        product.add(combined);
+                    }
+                }
+                result = product;
+            }
+            return result;
+        }
+        return List.of(List.of(expression));
+    }
+
+    private static Boolean booleanValue(Expression expression) {
+        if (expression instanceof Expression.Constant constant) {
+            if (!constant.isNull() && constant.typeId().equals("BOOLEAN")) {
+                return constant.valueNode().asBoolean();
+            }
+            return null;
+        }
+        if (expression instanceof Expression.Cast cast && !cast.tryCast() && cast.castTypeId().equals("BOOLEAN")
+                && cast.child() instanceof Expression.Constant constant
+                && !constant.isNull() && constant.typeId().equals("VARCHAR")) {
+            String value = constant.valueNode().asText().toLowerCase(Locale.ROOT);
+            return switch (value) {
+                case "t", "true" -> true;
+                case "f", "false" -> false;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    private static Boolean foldComparison(Expression.Comparison comparison) {
+        if (!(comparison.left() instanceof Expression.Constant left)
+                || !(comparison.right() instanceof Expression.Constant right)
+                || left.isNull() || right.isNull()
+                || !left.value().get("type").equals(right.value().get("type"))) {
+            return null;
+        }
+        String type = comparison.type();
+        if (NUMERIC_TYPES.contains(left.typeId())) {
+            // Decimal values are unscaled and have same scale since the types are equal
+            int c = left.valueNode().decimalValue().compareTo(right.valueNode().decimalValue());
+            return compare(type, c);
+        }
+        if (left.typeId().equals("VARCHAR") || left.typeId().equals("BOOLEAN")) {
+            // Order of java strings is not same as DuckDB hence only equality is folded
+            boolean equal = left.valueNode().equals(right.valueNode());
+            return switch (type) {
+                case COMPARE_TYPE_EQUAL -> equal;
+                case COMPARE_TYPE_NOTEQUAL -> !equal;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    private static Boolean compare(String type, int c) {
+        return switch (type) {
+            case COMPARE_TYPE_EQUAL -> c == 0;
+            case COMPARE_TYPE_NOTEQUAL -> c != 0;
+            case COMPARE_TYPE_LESSTHAN -> c < 0;
+            case COMPARE_TYPE_LESSTHANOREQUALTO -> c <= 0;
+            case COMPARE_TYPE_GREATERTHAN -> c > 0;
+            case COMPARE_TYPE_GREATERTHANOREQUALTO -> c >= 0;
+            default -> null;
+        };
+    }
+
+    private static boolean isDeterministic(Expression expression) {
+        if (expression instanceof Expression.Function function
+                && VOLATILE_FUNCTIONS.contains(function.functionName().toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        if (expression instanceof Expression.Other) {
+            // Could be a sub query
+            return false;
+        }
+        for (Expression child : expression.children()) {
+            if (!isDeterministic(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return key which is same for the expressions which differ only in the query location
+     */
+    private static String key(Expression expression) {
+        JsonNode json = AstConverter.toJson(expression);
+        removeLocation(json);
+        return json.toString();
+    }
+
+    private static void removeLocation(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            objectNode.remove("query_location");
+        }
+        for (JsonNode child : node) {
+            removeLocation(child);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+
+/**
+ * Typed and immutable view of a SELECT_NODE.
+ * Modifiers, cte map, group by, having etc. are not modeled and are written back from the template.
+ *
+ * @param whereClause where clause or null
+ * @param template json select node it is created from. Must not be modified.
+ */
+public record Select(List<Expression> selectList, TableRef fromTable, Expression whereClause, ObjectNode template) {
+
+    public Select {
+        selectList = List.copyOf(selectList);
+    }
+
+    public Select withWhereClause(Expression newWhereClause) {
+        return new Select(selectList, fromTable, newWhereClause, template);
+    }
+
+    public Select withFromTable(TableRef newFromTable) {
+        return new Select(selectList, newFromTable, whereClause, template);
+    }
+
+    public Select withSelectList(List<Expression> newSelectList) {
+        return new Select(newSelectList, fromTable, whereClause, template);
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Typed and immutable view of the from_table of a select node.
+ * Each table ref keeps the json it is created from as template so that fields which are not modeled
+ * (sample, at_clause, column_name_alias ...) are written back as is. Template must not be modified.
+ */
+public sealed interface TableRef permits TableRef.BaseTable, TableRef.TableFunction, TableRef.Other {
+
+    ObjectNode template();
+
+    record BaseTable(String catalogName, String schemaName, String tableName, String alias,
+                     ObjectNode template) implements TableRef {
+
+        public BaseTable withTableName(String newTableName) {
+            return new BaseTable(catalogName, schemaName, newTableName, alias, template);
+        }
+    }
+
+    record TableFunction(Expression.Function function, String alias, ObjectNode template) implements TableRef {
+
+        public TableFunction withFunction(Expression.Function newFunction) {
+            return new TableFunction(newFunction, alias, template);
+        }
+    }
+
+    /**
+     * Join, subquery and the rest of the table refs which are not modeled.
+     */
+    record Other(ObjectNode template) implements TableRef {
+    }
+}
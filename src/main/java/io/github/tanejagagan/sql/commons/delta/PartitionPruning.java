@@ -2,7 +2,9 @@ package io.github.tanejagagan.sql.commons.delta;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.delta.kernel.Scan;
+import io.delta.kernel.ScanBuilder;
 import io.delta.kernel.Snapshot;
 import io.delta.kernel.Table;
 import io.delta.kernel.data.FilteredColumnarBatch;
@@ -11,15 +13,22 @@ import io.delta.kernel.defaults.engine.DefaultEngine;
 import io.delta.kernel.engine.Engine;
 import io.delta.kernel.expressions.*;
 import io.delta.kernel.internal.InternalScanFileUtils;
+import io.delta.kernel.internal.SnapshotImpl;
+import io.delta.kernel.types.*;
 import io.delta.kernel.utils.CloseableIterator;
 import io.delta.kernel.utils.FileStatus;
+import io.github.tanejagagan.sql.commons.FileStatusList;
+import io.github.tanejagagan.sql.commons.PartitionListingCache;
 import org.apache.hadoop.conf.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 
 /**
@@ -53,26 +62,87 @@ public class PartitionPruning {
 
     public static List<io.github.tanejagagan.sql.commons.FileStatus> pruneFiles(String basePath,
                                                                                 JsonNode whereClause) throws SQLException, IOException {
+        return pruneFiles(basePath, whereClause, null);
+    }
+
+    /**
+     * Same as {@link #pruneFiles(String, JsonNode)} and the result is cached for the where clause.
+     * Cached result is valid till a new version is committed, that is, till the modification time of _delta_log changes.
+     * Every call returns its own copy of the cached files hence the result can be modified e.g. sorted.
+     *
+     * @param cache cache of the pruned files or null. Not used for the tables which are not on a local or mounted file system.
+     */
+    public static List<io.github.tanejagagan.sql.commons.FileStatus> pruneFiles(String basePath,
+                                                                                JsonNode whereClause,
+                                                                                PartitionListingCache cache) throws SQLException, IOException {
+        if (cache == null || basePath.contains("://")) {
+            return pruneFilesNoCache(basePath, whereClause);
+        }
+        // Same filter at a different position of a query is the same key
+        String key = "delta:" + basePath + ":" + (whereClause == null ? "" : withoutLocations(whereClause.deepCopy()).toString());
+        try {
+            return new FileStatusList(cache.get(Path.of(basePath, "_delta_log"), key, () -> {
+                try {
+                    return pruneFilesNoCache(basePath, whereClause);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        } catch (NoSuchFileException e) {
+            return pruneFilesNoCache(basePath, whereClause);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw e;
+        }
+    }
+
+    private static JsonNode withoutLocations(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            objectNode.remove("query_location");
+        }
+        node.forEach(PartitionPruning::withoutLocations);
+        return node;
+    }
+
+    private static List<io.github.tanejagagan.sql.commons.FileStatus> pruneFilesNoCache(String basePath,
+                                                                                        JsonNode whereClause) throws SQLException, IOException {
 
         // If the where clause is empty, prune files without partition filtering
         if (whereClause.isEmpty()) {
             return getAllFilesFromDeltaTable(basePath);
         }
+        FileStatusList result = new FileStatusList();
+        forEachFile(basePath, whereClause, result::add);
+        result.trimToSize();
+        return result;
+    }
 
+    /**
+     * Streaming variant of {@link #pruneFiles(String, JsonNode)}, files are passed to the consumer in the order of
+     * the scan files of the delta log and are not collected.
+     *
+     * @param whereClause where clause or null to list all the files
+     */
+    public static void forEachFile(String basePath,
+                                   JsonNode whereClause,
+                                   Consumer<io.github.tanejagagan.sql.commons.FileStatus> consumer) throws SQLException, IOException {
         // Create a new Engine instance with the provided Configuration
         Engine engine = DefaultEngine.create(new Configuration());
 
         // Get the Delta table and its latest snapshot
         Table deltaTable = Table.forPath(engine, basePath);
         Snapshot snapshot = deltaTable.getLatestSnapshot(engine);
-        // Convert the where clause to a Delta predicate
-        Predicate deltaLakePredicate = (Predicate) Transformations.toDeltaPredicate(whereClause);
-        Scan filterScan = snapshot.getScanBuilder(engine)
-                .withFilter(engine, deltaLakePredicate)
-                .build();
-
-        // Process the scan to collect matching files
-        List<io.github.tanejagagan.sql.commons.FileStatus> result = new ArrayList<>();
+        ScanBuilder scanBuilder = snapshot.getScanBuilder(engine);
+        if (whereClause != null && !whereClause.isEmpty()) {
+            // Convert the where clause to a Delta predicate
+            Predicate deltaLakePredicate = (Predicate) Transformations.toDeltaPredicate(whereClause);
+            scanBuilder = scanBuilder.withFilter(engine, deltaLakePredicate);
+        }
+        Scan filterScan = scanBuilder.build();
+
+        // Process the scan to pass the matching files
         try (CloseableIterator<FilteredColumnarBatch> fileIter = filterScan.getScanFiles(engine)) {
             while (fileIter.hasNext()) {
                 FilteredColumnarBatch batch = fileIter.next();
@@ -81,7 +151,7 @@ public class PartitionPruning {
                         Row row = rowIter.next();
                         FileStatus fileStatus = InternalScanFileUtils.getAddFileStatus(row);
                         // Create a new FileStatus object with the file path, size, and modification time
-                        result.add(new io.github.tanejagagan.sql.commons.FileStatus(
+                        consumer.accept(new io.github.tanejagagan.sql.commons.FileStatus(
                                 fileStatus.getPath().replaceFirst("^file:", ""),
                                 fileStatus.getSize(),
                                 fileStatus.getModificationTime())
@@ -89,10 +159,71 @@ public class PartitionPruning {
                     }
                 }
             }
-            return result;
         }
     }
 
+    /**
+     * Data files of a table can be read with read_parquet only if the table does not use deletion vectors or
+     * column mapping. Partition values are read from the hive style directories of the files.
+     *
+     * @return name and DuckDB type of the partition columns
+     * @throws UnsupportedOperationException if the data files can not be read with read_parquet
+     */
+    public static String[][] getParquetPartitionDataTypes(String basePath) {
+        Engine engine = DefaultEngine.create(new Configuration());
+        Snapshot snapshot = Table.forPath(engine, basePath).getLatestSnapshot(engine);
+        if (snapshot instanceof SnapshotImpl snapshotImpl) {
+            List<String> readerFeatures = snapshotImpl.getProtocol().getReaderFeatures();
+            if (readerFeatures != null && (readerFeatures.contains("deletionVectors") || readerFeatures.contains("columnMapping"))) {
+                throw new UnsupportedOperationException("Delta table " + basePath + " uses " + readerFeatures);
+            }
+            String columnMapping = snapshotImpl.getMetadata().getConfiguration().getOrDefault("delta.columnMapping.mode", "none");
+            if (!columnMapping.equals("none")) {
+                throw new UnsupportedOperationException("Delta table " + basePath + " uses column mapping " + columnMapping);
+            }
+        } else {
+            throw new UnsupportedOperationException("Unknown snapshot " + snapshot.getClass());
+        }
+        StructType schema = snapshot.getSchema(engine);
+        List<String> partitionColumns = snapshot.getPartitionColumnNames(engine);
+        String[][] result = new String[partitionColumns.size()][];
+        for (int i = 0; i < result.length; i++) {
+            String column = partitionColumns.get(i);
+            result[i] = new String[]{column, toDuckDBType(schema.get(column).getDataType())};
+        }
+        return result;
+    }
+
+    /**
+     * TIMESTAMP is not supported since its partition values are in the session time zone of the writer
+     */
+    private static String toDuckDBType(io.delta.kernel.types.DataType type) {
+        if (type instanceof StringType) {
+            return "VARCHAR";
+        } else if (type instanceof LongType) {
+            return DataType.BIG_INT;
+        } else if (type instanceof IntegerType) {
+            return DataType.INT;
+        } else if (type instanceof ShortType) {
+            return DataType.SMALL_INT;
+        } else if (type instanceof ByteType) {
+            return DataType.TINY_INT;
+        } else if (type instanceof BooleanType) {
+            return DataType.BOOLEAN;
+        } else if (type instanceof DateType) {
+            return DataType.DATE;
+        } else if (type instanceof DoubleType) {
+            return DataType.DOUBLE;
+        } else if (type instanceof FloatType) {
+            return DataType.FLOAT;
+        } else if (type instanceof DecimalType decimalType) {
+            return String.format("%s(%s, %s)", DataType.DECIMAL, decimalType.getPrecision(), decimalType.getScale());
+        } else if (type instanceof TimestampNTZType) {
+            return DataType.TIMESTAMP;
+        }
+        throw new UnsupportedOperationException("Unsupported partition type " + type);
+    }
+
     /**
      * List all files in a Delta table
      *
@@ -111,7 +242,7 @@ public class PartitionPruning {
         Scan scan = snapshot.getScanBuilder(engine).build();
 
         // Initialize an empty list to store the pruned files
-        List<io.github.tanejagagan.sql.commons.FileStatus> result = new ArrayList<>();
+        FileStatusList result = new FileStatusList();
 
         try (CloseableIterator<FilteredColumnarBatch> fileIter = scan.getScanFiles(engine)) {
             // Iterate over the files in the scan
@@ -136,6 +267,7 @@ public class PartitionPruning {
             // Log any errors that occur during file pruning
             logger.error("Error processing scan files: {}", e.getMessage());
         }
+        result.trimToSize();
         return result;
     }
 }
\ No newline at end of file
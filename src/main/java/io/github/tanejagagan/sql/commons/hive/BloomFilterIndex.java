@@ -0,0 +1,488 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.ExpressionConstants;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.SqlRenderer;
+import io.github.tanejagagan.sql.commons.Transformations;
+import io.github.tanejagagan.sql.commons.ast.PredicateSimplifier;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteIdentifier;
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteString;
+
+/**
+ * Per file bloom filters of the chosen columns. It prunes the files for equality and IN predicates on
+ * high cardinality columns like user_id or trace_id where min/max statistics do not help.
+ * Values are hashed with DuckDB hash() after casting to the column type hence the same value always has
+ * the same hash at build and query time. It is meant for integer, string, date and uuid columns.
+ * hash() is not stable across DuckDB versions hence the version is stored in the index and the index is rebuilt
+ * when it was built by another version.
+ * <p>
+ * Index is a single file which is memory mapped at query time. Layout is similar to parquet
+ * &lt;magic&gt; &lt;bit sets of all the files&gt; &lt;directory&gt; &lt;directory offset&gt; &lt;magic&gt;
+ * where the directory has the columns and for every file the name, last modified time and the position of its
+ * bit sets. Index is updated incrementally, only the files which are new or whose last modified time changed are read.
+ */
+public class BloomFilterIndex implements FileIndex {
+
+    public static final double DEFAULT_FPP = 0.01;
+
+    private static final int MAGIC = 0x42464958;
+    private static final int VERSION = 2;
+    private static final int MAX_HASHES = 16;
+
+    private static final String DISTINCT_HASH_SQL = "SELECT DISTINCT %s AS c, hash(CAST(%s AS %s)) AS h FROM read_parquet(%s) WHERE %s IS NOT NULL";
+    private static final String LITERAL_HASH_SQL = "SELECT hash(v) FROM (SELECT unnest([%s]) AS v) WHERE v IS NOT NULL";
+
+    private record Filter(int numHashes, int numWords, long offset) {
+    }
+
+    private record Entry(long lastModified, Filter[] filters) {
+    }
+
+    private record Directory(Map<String, Entry> entries, ByteBuffer buffer) {
+        static final Directory EMPTY = new Directory(Map.of(), ByteBuffer.allocate(0));
+    }
+
+    private final Path indexPath;
+    private final String[][] columnDataTypes;
+    private final double fpp;
+    private static volatile String hashId;
+
+    private Directory directory;
+    private FileTime loadedModifiedTime;
+
+    /**
+     * @param indexPath       local path of the index file
+     * @param columnDataTypes name and type of the columns to be indexed, same format as partitionDataTypes
+     */
+    public BloomFilterIndex(Path indexPath, String[][] columnDataTypes) {
+        this(indexPath, columnDataTypes, DEFAULT_FPP);
+    }
+
+    /**
+     * @param fpp expected false positive probability of a filter. Size of a filter is about -ln(fpp) / ln(2)^2 bits per distinct value.
+     */
+    public BloomFilterIndex(Path indexPath, String[][] columnDataTypes, double fpp) {
+        this.indexPath = indexPath;
+        this.columnDataTypes = columnDataTypes;
+        this.fpp = fpp;
+    }
+
+    public Path getIndexPath() {
+        return indexPath;
+    }
+
+    /**
+     * List all the files of the table and update the index.
+     * @return number of files which were read
+     */
+    public int update(String basePath, String[][] partitionDataTypes) throws SQLException, IOException {
+        return update(HivePartitionPruning.pruneFilesWithWhereClause(basePath, NullNode.getInstance(), partitionDataTypes));
+    }
+
+    /**
+     * @param files all the files of the table. Files which are not in the list are removed from the index.
+     * @return number of files which were read
+     */
+    public synchronized int update(List<FileStatus> files) throws SQLException, IOException {
+        Directory current = load();
+        List<FileStatus> changed = new ArrayList<>();
+        for (FileStatus file : files) {
+            Entry entry = current.entries().get(file.fileName());
+            if (entry == null || entry.lastModified() != file.lastModified()) {
+                changed.add(file);
+            }
+        }
+        if (changed.isEmpty() && current.entries().size() == files.size()) {
+            return 0;
+        }
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (Connection connection = ConnectionPool.getConnection();
+             CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+             DataOutputStream out = new DataOutputStream(counting)) {
+            out.writeInt(MAGIC);
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (FileStatus file : files) {
+                Entry old = current.entries().get(file.fileName());
+                Filter[] filters = new Filter[columnDataTypes.length];
+                if (old != null && old.lastModified() == file.lastModified()) {
+                    for (int i = 0; i < filters.length; i++) {
+                        filters[i] = new Filter(old.filters()[i].numHashes(), old.filters()[i].numWords(), counting.count);
+                        for (int w = 0; w < old.filters()[i].numWords(); w++) {
+                            out.writeLong(current.buffer().getLong((int) (old.filters()[i].offset() + 8L * w)));
+                        }
+                    }
+                } else {
+                    List<long[]> hashes = readHashes(connection, file.fileName());
+                    for (int i = 0; i < filters.length; i++) {
+                        long[] bits = build(hashes.get(i));
+                        filters[i] = new Filter(numHashes(hashes.get(i).length, bits.length), bits.length, counting.count);
+                        setBits(bits, filters[i].numHashes(), hashes.get(i));
+                        for (long word : bits) {
+                            out.writeLong(word);
+                        }
+                    }
+                }
+                entries.put(file.fileName(), new Entry(file.lastModified(), filters));
+            }
+            long directoryOffset = counting.count;
+            out.writeInt(VERSION);
+            writeString(out, getHashId());
+            out.writeInt(columnDataTypes.length);
+            for (String[] columnDataType : columnDataTypes) {
+                writeString(out, columnDataType[0]);
+                writeString(out, columnDataType[1]);
+            }
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue().lastModified());
+                for (Filter filter : e.getValue().filters()) {
+                    out.writeInt(filter.numHashes());
+                    out.writeInt(filter.numWords());
+                    out.writeLong(filter.offset());
+                }
+            }
+            out.writeLong(directoryOffset);
+            out.writeInt(MAGIC);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        directory = null;
+        return changed.size();
+    }
+
+    @Override
+    public List<FileStatus> prune(List<FileStatus> files, JsonNode where) throws SQLException, IOException {
+        if (files.isEmpty() || where == null || where.isNull()) {
+            return files;
+        }
+        Directory current = load();
+        if (current.entries().isEmpty()) {
+            return files;
+        }
+        Map<Integer, List<long[]>> lookups = getLookups(PredicateSimplifier.simplify(where));
+        if (lookups.isEmpty()) {
+            return files;
+        }
+        List<FileStatus> result = new ArrayList<>();
+        for (FileStatus file : files) {
+            Entry entry = current.entries().get(file.fileName());
+            if (entry == null || entry.lastModified() != file.lastModified() || mightMatch(current.buffer(), entry, lookups)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return for every indexed column the hashes of the values of its equality and IN predicates in the top level
+     * conjunction. A file can match only if for every predicate at least one of the values is in its filter.
+     */
+    private Map<Integer, List<long[]>> getLookups(JsonNode where) throws SQLException {
+        List<JsonNode> conjuncts = new ArrayList<>();
+        if (Transformations.IS_CONJUNCTION_AND.apply(where)) {
+            where.get("children").forEach(conjuncts::add);
+        } else {
+            conjuncts.add(where);
+        }
+        Map<Integer, List<long[]>> result = new HashMap<>();
+        try (Connection connection = ConnectionPool.getConnection()) {
+            for (JsonNode conjunct : conjuncts) {
+                JsonNode reference;
+                List<JsonNode> values = new ArrayList<>();
+                if (Transformations.IS_COMPARISON.apply(conjunct)
+                        && conjunct.get("type").asText().equals(ExpressionConstants.COMPARE_TYPE_EQUAL)) {
+                    boolean leftReference = Transformations.IS_REFERENCE.apply(conjunct.get("left"));
+                    reference = conjunct.get(leftReference ? "left" : "right");
+                    values.add(conjunct.get(leftReference ? "right" : "left"));
+                } else if (conjunct.path("class").asText().equals("OPERATOR")
+                        && conjunct.path("type").asText().equals("COMPARE_IN")) {
+                    reference = conjunct.get("children").get(0);
+                    for (int i = 1; i < conjunct.get("children").size(); i++) {
+                        values.add(conjunct.get("children").get(i));
+                    }
+                } else {
+                    continue;
+                }
+                int column = getColumn(reference);
+                if (column < 0 || !values.stream().allMatch(v -> isLiteral(v, columnDataTypes[column][1]))) {
+                    continue;
+                }
+                result.computeIfAbsent(column, k -> new ArrayList<>())
+                        .add(hashLiterals(connection, values, columnDataTypes[column][1]));
+            }
+        }
+        return result;
+    }
+
+    private int getColumn(JsonNode reference) {
+        if (!Transformations.IS_REFERENCE.apply(reference) || reference.get("column_names").size() != 1) {
+            return -1;
+        }
+        String name = reference.get("column_names").get(0).asText();
+        for (int i = 0; i < columnDataTypes.length; i++) {
+            if (columnDataTypes[i][0].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * String constants are cast to the column type by DuckDB hence they are cast the same way before hashing.
+     * Any other constant is used only if it has the kind of the column, otherwise DuckDB may compare them in the
+     * type of the constant e.g. a string column with an integer constant matches '01' for 1.
+     */
+    private static boolean isLiteral(JsonNode node, String columnType) {
+        if (!Transformations.IS_CONSTANT.apply(node)) {
+            return false;
+        }
+        String constantType = node.get("value").get("type").get("id").asText();
+        if (constantType.equals("VARCHAR")) {
+            return true;
+        }
+        try {
+            PartitionFilter.Kind columnKind = PartitionFilter.kind(columnType);
+            return columnKind != PartitionFilter.Kind.STRING && PartitionFilter.kind(constantType) == columnKind;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static long[] hashLiterals(Connection connection, List<JsonNode> values, String type) throws SQLException {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (JsonNode value : values) {
+            joiner.add(String.format("TRY_CAST(%s AS %s)", SqlRenderer.render(value), type));
+        }
+        List<Long> hashes = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(String.format(LITERAL_HASH_SQL, joiner))) {
+            while (rs.next()) {
+                hashes.add(getHash(rs, 1));
+            }
+        }
+        return hashes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private List<long[]> readHashes(Connection connection, String fileName) throws SQLException {
+        StringJoiner joiner = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < columnDataTypes.length; i++) {
+            String column = quoteIdentifier(columnDataTypes[i][0]);
+            joiner.add(String.format(DISTINCT_HASH_SQL, i, column, columnDataTypes[i][1], quoteString(fileName), column));
+        }
+        List<List<Long>> hashes = new ArrayList<>();
+        for (int i = 0; i < columnDataTypes.length; i++) {
+            hashes.add(new ArrayList<>());
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(joiner.toString())) {
+            while (rs.next()) {
+                hashes.get(rs.getInt(1)).add(getHash(rs, 2));
+            }
+        }
+        List<long[]> result = new ArrayList<>();
+        for (List<Long> h : hashes) {
+            result.add(h.stream().mapToLong(Long::longValue).toArray());
+        }
+        return result;
+    }
+
+    private long[] build(long[] hashes) {
+        if (hashes.length == 0) {
+            // Column has no value hence equality never matches
+            return new long[0];
+        }
+        double bits = -hashes.length * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        return new long[(int) Math.max(1, Math.ceil(bits / 64))];
+    }
+
+    private static int numHashes(int numValues, int numWords) {
+        if (numValues == 0) {
+            return 0;
+        }
+        int k = (int) Math.round((double) numWords * 64 / numValues * Math.log(2));
+        return Math.max(1, Math.min(MAX_HASHES, k));
+    }
+
+    private static void setBits(long[] bits, int numHashes, long[] hashes) {
+        long numBits = (long) bits.length * 64;
+        for (long hash : hashes) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashes; i++) {
+                long bit = bitIndex(h1, h2, i, numBits);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    private static boolean mightContain(ByteBuffer buffer, Filter filter, long hash) {
+        if (filter.numWords() == 0) {
+            return false;
+        }
+        long numBits = (long) filter.numWords() * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= filter.numHashes(); i++) {
+            long bit = bitIndex(h1, h2, i, numBits);
+            long word = buffer.getLong((int) (filter.offset() + 8 * (bit >>> 6)));
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long bitIndex(int h1, int h2, int i, long numBits) {
+        int combined = h1 + i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % numBits;
+    }
+
+    private static boolean mightMatch(ByteBuffer buffer, Entry entry, Map<Integer, List<long[]>> lookups) {
+        for (Map.Entry<Integer, List<long[]>> lookup : lookups.entrySet()) {
+            Filter filter = entry.filters()[lookup.getKey()];
+            for (long[] hashes : lookup.getValue()) {
+                boolean any = false;
+                for (long hash : hashes) {
+                    if (mightContain(buffer, filter, hash)) {
+                        any = true;
+                        break;
+                    }
+                }
+                if (!any) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map the index file if it is not mapped or is replaced.
+     * @return directory or empty directory if the index does not exist or was created for different columns,
+     * by an older version or with another hash function
+     */
+    private synchronized Directory load() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return Directory.EMPTY;
+        }
+        FileTime modifiedTime = Files.getLastModifiedTime(indexPath);
+        if (directory != null && modifiedTime.equals(loadedModifiedTime)) {
+            return directory;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int size = buffer.capacity();
+        if (size < 16 || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a bloom filter index " + indexPath);
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) buffer.getLong(size - 12));
+        if (in.getInt() != VERSION) {
+            // Index of an older version is rebuilt
+            directory = Directory.EMPTY;
+            loadedModifiedTime = modifiedTime;
+            return directory;
+        }
+        boolean sameHash = readString(in).equals(getHashId());
+        int columnCount = in.getInt();
+        boolean sameColumns = sameHash && columnCount == columnDataTypes.length;
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(in);
+            String type = readString(in);
+            sameColumns = sameColumns && columnDataTypes[i][0].equals(name) && columnDataTypes[i][1].equals(type);
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        int entryCount = in.getInt();
+        for (int e = 0; sameColumns && e < entryCount; e++) {
+            String name = readString(in);
+            long lastModified = in.getLong();
+            Filter[] filters = new Filter[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                filters[i] = new Filter(in.getInt(), in.getInt(), in.getLong());
+            }
+            entries.put(name, new Entry(lastModified, filters));
+        }
+        directory = sameColumns ? new Directory(entries, buffer) : Directory.EMPTY;
+        loadedModifiedTime = modifiedTime;
+        return directory;
+    }
+
+    /**
+     * @return identifier of the hash function, hash() of the DuckDB version in use
+     */
+    private static String getHashId() throws IOException {
+        if (hashId == null) {
+            try {
+                hashId = "duckdb " + ConnectionPool.collectFirst("SELECT library_version FROM pragma_version()", String.class);
+            } catch (SQLException e) {
+                throw new IOException("Error reading the DuckDB version", e);
+            }
+        }
+        return hashId;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * hash() returns UBIGINT which is read as BigInteger, only the 64 bits are required
+     */
+    private static long getHash(ResultSet rs, int column) throws SQLException {
+        return ((BigInteger) rs.getObject(column)).longValue();
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.FileStatus;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Index which skips files using the predicates on the non partition columns.
+ * It is applied on the output of the partition pruning.
+ */
+public interface FileIndex {
+
+    /**
+     * @param files files to be pruned
+     * @param where where clause, filter of a table scan or NullNode. It is not modified.
+     * @return files which may contain rows satisfying where, in the input order.
+     * Files which are not in the index or are modified after indexing are always returned.
+     */
+    List<FileStatus> prune(List<FileStatus> files, JsonNode where) throws SQLException, IOException;
+
+    /**
+     * @return index which prunes with this index and then with the next index
+     */
+    default FileIndex andThen(FileIndex next) {
+        return (files, where) -> next.prune(prune(files, where), where);
+    }
+}
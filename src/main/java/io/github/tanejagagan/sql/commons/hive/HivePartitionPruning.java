@@ -4,26 +4,27 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.github.tanejagagan.sql.commons.*;
+import io.github.tanejagagan.sql.commons.ast.PredicateSimplifier;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.BigIntVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.complex.ListVector;
-import org.apache.arrow.vector.complex.impl.UnionListReader;
-import org.apache.arrow.vector.complex.impl.UnionListWriter;
-import org.apache.arrow.vector.complex.reader.VarCharReader;
 import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.FieldType;
-import org.apache.arrow.vector.util.Text;
 import org.duckdb.DuckDBConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,35 +33,35 @@ import java.util.stream.Collectors;
 
 public class HivePartitionPruning extends PartitionPruning {
 
+    private static final Logger logger = LoggerFactory.getLogger(HivePartitionPruning.class);
+
     private static final String READ_PARTITION_BLOB_SQL = "SELECT filename, size, epoch_ms(last_modified) as last_modified, list_transform(parse_path(substring(filename, len('%s') + 2))[1:%s], x -> split_part(x, '=', 2)) as partitions " +
             "FROM read_blob('%s')";
     private static final String PARTITION_SQL = "WITH A AS (SELECT * FROM %s)," +
             " B AS (SELECT filename, size, last_modified, %s FROM A )" +
             " SELECT * FROM B where %s";
+    // Files are returned in the first columns and the number of files in the last row with null filename
+    private static final String PARTITION_SELECTION_SQL = "WITH A AS (SELECT * FROM %s)," +
+            " B AS MATERIALIZED (SELECT filename, size, last_modified, coalesce(%s, false) AS selected" +
+            " FROM (SELECT filename, size, last_modified, %s FROM A))" +
+            " SELECT filename, size, last_modified FROM B WHERE selected" +
+            " UNION ALL SELECT NULL, count(*), NULL FROM B";
+    private static final String PARTITION_SELECTION_IN_DUCKDB_SQL = "WITH B AS MATERIALIZED (" +
+            " SELECT filename, size, last_modified, coalesce(%s, false) AS selected" +
+            " FROM (SELECT filename, size, last_modified, %s FROM (%s)))" +
+            " SELECT filename, size, last_modified FROM B WHERE selected" +
+            " UNION ALL SELECT NULL, count(*), NULL FROM B";
+    private static final String PARTITION_IN_DUCKDB_SQL = "SELECT * FROM (SELECT filename, size, last_modified, %s FROM (%s))" +
+            " WHERE coalesce(%s, false) ORDER BY last_modified, filename";
+    private static final String FILTER_SQL_PREFIX = "SELECT * FROM t WHERE ";
     private static final String READ_BLOB_NO_PARTITION_SQL = "SELECT filename, size, epoch_ms(last_modified) as last_modified FROM read_blob('%s')";
 
     public static final Field UNSCAPE_PARTITION_FIELD =
             new Field("unescaped_partitions", FieldType.notNullable(new ArrowType.List()),
                     List.of(new Field("children", FieldType.notNullable(new ArrowType.Utf8()), null)));
 
-    public static final MappedReader.Function UNESCAPE_FN = (sources, target) -> {
-        ListVector resultVector = (ListVector) target;
-        ListVector f = (ListVector) sources.get(0);
-        UnionListReader reader = f.getReader();
-        UnionListWriter writer = resultVector.getWriter();
-        for (int i = 0; i < f.getValueCount(); i++) {
-            reader.setPosition(i);
-            writer.startList();
-            writer.setPosition(i);
-            while (reader.next()) {
-                VarCharReader reader1 = reader.reader();
-                Text text = reader1.readText();
-                String res = HivePartitionPruning.unescapePathName(text.toString());
-                writer.writeVarChar(new Text(res));
-            }
-            writer.endList();
-        }
-    };
+    public static final MappedReader.Function UNESCAPE_FN = (sources, target) ->
+            PathUnescaper.unescape((ListVector) sources.get(0), (ListVector) target);
 
     public static String getPartitionSql(String[][] dataTypes,
                                             String tempTableName,
@@ -69,15 +70,37 @@ public class HivePartitionPruning extends PartitionPruning {
         if(filter ==null || filter.isBlank()) {
             filterToApply = "true";
         }
+        return String.format(PARTITION_SQL, tempTableName, getPartitionColumns(dataTypes), filterToApply);
+    }
+
+    /**
+     * Same as {@link #getPartitionSql(String[][], String, String)} without the partition columns and with an additional
+     * last row which has null filename and the number of files before pruning as size.
+     */
+    static String getPartitionSelectionSql(String[][] dataTypes,
+                                           String tempTableName,
+                                           String filter) {
+        String filterToApply = filter == null || filter.isBlank() ? "true" : filter;
+        return String.format(PARTITION_SELECTION_SQL, tempTableName, filterToApply, getPartitionColumns(dataTypes));
+    }
+
+    private static String getPartitionColumns(String[][] dataTypes) {
+        return getPartitionColumns(dataTypes, "unescaped_partitions[%s]");
+    }
+
+    /**
+     * @param valueFormat expression of the unescaped value of the partition with its one based index as argument
+     */
+    private static String getPartitionColumns(String[][] dataTypes, String valueFormat) {
         StringBuilder stringBuilder = new StringBuilder();
         for (int i = 0; i < dataTypes.length; i++) {
             String[] ss = dataTypes[i];
-            String cast = String.format("cast(unescaped_partitions[%s] as %s) as %s", i + 1, ss[1], ss[0]);
+            String cast = String.format("cast(%s as %s) as %s", String.format(valueFormat, i + 1), ss[1], ss[0]);
             stringBuilder.append(cast);
             stringBuilder.append(",");
         }
         stringBuilder.deleteCharAt(stringBuilder.length() - 1);
-        return String.format(PARTITION_SQL, tempTableName, stringBuilder, filterToApply);
+        return stringBuilder.toString();
     }
 
     public static void main(String[] args) throws SQLException, JsonProcessingException {
@@ -117,6 +140,7 @@ public class HivePartitionPruning extends PartitionPruning {
      *                      3. Serialize the data in step 2 as temp table and run the pruning sql
      *                      Final Sql looks something like `select size, filename, cast(unescape_partitions[1] as date) as dt, ....from temp table where dt = ?
      *                      4. Remove all the filterExpression which do not have partition columns
+     *                      {@link Listing#READ_BLOB_DUCKDB} unescapes with url_decode instead and runs all the steps in one statement.
      */
     public static List<FileStatus> pruneFiles(String basePath,
                                               String filterExpression,
@@ -124,40 +148,272 @@ public class HivePartitionPruning extends PartitionPruning {
         if (partitionDataTypes == null || partitionDataTypes.length == 0) {
             return pruneFilesNoPartition(basePath);
         }
+        JsonNode where = null;
+        if (filterExpression != null && !filterExpression.isBlank()) {
+            where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filterExpression));
+        }
+        return pruneFilesWithWhereClause(basePath, where, partitionDataTypes);
+    }
+
+
+    public static List<FileStatus> pruneFiles(String basePath,
+                                              JsonNode tree,
+                                              String[][] partitionDataTypes) throws SQLException, IOException {
+        return pruneFilesWithWhereClause(basePath, Transformations.getWhereClause(tree), partitionDataTypes);
+    }
+
+    /**
+     * @param where where clause, filter of a table scan or NullNode. It is not modified.
+     *              Predicates on the non partition columns are removed before pruning.
+     */
+    public static List<FileStatus> pruneFilesWithWhereClause(String basePath,
+                                                             JsonNode where,
+                                                             String[][] partitionDataTypes) throws SQLException, IOException {
+        return pruneFilesWithWhereClause(basePath, where, partitionDataTypes, null);
+    }
+
+    /**
+     * @param fileIndex index used to skip the files using the predicates on the non partition columns.
+     *                  It is applied after the partition pruning and can be null.
+     */
+    public static List<FileStatus> pruneFilesWithWhereClause(String basePath,
+                                                             JsonNode where,
+                                                             String[][] partitionDataTypes,
+                                                             FileIndex fileIndex) throws SQLException, IOException {
+        return pruneFilesWithCount(basePath, where, partitionDataTypes, fileIndex).files();
+    }
+
+    /**
+     * @param files      files after pruning
+     * @param totalFiles number of files before pruning or -1 if the files were not listed because the filter is never satisfied
+     */
+    public record PrunedFiles(List<FileStatus> files, long totalFiles) {
+    }
+
+    /**
+     * Same as {@link #pruneFilesWithWhereClause(String, JsonNode, String[][], FileIndex)} and also returns the number of
+     * files before pruning. It is counted from the listing hence the files are listed only once.
+     */
+    public static PrunedFiles pruneFilesWithCount(String basePath,
+                                                  JsonNode where,
+                                                  String[][] partitionDataTypes,
+                                                  FileIndex fileIndex) throws SQLException, IOException {
+        return pruneFilesWithCount(basePath, where, partitionDataTypes, fileIndex, Listing.READ_BLOB);
+    }
+
+    /**
+     * How the files of a partitioned table are listed
+     */
+    public enum Listing {
+        /**
+         * All the files are listed with read_blob and then pruned. Works with all the file systems supported by DuckDB.
+         */
+        READ_BLOB,
+        /**
+         * Same listing as READ_BLOB but the partition values are unescaped with url_decode and filtered in the
+         * same DuckDB statement, only the selected files are read back. Falls back to READ_BLOB if the statement fails,
+         * for example url_decode fails if an unescaped value is not valid UTF-8.
+         */
+        READ_BLOB_DUCKDB,
+        /**
+         * Directories are walked level by level and pruned while walking, see {@link HivePartitionWalker}.
+         * totalFiles is not known and is -1. Falls back to READ_BLOB for globs and remote paths.
+         */
+        WALK
+    }
+
+    public static PrunedFiles pruneFilesWithCount(String basePath,
+                                                  JsonNode where,
+                                                  String[][] partitionDataTypes,
+                                                  FileIndex fileIndex,
+                                                  Listing listing) throws SQLException, IOException {
+        return pruneFilesWithCount(basePath, where, partitionDataTypes, fileIndex, listing, null);
+    }
+
+    /**
+     * @param cache listings of the directories reused across the calls, see {@link PartitionListingCache}.
+     *              Only used with WALK, can be null.
+     */
+    public static PrunedFiles pruneFilesWithCount(String basePath,
+                                                  JsonNode where,
+                                                  String[][] partitionDataTypes,
+                                                  FileIndex fileIndex,
+                                                  Listing listing,
+                                                  PartitionListingCache cache) throws SQLException, IOException {
+        PrunedFiles prunedFiles;
+        if (listing == Listing.WALK && isWalkable(basePath, partitionDataTypes)) {
+            prunedFiles = HivePartitionWalker.walk(basePath, where, partitionDataTypes, cache);
+        } else if (listing == Listing.READ_BLOB_DUCKDB && partitionDataTypes != null && partitionDataTypes.length > 0) {
+            prunedFiles = pruneFilesInDuckDB(basePath, where, partitionDataTypes);
+        } else {
+            prunedFiles = pruneFilesWithWhereClauseOnPartitions(basePath, where, partitionDataTypes);
+        }
+        if (fileIndex == null || where == null || where.isNull()) {
+            return prunedFiles;
+        }
+        return new PrunedFiles(fileIndex.prune(prunedFiles.files(), where), prunedFiles.totalFiles());
+    }
+
+    private static boolean isWalkable(String basePath, String[][] partitionDataTypes) {
+        return partitionDataTypes != null && partitionDataTypes.length > 0
+                && !basePath.contains("://") && !basePath.contains("*");
+    }
+
+    private static PrunedFiles pruneFilesWithWhereClauseOnPartitions(String basePath,
+                                                                     JsonNode where,
+                                                                     String[][] partitionDataTypes) throws SQLException, IOException {
+        if (partitionDataTypes == null || partitionDataTypes.length == 0) {
+            List<FileStatus> files = pruneFilesNoPartition(basePath);
+            return new PrunedFiles(files, files.size());
+        }
         String firstSql = getQueryString(basePath, partitionDataTypes.length);
         String tempTableName = "connection_temp_table_" + System.currentTimeMillis();
-        List<FileStatus> result = new ArrayList<>();
-        try (DuckDBConnection readConnection = ConnectionPool.getConnection()) {
-            String partitionSql = HivePartitionPruning.getPartitionSql(partitionDataTypes, tempTableName, filterExpression);
-            String transformed = doQueryTransformation(readConnection, partitionSql,
-                    Arrays.stream(partitionDataTypes).map(ss -> ss[0]).collect(Collectors.toSet()));
-            try (DuckDBConnection writeConnection = ConnectionPool.getConnection();
-                 BufferAllocator allocator = new RootAllocator();
-                 ArrowReader reader1 = ConnectionPool.getReader(readConnection, allocator, firstSql, 1000);
-                 Closeable ignored = ConnectionPool.createTempTableWithMap(writeConnection, allocator, reader1,
-                         UNESCAPE_FN, List.of("partitions"), UNSCAPE_PARTITION_FIELD, tempTableName);
-                 ArrowReader reader2 = ConnectionPool.getReader(writeConnection, allocator, transformed, 100)) {
-                while (reader2.loadNextBatch()) {
-                    VectorSchemaRoot root = reader2.getVectorSchemaRoot();
-                    VarCharVector filename = (VarCharVector) root.getVector("filename");
-                    BigIntVector size = (BigIntVector) root.getVector("size");
-                    BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
-                    for (int i = 0; i < root.getRowCount(); i++) {
-                        result.add(new FileStatus(new String(filename.get(i)), size.get(i), lastModifier.get(i)));
+        FileStatusList result = new FileStatusList();
+        JsonNode partitionFilter = Transformations.removeNonPartitionColumnsPredicates(where,
+                Arrays.stream(partitionDataTypes).map(ss -> ss[0]).collect(Collectors.toSet()));
+        // Partition filter is never satisfied hence there is no need to list the files
+        if (PredicateSimplifier.isFalse(partitionFilter)) {
+            return new PrunedFiles(result, -1);
+        }
+        PartitionFilter compiled = PartitionFilter.tryCompile(partitionFilter, partitionDataTypes);
+        if (compiled != null) {
+            PrunedFiles prunedFiles = pruneFilesInJvm(firstSql, compiled);
+            if (prunedFiles != null) {
+                return prunedFiles;
+            }
+        }
+        String transformed = HivePartitionPruning.getPartitionSelectionSql(partitionDataTypes, tempTableName,
+                getFilterSql(partitionFilter));
+        long totalFiles = 0;
+        try (DuckDBConnection readConnection = ConnectionPool.getConnection();
+             DuckDBConnection writeConnection = ConnectionPool.getConnection();
+             BufferAllocator allocator = new RootAllocator();
+             ArrowReader reader1 = ConnectionPool.getReader(readConnection, allocator, firstSql, 1000);
+             Closeable ignored = ConnectionPool.createTempTableWithMap(writeConnection, allocator, reader1,
+                     UNESCAPE_FN, List.of("partitions"), UNSCAPE_PARTITION_FIELD, tempTableName);
+             ArrowReader reader2 = ConnectionPool.getReader(writeConnection, allocator, transformed, 100)) {
+            while (reader2.loadNextBatch()) {
+                VectorSchemaRoot root = reader2.getVectorSchemaRoot();
+                VarCharVector filename = (VarCharVector) root.getVector("filename");
+                BigIntVector size = (BigIntVector) root.getVector("size");
+                BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    if (filename.isNull(i)) {
+                        totalFiles = size.get(i);
+                    } else {
+                        result.add(new String(filename.get(i)), size.get(i), lastModifier.get(i));
                     }
                 }
             }
-            return result;
+            result.trimToSize();
+            return new PrunedFiles(result, totalFiles);
         }
     }
 
+    /**
+     * Streaming variant of the pruning, files are pruned in DuckDB as with {@link Listing#READ_BLOB_DUCKDB} and
+     * nothing is collected in java. Columns are filename, size, last_modified and the partition columns cast to their
+     * types, rows are ordered by last_modified and filename.
+     * Unlike READ_BLOB_DUCKDB there is no fall back, reading fails if an unescaped value is not valid UTF-8.
+     *
+     * @param connection connection and allocator are owned by the caller and should stay open till the reader is closed
+     * @param where      where clause, filter of a table scan or NullNode. It is not modified.
+     */
+    public static ArrowReader pruneFilesAsReader(DuckDBConnection connection,
+                                                 BufferAllocator allocator,
+                                                 String basePath,
+                                                 JsonNode where,
+                                                 String[][] partitionDataTypes,
+                                                 int batchSize) throws SQLException, IOException {
+        if (partitionDataTypes == null || partitionDataTypes.length == 0) {
+            String sql = String.format(READ_BLOB_NO_PARTITION_SQL, basePath + "/*.parquet") + " ORDER BY last_modified, filename";
+            return ConnectionPool.getReader(connection, allocator, sql, batchSize);
+        }
+        JsonNode partitionFilter = Transformations.removeNonPartitionColumnsPredicates(where,
+                Arrays.stream(partitionDataTypes).map(ss -> ss[0]).collect(Collectors.toSet()));
+        String filterSql = getFilterSql(partitionFilter);
+        String sql = String.format(PARTITION_IN_DUCKDB_SQL,
+                getPartitionColumns(partitionDataTypes, "url_decode(partitions[%s])"),
+                getQueryString(basePath, partitionDataTypes.length), filterSql.isBlank() ? "true" : filterSql);
+        return ConnectionPool.getReader(connection, allocator, sql, batchSize);
+    }
 
-    public static List<FileStatus> pruneFiles(String basePath,
-                                              JsonNode tree,
-                                              String[][] partitionDataTypes) throws SQLException, IOException {
+    /**
+     * Listing, unescape and filter in one statement on one connection
+     */
+    private static PrunedFiles pruneFilesInDuckDB(String basePath,
+                                                  JsonNode where,
+                                                  String[][] partitionDataTypes) throws SQLException, IOException {
+        JsonNode partitionFilter = Transformations.removeNonPartitionColumnsPredicates(where,
+                Arrays.stream(partitionDataTypes).map(ss -> ss[0]).collect(Collectors.toSet()));
+        if (PredicateSimplifier.isFalse(partitionFilter)) {
+            return new PrunedFiles(new ArrayList<>(), -1);
+        }
+        String filterSql = getFilterSql(partitionFilter);
+        String sql = String.format(PARTITION_SELECTION_IN_DUCKDB_SQL, filterSql.isBlank() ? "true" : filterSql,
+                getPartitionColumns(partitionDataTypes, "url_decode(partitions[%s])"),
+                getQueryString(basePath, partitionDataTypes.length));
+        FileStatusList result = new FileStatusList();
+        long totalFiles = 0;
+        try (Connection connection = ConnectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                String filename = resultSet.getString(1);
+                if (filename == null) {
+                    totalFiles = resultSet.getLong(2);
+                } else {
+                    result.add(filename, resultSet.getLong(2), resultSet.getLong(3));
+                }
+            }
+        } catch (SQLException e) {
+            logger.atDebug().log("Pruning in DuckDB failed for {}, falling back to read_blob listing : {}", basePath, e.getMessage());
+            return pruneFilesWithWhereClauseOnPartitions(basePath, where, partitionDataTypes);
+        }
+        result.trimToSize();
+        return new PrunedFiles(result, totalFiles);
+    }
 
-        return pruneFiles(basePath, getFilterSql(tree), partitionDataTypes);
+    /**
+     * Single pass over the listing, partition values are unescaped, converted and filtered in java.
+     * @return null if a partition value can not be converted to its type so that the caller can
+     * fall back to DuckDB which reports the error the same way as before
+     */
+    private static PrunedFiles pruneFilesInJvm(String listingSql, PartitionFilter filter) throws SQLException, IOException {
+        FileStatusList result = new FileStatusList();
+        long totalFiles = 0;
+        try (DuckDBConnection connection = ConnectionPool.getConnection();
+             BufferAllocator allocator = new RootAllocator();
+             ArrowReader reader = ConnectionPool.getReader(connection, allocator, listingSql, 1000)) {
+            List<String> values = new ArrayList<>();
+            while (reader.loadNextBatch()) {
+                VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                VarCharVector filename = (VarCharVector) root.getVector("filename");
+                BigIntVector size = (BigIntVector) root.getVector("size");
+                BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
+                ListVector partitions = (ListVector) root.getVector("partitions");
+                totalFiles += root.getRowCount();
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    values.clear();
+                    for (Object value : partitions.getObject(i)) {
+                        values.add(unescapePathName(value.toString()));
+                    }
+                    boolean selected;
+                    try {
+                        selected = filter.test(filter.convert(values));
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                    if (selected) {
+                        result.add(new String(filename.get(i)), size.get(i), lastModifier.get(i));
+                    }
+                }
+            }
+        }
+        result.trimToSize();
+        return new PrunedFiles(result, totalFiles);
     }
+
     /**
      * Retrieves all files from a specified not partitioned directory path and returns their names and sizes.
      *
@@ -168,7 +424,7 @@ public class HivePartitionPruning extends PartitionPruning {
      */
     private static List<FileStatus> pruneFilesNoPartition(String basePath) throws SQLException, IOException {
         String sql = String.format(READ_BLOB_NO_PARTITION_SQL, basePath + "/*.parquet");
-        List<FileStatus> result = new ArrayList<>();
+        FileStatusList result = new FileStatusList();
         try(DuckDBConnection connection = ConnectionPool.getConnection();
             BufferAllocator allocator = new RootAllocator();
             ArrowReader reader = ConnectionPool.getReader(connection, allocator, sql, 1000)){
@@ -178,10 +434,11 @@ public class HivePartitionPruning extends PartitionPruning {
                 BigIntVector size = (BigIntVector) root.getVector("size");
                 BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
                 for (int i = 0; i < root.getRowCount(); i++) {
-                    result.add(new FileStatus(new String(filename.get(i)), size.get(i), lastModifier.get(i)));
+                    result.add(new String(filename.get(i)), size.get(i), lastModifier.get(i));
                 }
             }
         }
+        result.trimToSize();
         return result;
     }
 
@@ -200,7 +457,11 @@ public class HivePartitionPruning extends PartitionPruning {
         return String.format(READ_PARTITION_BLOB_SQL, cBasePath, partitionsLen, readBlobPath);
     }
 
-    private static String getReadBlobPath(String basePath, int partitionsLen, String format) {
+    /**
+     * @return glob which matches all the files of the table, basePath/*&#47;*&#47;*.parquet for two partitions.
+     * basePath is returned as it is if it is already a glob.
+     */
+    public static String getReadBlobPath(String basePath, int partitionsLen, String format) {
         if (basePath.contains("/*")) {
             return basePath;
         }
@@ -214,47 +475,30 @@ public class HivePartitionPruning extends PartitionPruning {
         return basePath.split("/").length + 1;
     }
 
+    /**
+     * @see PathUnescaper
+     */
     public static String unescapePathName(String path) {
-        StringBuilder sb = new StringBuilder();
-        var i = 0;
-
-        while (i < path.length()) {
-            var c = path.charAt(i);
-            if (c == '%' && i + 2 < path.length()) {
-                int code;
-                try {
-                    code = Integer.parseInt(path.substring(i + 1, i + 3), 16);
-                } catch (Exception e) {
-                    code = -1;
-                }
-                if (code >= 0) {
-                    sb.append((char) code);
-                    i += 3;
-                } else {
-                    sb.append(c);
-                    i += 1;
-                }
-            } else {
-                sb.append(c);
-                i += 1;
-            }
-        }
-        return sb.toString();
+        return PathUnescaper.unescape(path);
     }
 
-    private static String getFilterSql(JsonNode tree) throws SQLException, JsonProcessingException {
-        var filter = Transformations.getWhereClause(tree);
-        var t = Transformations.parseToTree("select * from t");
-        var firstStatement = (ObjectNode)Transformations.getFirstStatementNode(t);
-        firstStatement.set("where_clause", filter);
-        var newSql = Transformations.parseToSql(t);
-        var index = newSql.indexOf("where");
-        if(index < 0) {
+    /**
+     * @param filter filter expression or NullNode
+     * @return sql of the filter or empty string if there is no filter.
+     * Filter is rendered in java and DuckDB is used only for the expressions not supported by {@link SqlRenderer}
+     */
+    static String getFilterSql(JsonNode filter) throws SQLException, JsonProcessingException {
+        if (filter == null || filter.isNull()) {
             return "";
-        } else {
-            return newSql.substring(index);
+        }
+        try {
+            return SqlRenderer.render(filter);
+        } catch (UnsupportedOperationException e) {
+            var t = Transformations.parseToTree("select * from t");
+            var firstStatement = (ObjectNode) Transformations.getFirstStatementNode(t);
+            firstStatement.set("where_clause", filter);
+            var newSql = Transformations.parseToSql(t);
+            return newSql.substring(FILTER_SQL_PREFIX.length());
         }
     }
 }
-
-
@@ -0,0 +1,252 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.FileStatusList;
+import io.github.tanejagagan.sql.commons.PartitionListingCache;
+import io.github.tanejagagan.sql.commons.Transformations;
+import io.github.tanejagagan.sql.commons.ast.PredicateSimplifier;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteString;
+
+/**
+ * List the files of a hive partitioned table on a local or mounted file system one partition level at a time.
+ * At every level the predicate is relaxed to the partition columns known so far and evaluated on the
+ * directories of the level, only the directories which satisfy it are listed further.
+ * Hence the listing cost depends on the number of the matching partitions and not on the size of the table.
+ * Directories of a level are listed in parallel. Filter is evaluated with {@link PartitionFilter} and with
+ * DuckDB when it is not supported. Listings can be cached across walks with a {@link PartitionListingCache}.
+ */
+public class HivePartitionWalker {
+
+    public static final int PARALLELISM = 16;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM, r -> {
+        Thread thread = new Thread(r, "hive-partition-walker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final String SELECT_PARTITION_SQL = "SELECT i FROM (SELECT i, %s FROM (VALUES %s) t(i, %s)) WHERE %s";
+
+    /**
+     * @param path   path of the partition directory
+     * @param values unescaped values of the partitions from the base path to this directory
+     */
+    private record Partition(String path, String[] values) {
+    }
+
+    /**
+     * @param basePath base path of the table without glob and scheme
+     * @param where    where clause, filter of a table scan or NullNode. It is not modified.
+     * @return files of the matching partitions. totalFiles is -1 since the table is not listed completely.
+     * File names and last modified time, truncated to seconds, are the same as the listing with read_blob.
+     */
+    public static HivePartitionPruning.PrunedFiles walk(String basePath,
+                                                        JsonNode where,
+                                                        String[][] partitionDataTypes) throws SQLException, IOException {
+        return walk(basePath, where, partitionDataTypes, null);
+    }
+
+    /**
+     * @param cache cache of the listings of the directories or null. Only the modified directories are listed again.
+     */
+    public static HivePartitionPruning.PrunedFiles walk(String basePath,
+                                                        JsonNode where,
+                                                        String[][] partitionDataTypes,
+                                                        PartitionListingCache cache) throws SQLException, IOException {
+        List<Partition> partitions = List.of(new Partition(basePath, new String[0]));
+        Set<String> knownColumns = new HashSet<>();
+        for (int level = 0; level < partitionDataTypes.length && !partitions.isEmpty(); level++) {
+            knownColumns.add(partitionDataTypes[level][0]);
+            JsonNode levelFilter = Transformations.removeNonPartitionColumnsPredicates(where, knownColumns);
+            if (PredicateSimplifier.isFalse(levelFilter)) {
+                return new HivePartitionPruning.PrunedFiles(List.of(), -1);
+            }
+            List<Partition> children = new ArrayList<>();
+            for (List<Partition> list : forEach(partitions, p -> listPartitions(p, cache))) {
+                children.addAll(list);
+            }
+            partitions = select(children, levelFilter, partitionDataTypes, level + 1);
+        }
+        FileStatusList files = new FileStatusList();
+        for (List<FileStatus> list : forEach(partitions, p -> listFiles(p, cache))) {
+            files.addAll(list);
+        }
+        files.trimToSize();
+        return new HivePartitionPruning.PrunedFiles(files, -1);
+    }
+
+    private interface Lister<T> {
+        List<T> list(Partition partition) throws IOException;
+    }
+
+    /**
+     * @return output for every partition in the input order
+     */
+    private static <T> List<List<T>> forEach(List<Partition> partitions, Lister<T> lister) throws IOException {
+        if (partitions.size() == 1) {
+            return List.of(lister.list(partitions.get(0)));
+        }
+        List<Future<List<T>>> futures = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            futures.add(EXECUTOR.submit(() -> lister.list(partition)));
+        }
+        List<List<T>> result = new ArrayList<>(partitions.size());
+        try {
+            for (Future<List<T>> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing partitions", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Directory removed while walking is skipped
+     */
+    private static <T> List<T> list(String path, String key, PartitionListingCache cache,
+                                    PartitionListingCache.Lister<T> lister) throws IOException {
+        try {
+            return cache == null ? lister.list() : cache.get(Path.of(path), key, lister);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    private static List<Partition> listPartitions(Partition parent, PartitionListingCache cache) throws IOException {
+        return list(parent.path(), "partitions:" + parent.path(), cache, () -> listPartitions(parent));
+    }
+
+    private static List<FileStatus> listFiles(Partition partition, PartitionListingCache cache) throws IOException {
+        return list(partition.path(), "files:" + partition.path(), cache, () -> listFiles(partition));
+    }
+
+    /**
+     * Sub directories of the form key=value sorted by name
+     */
+    private static List<Partition> listPartitions(Partition parent) throws IOException {
+        List<Partition> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of(parent.path()))) {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                int index = name.indexOf('=');
+                if (index < 0 || !Files.isDirectory(child)) {
+                    continue;
+                }
+                String[] values = Arrays.copyOf(parent.values(), parent.values().length + 1);
+                values[values.length - 1] = HivePartitionPruning.unescapePathName(name.substring(index + 1));
+                result.add(new Partition(parent.path() + "/" + name, values));
+            }
+        }
+        result.sort(Comparator.comparing(Partition::path));
+        return result;
+    }
+
+    private static List<FileStatus> listFiles(Partition partition) throws IOException {
+        List<FileStatus> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of(partition.path()), "*.parquet")) {
+            for (Path child : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+                    result.add(new FileStatus(partition.path() + "/" + child.getFileName(), attributes.size(), lastModified));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(FileStatus::fileName));
+        return result;
+    }
+
+    /**
+     * @return null if the filter is not supported by {@link PartitionFilter} or a value can not be converted
+     */
+    private static List<Partition> selectInJvm(List<Partition> partitions, JsonNode filter, String[][] partitionDataTypes) {
+        PartitionFilter compiled = PartitionFilter.tryCompile(filter, partitionDataTypes);
+        if (compiled == null) {
+            return null;
+        }
+        List<Partition> result = new ArrayList<>();
+        try {
+            for (Partition partition : partitions) {
+                if (compiled.test(compiled.convert(Arrays.asList(partition.values())))) {
+                    result.add(partition);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate the filter on the values of the partitions in DuckDB, in batches of {@link Transformations#BATCH_SIZE}.
+     */
+    private static List<Partition> select(List<Partition> partitions, JsonNode filter,
+                                          String[][] partitionDataTypes, int levels) throws SQLException, IOException {
+        String filterSql = HivePartitionPruning.getFilterSql(filter);
+        if (partitions.isEmpty() || filterSql.isBlank() || PredicateSimplifier.isTrue(filter)) {
+            return partitions;
+        }
+        List<Partition> selected = selectInJvm(partitions, filter, Arrays.copyOf(partitionDataTypes, levels));
+        if (selected != null) {
+            return selected;
+        }
+        StringBuilder casts = new StringBuilder();
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < levels; i++) {
+            if (i > 0) {
+                casts.append(", ");
+                names.append(", ");
+            }
+            casts.append(String.format("cast(v%s as %s) as %s", i, partitionDataTypes[i][1], partitionDataTypes[i][0]));
+            names.append("v").append(i);
+        }
+        List<Partition> result = new ArrayList<>();
+        try (Connection connection = ConnectionPool.getConnection()) {
+            for (int start = 0; start < partitions.size(); start += Transformations.BATCH_SIZE) {
+                int end = Math.min(partitions.size(), start + Transformations.BATCH_SIZE);
+                StringBuilder values = new StringBuilder();
+                for (int p = start; p < end; p++) {
+                    values.append(p == start ? "(" : ", (").append(p);
+                    for (String value : partitions.get(p).values()) {
+                        values.append(", ").append(quoteString(value));
+                    }
+                    values.append(")");
+                }
+                String sql = String.format(SELECT_PARTITION_SQL, casts, values, names, filterSql);
+                for (Integer index : ConnectionPool.collectFirstColumn(connection, sql, Integer.class)) {
+                    result.add(partitions.get(index));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Partition::path));
+        return result;
+    }
+}
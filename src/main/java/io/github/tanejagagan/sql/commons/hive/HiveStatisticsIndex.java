@@ -0,0 +1,253 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.SqlRenderer;
+import io.github.tanejagagan.sql.commons.Transformations;
+import io.github.tanejagagan.sql.commons.ast.PredicateSimplifier;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteIdentifier;
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteString;
+
+/**
+ * Per file min, max and null count of the data columns of a hive table stored as a single parquet file.
+ * Statistics are read from the parquet footers with parquet_metadata hence the data is never scanned.
+ * Schema of the index is &lt;filename varchar, last_modified bigint, min_c, max_c, null_count_c ...&gt;
+ * where min_c and max_c have the type of the column c. Statistics which are missing or can not be cast
+ * to the column type are stored as null and such a file is never pruned on that column.
+ * Index is updated incrementally, only the files which are new or whose last modified time changed are read.
+ * Index is rebuilt if it was created for a different list of columns.
+ */
+public class HiveStatisticsIndex implements FileIndex {
+
+    public static final String FILENAME_COLUMN = "filename";
+    public static final String LAST_MODIFIED_COLUMN = "last_modified";
+
+    private static final String STATS_SQL = "SELECT file_name AS filename, %s FROM parquet_metadata(%s) GROUP BY file_name";
+    private static final String STAT_SQL = "CASE WHEN count(*) FILTER (WHERE path_in_schema = %1$s) = count(%2$s) FILTER (WHERE path_in_schema = %1$s) " +
+            "THEN %3$s(%2$s) FILTER (WHERE path_in_schema = %1$s) END AS %4$s";
+    // Temp tables are only visible to the connection of the update hence concurrent updates do not conflict
+    private static final String CURRENT_FILES_TABLE = "hive_statistics_current_files";
+    private static final String NEW_STATS_TABLE = "hive_statistics_new_stats";
+    private static final String CHANGED_SQL = "SELECT c.filename FROM " + CURRENT_FILES_TABLE + " c" +
+            " ANTI JOIN read_parquet(%s) i USING (filename, last_modified)";
+    private static final String UPDATE_SQL = "COPY (%s) TO %s (FORMAT PARQUET)";
+    private static final String KEEP_SQL = "SELECT i.* FROM read_parquet(%s) i JOIN " + CURRENT_FILES_TABLE + " c USING (filename, last_modified)";
+    private static final String NEW_SQL = "SELECT c.last_modified, s.* FROM " + NEW_STATS_TABLE + " s JOIN " + CURRENT_FILES_TABLE + " c USING (filename)";
+    private static final String EMPTY_SQL = "SELECT * FROM read_parquet(%s) LIMIT 0";
+    private static final String PRUNE_SQL = "SELECT filename, last_modified FROM read_parquet(%s) WHERE NOT coalesce(%s, true)";
+
+    private final Path indexPath;
+    private final String[][] columnDataTypes;
+
+    /**
+     * @param indexPath       local path of the parquet file which stores the index
+     * @param columnDataTypes name and type of the columns to be indexed, same format as partitionDataTypes
+     */
+    public HiveStatisticsIndex(Path indexPath, String[][] columnDataTypes) {
+        this.indexPath = indexPath;
+        this.columnDataTypes = columnDataTypes;
+    }
+
+    public static String minColumn(String column) {
+        return "min_" + column;
+    }
+
+    public static String maxColumn(String column) {
+        return "max_" + column;
+    }
+
+    public static String nullCountColumn(String column) {
+        return "null_count_" + column;
+    }
+
+    public Path getIndexPath() {
+        return indexPath;
+    }
+
+    /**
+     * List all the files of the table and update the index.
+     * @return number of files whose statistics were read
+     */
+    public int update(String basePath, String[][] partitionDataTypes) throws SQLException, IOException {
+        return update(HivePartitionPruning.pruneFilesWithWhereClause(basePath, NullNode.getInstance(), partitionDataTypes));
+    }
+
+    /**
+     * Files are appended to a temp table and compared with the index in DuckDB, only the names of the changed files
+     * are read back. Statistics of the changed files are read in batches of {@link Transformations#BATCH_SIZE}.
+     *
+     * @param files all the files of the table. Files which are not in the list are removed from the index.
+     * @return number of files whose statistics were read
+     */
+    public int update(List<FileStatus> files) throws SQLException {
+        try (DuckDBConnection connection = ConnectionPool.getConnection()) {
+            ConnectionPool.execute(connection, String.format(
+                    "CREATE OR REPLACE TEMP TABLE %s (filename VARCHAR, last_modified BIGINT)", CURRENT_FILES_TABLE));
+            try {
+                try (DuckDBAppender appender = connection.createAppender(DuckDBConnection.DEFAULT_SCHEMA, CURRENT_FILES_TABLE)) {
+                    for (FileStatus file : files) {
+                        appender.beginRow();
+                        appender.append(file.fileName());
+                        appender.append(file.lastModified());
+                        appender.endRow();
+                    }
+                }
+                long indexed = countIndexedFiles(connection);
+                List<String> changed = new ArrayList<>();
+                if (indexed < 0) {
+                    files.forEach(file -> changed.add(file.fileName()));
+                } else {
+                    ConnectionPool.collectFirstColumn(connection,
+                            String.format(CHANGED_SQL, quoteString(indexPath.toString())), String.class).forEach(changed::add);
+                }
+                if (changed.isEmpty() && indexed == files.size()) {
+                    return 0;
+                }
+                if (files.isEmpty()) {
+                    // Missing index never prunes hence it is same as an empty one
+                    Files.deleteIfExists(indexPath);
+                    return 0;
+                }
+                for (int i = 0; i < changed.size(); i += Transformations.BATCH_SIZE) {
+                    List<String> batch = changed.subList(i, Math.min(i + Transformations.BATCH_SIZE, changed.size()));
+                    ConnectionPool.execute(connection, String.format(i == 0 ? "CREATE OR REPLACE TEMP TABLE %s AS %s" :
+                            "INSERT INTO %s %s", NEW_STATS_TABLE, getStatsSql(batch)));
+                }
+                List<String> parts = new ArrayList<>();
+                if (indexed > 0) {
+                    parts.add(String.format(KEEP_SQL, quoteString(indexPath.toString())));
+                }
+                if (!changed.isEmpty()) {
+                    parts.add(NEW_SQL);
+                }
+                String sql = String.join(" UNION ALL BY NAME ", parts);
+                Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+                ConnectionPool.execute(connection, String.format(UPDATE_SQL, sql, quoteString(tmp.toString())));
+                Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return changed.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error replacing the index " + indexPath, e);
+            } finally {
+                ConnectionPool.execute(connection, String.format("DROP TABLE IF EXISTS %s", NEW_STATS_TABLE));
+                ConnectionPool.execute(connection, String.format("DROP TABLE IF EXISTS %s", CURRENT_FILES_TABLE));
+            }
+        }
+    }
+
+    @Override
+    public List<FileStatus> prune(List<FileStatus> files, JsonNode where) throws SQLException, IOException {
+        if (files.isEmpty() || where == null || where.isNull() || !Files.exists(indexPath)) {
+            return files;
+        }
+        JsonNode filter = getIndexFilter(where.deepCopy());
+        if (filter.isNull()) {
+            return files;
+        }
+        String sql = String.format(PRUNE_SQL, quoteString(indexPath.toString()), HivePartitionPruning.getFilterSql(filter));
+        Map<String, Long> pruned = new HashMap<>();
+        try (Connection connection = ConnectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                pruned.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        if (pruned.isEmpty()) {
+            return files;
+        }
+        List<FileStatus> result = new ArrayList<>();
+        for (FileStatus file : files) {
+            Long lastModified = pruned.get(file.fileName());
+            if (lastModified == null || lastModified != file.lastModified()) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param where where clause. It is modified in place.
+     * @return filter on the min and max columns of the index or NullNode if nothing can be pruned
+     */
+    JsonNode getIndexFilter(JsonNode where) throws SQLException, JsonProcessingException {
+        Map<String, String> minMapping = new HashMap<>();
+        Map<String, String> maxMapping = new HashMap<>();
+        Map<String, String> dataTypeMap = new HashMap<>();
+        for (String[] columnDataType : columnDataTypes) {
+            minMapping.put(columnDataType[0], minColumn(columnDataType[0]));
+            maxMapping.put(columnDataType[0], maxColumn(columnDataType[0]));
+            dataTypeMap.put(columnDataType[0], columnDataType[1]);
+        }
+        ObjectNode select = (ObjectNode) Transformations.getFirstStatementNode(
+                Transformations.parseToTree("SELECT filename FROM t"));
+        select.set("where_clause", PredicateSimplifier.simplify(where));
+        JsonNode rewritten = Transformations.replaceEqualMinMaxInQuery(indexPath.toString(),
+                minMapping, maxMapping, dataTypeMap).apply(select);
+        return PredicateSimplifier.simplifyWhereClause(rewritten.get("where_clause"));
+    }
+
+    private String getStatsSql(List<String> files) {
+        List<String> stats = new ArrayList<>();
+        for (String[] columnDataType : columnDataTypes) {
+            String column = quoteString(columnDataType[0]);
+            String type = columnDataType[1];
+            stats.add(String.format(STAT_SQL, column, String.format("TRY_CAST(stats_min_value AS %s)", type), "min",
+                    quoteIdentifier(minColumn(columnDataType[0]))));
+            stats.add(String.format(STAT_SQL, column, String.format("TRY_CAST(stats_max_value AS %s)", type), "max",
+                    quoteIdentifier(maxColumn(columnDataType[0]))));
+            stats.add(String.format(STAT_SQL, column, "stats_null_count", "sum",
+                    quoteIdentifier(nullCountColumn(columnDataType[0]))));
+        }
+        String fileList = files.stream().map(SqlRenderer::quoteString).collect(Collectors.joining(", ", "[", "]"));
+        return String.format(STATS_SQL, String.join(", ", stats), fileList);
+    }
+
+    /**
+     * @return number of files in the index or -1 if the index does not exist or was created for different columns
+     */
+    private long countIndexedFiles(Connection connection) throws SQLException {
+        if (!Files.exists(indexPath)) {
+            return -1;
+        }
+        List<String> expectedColumns = new ArrayList<>(List.of(LAST_MODIFIED_COLUMN, FILENAME_COLUMN));
+        for (String[] columnDataType : columnDataTypes) {
+            expectedColumns.add(minColumn(columnDataType[0]));
+            expectedColumns.add(maxColumn(columnDataType[0]));
+            expectedColumns.add(nullCountColumn(columnDataType[0]));
+        }
+        String sql = String.format(EMPTY_SQL, quoteString(indexPath.toString()));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            List<String> columns = new ArrayList<>();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                columns.add(metaData.getColumnName(i));
+            }
+            if (!columns.equals(expectedColumns)) {
+                return -1;
+            }
+        }
+        return ConnectionPool.collectFirst(connection,
+                String.format("SELECT count(*) FROM read_parquet(%s)", quoteString(indexPath.toString())), Long.class);
+    }
+}
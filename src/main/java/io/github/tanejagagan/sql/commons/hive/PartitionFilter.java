@@ -0,0 +1,523 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import static io.github.tanejagagan.sql.commons.ExpressionConstants.*;
+
+/**
+ * Partition filter compiled to a java predicate over the typed values of the partitions so that the partitions
+ * can be pruned in a single pass without a temp table and a second query.
+ * Supports partition columns, constants, casts to integer, decimal, double, varchar, date, timestamp and boolean,
+ * comparisons, IN, NOT IN, BETWEEN, IS NULL, AND, OR and NOT.
+ * Every other expression throws UnsupportedOperationException at compile time and the caller falls back to DuckDB.
+ * Partition values are never null hence boolean logic is enough.
+ */
+public class PartitionFilter {
+
+    enum Kind {LONG, DOUBLE, DECIMAL, STRING, DATE, TIMESTAMP, BOOLEAN}
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .optionalStart().appendLiteral('T').optionalEnd()
+            .optionalStart().append(DateTimeFormatter.ISO_LOCAL_TIME).optionalEnd()
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+            .toFormatter(Locale.ROOT);
+
+    /**
+     * typeName is the DuckDB type, for example INTEGER or DECIMAL(10,2), which bounds the values of the operand.
+     * It is null if the values are only bounded by the kind, for example the operands of an implicit numeric cast.
+     */
+    private interface Operand {
+        Kind kind();
+
+        String typeName();
+
+        Object eval(Object[] row);
+    }
+
+    private record Column(int index, Kind kind, String typeName) implements Operand {
+        @Override
+        public Object eval(Object[] row) {
+            return row[index];
+        }
+    }
+
+    private record Constant(Object value, Kind kind, String typeName) implements Operand {
+        @Override
+        public Object eval(Object[] row) {
+            return value;
+        }
+    }
+
+    private record Cast(Operand child, Kind kind, String typeName) implements Operand {
+        @Override
+        public Object eval(Object[] row) {
+            return cast(child.eval(row), child.kind(), kind, typeName);
+        }
+    }
+
+    private final String[][] partitionDataTypes;
+    private final Kind[] kinds;
+    private final boolean[] used;
+    private final Predicate<Object[]> predicate;
+
+    private PartitionFilter(String[][] partitionDataTypes, JsonNode filter) {
+        this.partitionDataTypes = partitionDataTypes;
+        this.kinds = new Kind[partitionDataTypes.length];
+        this.used = new boolean[partitionDataTypes.length];
+        for (int i = 0; i < partitionDataTypes.length; i++) {
+            kinds[i] = kind(partitionDataTypes[i][1]);
+        }
+        this.predicate = filter == null || filter.isNull() ? row -> true : compilePredicate(filter);
+    }
+
+    /**
+     * @param filter             filter on the partition columns or NullNode
+     * @param partitionDataTypes name and type of the partition columns, a prefix of the partitions can be used
+     * @throws UnsupportedOperationException if the filter or a partition type is not supported
+     */
+    public static PartitionFilter compile(JsonNode filter, String[][] partitionDataTypes) {
+        return new PartitionFilter(partitionDataTypes, filter);
+    }
+
+    /**
+     * @return compiled filter or null if it is not supported
+     */
+    public static PartitionFilter tryCompile(JsonNode filter, String[][] partitionDataTypes) {
+        try {
+            return compile(filter, partitionDataTypes);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert the unescaped values of the partitions to the types of the partitions. Only the values of the
+     * columns used by the filter are converted, the rest are null.
+     * @throws IllegalArgumentException if a value can not be converted, for example abc to INTEGER
+     */
+    public Object[] convert(List<String> values) {
+        Object[] row = new Object[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            if (used[i]) {
+                row[i] = parse(values.get(i), kinds[i], partitionDataTypes[i][1]);
+            }
+        }
+        return row;
+    }
+
+    public boolean test(Object[] row) {
+        return predicate.test(row);
+    }
+
+    private Predicate<Object[]> compilePredicate(JsonNode node) {
+        String clazz = node.path("class").asText();
+        String type = node.path("type").asText();
+        switch (clazz) {
+            case CONJUNCTION_CLASS -> {
+                List<Predicate<Object[]>> children = new ArrayList<>();
+                for (JsonNode child : node.get("children")) {
+                    children.add(compilePredicate(child));
+                }
+                return switch (type) {
+                    case CONJUNCTION_TYPE_AND -> row -> {
+                        for (Predicate<Object[]> child : children) {
+                            if (!child.test(row)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    };
+                    case CONJUNCTION_TYPE_OR -> row -> {
+                        for (Predicate<Object[]> child : children) {
+                            if (child.test(row)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                    default -> throw unsupported(node);
+                };
+            }
+            case COMPARISON_CLASS -> {
+                return comparison(type, compileOperand(node.get("left")), compileOperand(node.get("right")), node);
+            }
+            case "BETWEEN" -> {
+                Operand input = compileOperand(node.get("input"));
+                return comparison(COMPARE_TYPE_GREATERTHANOREQUALTO, input, compileOperand(node.get("lower")), node)
+                        .and(comparison(COMPARE_TYPE_LESSTHANOREQUALTO, input, compileOperand(node.get("upper")), node));
+            }
+            case "OPERATOR" -> {
+                JsonNode children = node.get("children");
+                switch (type) {
+                    case OPERATOR_TYPE_NOT -> {
+                        return compilePredicate(children.get(0)).negate();
+                    }
+                    case "OPERATOR_IS_NULL", "OPERATOR_IS_NOT_NULL" -> {
+                        compileOperand(children.get(0));
+                        boolean isNull = type.equals("OPERATOR_IS_NULL");
+                        return row -> !isNull;
+                    }
+                    case "COMPARE_IN", "COMPARE_NOT_IN" -> {
+                        Operand input = compileOperand(children.get(0));
+                        List<Predicate<Object[]>> equals = new ArrayList<>();
+                        for (int i = 1; i < children.size(); i++) {
+                            equals.add(comparison(COMPARE_TYPE_EQUAL, input, compileOperand(children.get(i)), node));
+                        }
+                        Predicate<Object[]> in = row -> {
+                            for (Predicate<Object[]> equal : equals) {
+                                if (equal.test(row)) {
+                                    return true;
+                                }
+                            }
+                            return false;
+                        };
+                        return type.equals("COMPARE_IN") ? in : in.negate();
+                    }
+                    default -> throw unsupported(node);
+                }
+            }
+            default -> {
+                Operand operand = compileOperand(node);
+                if (operand.kind() != Kind.BOOLEAN) {
+                    throw unsupported(node);
+                }
+                return row -> (Boolean) operand.eval(row);
+            }
+        }
+    }
+
+    private Operand compileOperand(JsonNode node) {
+        if (node == null || !node.path("alias").asText().isEmpty()) {
+            throw unsupported(node);
+        }
+        switch (node.path("class").asText()) {
+            case COLUMN_REF_CLASS -> {
+                JsonNode names = node.get("column_names");
+                String name = names.get(names.size() - 1).asText();
+                for (int i = 0; i < partitionDataTypes.length; i++) {
+                    if (partitionDataTypes[i][0].equalsIgnoreCase(name)) {
+                        used[i] = true;
+                        return new Column(i, kinds[i], partitionDataTypes[i][1]);
+                    }
+                }
+                throw unsupported(node);
+            }
+            case CONSTANT_CLASS -> {
+                return constant(node.get("value"));
+            }
+            case CAST_CLASS -> {
+                if (node.get("try_cast").asBoolean()) {
+                    throw unsupported(node);
+                }
+                String typeName = typeName(node.get("cast_type"));
+                Kind target = kind(typeName);
+                Operand child = compileOperand(node.get("child"));
+                if (child instanceof Constant constant) {
+                    try {
+                        return new Constant(cast(constant.value(), constant.kind(), target, typeName), target, typeName);
+                    } catch (IllegalArgumentException | ArithmeticException e) {
+                        throw unsupported(node);
+                    }
+                }
+                checkCast(child.kind(), target, node);
+                return child.kind() == target && typeName.equalsIgnoreCase(child.typeName()) ?
+                        child : new Cast(child, target, typeName);
+            }
+            default -> throw unsupported(node);
+        }
+    }
+
+    private static Constant constant(JsonNode value) {
+        if (value.get("is_null").asBoolean()) {
+            throw unsupported(value);
+        }
+        JsonNode type = value.get("type");
+        JsonNode v = value.get("value");
+        String typeName = typeName(type);
+        return switch (type.get("id").asText()) {
+            case "VARCHAR" -> new Constant(v.asText(), Kind.STRING, typeName);
+            case "BOOLEAN" -> new Constant(v.asBoolean(), Kind.BOOLEAN, typeName);
+            case "TINYINT", "SMALLINT", "INTEGER", "BIGINT" -> new Constant(v.asLong(), Kind.LONG, typeName);
+            case "DECIMAL" -> {
+                if (!v.isIntegralNumber()) {
+                    throw unsupported(value);
+                }
+                yield new Constant(new BigDecimal(v.bigIntegerValue(), type.get("type_info").get("scale").asInt()), Kind.DECIMAL, typeName);
+            }
+            case "DOUBLE" -> new Constant(v.asDouble(), Kind.DOUBLE, typeName);
+            default -> throw unsupported(value);
+        };
+    }
+
+    /**
+     * @param type type of a constant or cast_type of a cast
+     * @return DuckDB type name with the width and scale of decimal
+     */
+    private static String typeName(JsonNode type) {
+        String id = type.get("id").asText();
+        if (id.equals("DECIMAL")) {
+            JsonNode typeInfo = type.path("type_info");
+            if (typeInfo.has("width")) {
+                return String.format("DECIMAL(%s,%s)", typeInfo.get("width").asInt(), typeInfo.get("scale").asInt());
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Operands are converted to a common type the way DuckDB does it. A string constant is cast to the type of the
+     * other side, numbers are compared as the wider type and date is promoted to timestamp.
+     */
+    private static Predicate<Object[]> comparison(String type, Operand left, Operand right, JsonNode node) {
+        Kind kind = commonKind(left, right, node);
+        Operand l = coerce(left, right, kind, node);
+        Operand r = coerce(right, left, kind, node);
+        return switch (type) {
+            case COMPARE_TYPE_EQUAL, "COMPARE_NOT_DISTINCT_FROM" -> row -> compare(l.eval(row), r.eval(row), kind) == 0;
+            case COMPARE_TYPE_NOTEQUAL, "COMPARE_DISTINCT_FROM" -> row -> compare(l.eval(row), r.eval(row), kind) != 0;
+            case COMPARE_TYPE_LESSTHAN -> row -> compare(l.eval(row), r.eval(row), kind) < 0;
+            case COMPARE_TYPE_LESSTHANOREQUALTO -> row -> compare(l.eval(row), r.eval(row), kind) <= 0;
+            case COMPARE_TYPE_GREATERTHAN -> row -> compare(l.eval(row), r.eval(row), kind) > 0;
+            case COMPARE_TYPE_GREATERTHANOREQUALTO -> row -> compare(l.eval(row), r.eval(row), kind) >= 0;
+            default -> throw unsupported(node);
+        };
+    }
+
+    private static Kind commonKind(Operand left, Operand right, JsonNode node) {
+        Kind l = left.kind();
+        Kind r = right.kind();
+        if (l == r) {
+            return l;
+        }
+        if (l == Kind.STRING && left instanceof Constant) {
+            return r;
+        }
+        if (r == Kind.STRING && right instanceof Constant) {
+            return l;
+        }
+        if (isNumber(l) && isNumber(r)) {
+            return l == Kind.DOUBLE || r == Kind.DOUBLE ? Kind.DOUBLE : Kind.DECIMAL;
+        }
+        if ((l == Kind.DATE || l == Kind.TIMESTAMP) && (r == Kind.DATE || r == Kind.TIMESTAMP)) {
+            return Kind.TIMESTAMP;
+        }
+        throw unsupported(node);
+    }
+
+    /**
+     * String constant is cast to the type of the other side, for example '1.005' is 1.01 for DECIMAL(10,2).
+     * Numbers are widened without a bound.
+     */
+    private static Operand coerce(Operand operand, Operand other, Kind kind, JsonNode node) {
+        if (operand.kind() == kind) {
+            return operand;
+        }
+        String typeName = operand.kind() == Kind.STRING && other.kind() == kind ? other.typeName() : null;
+        if (operand instanceof Constant constant) {
+            try {
+                return new Constant(cast(constant.value(), constant.kind(), kind, typeName), kind, typeName);
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                throw unsupported(node);
+            }
+        }
+        checkCast(operand.kind(), kind, node);
+        return new Cast(operand, kind, typeName);
+    }
+
+    private static boolean isNumber(Kind kind) {
+        return kind == Kind.LONG || kind == Kind.DOUBLE || kind == Kind.DECIMAL;
+    }
+
+    /**
+     * Casts whose output is not the same as DuckDB, for example decimal or timestamp to varchar, are not supported
+     */
+    private static void checkCast(Kind from, Kind to, JsonNode node) {
+        boolean supported = from == to || from == Kind.STRING
+                || isNumber(from) && isNumber(to)
+                || from == Kind.LONG && to == Kind.STRING
+                || from == Kind.DATE && (to == Kind.STRING || to == Kind.TIMESTAMP)
+                || from == Kind.TIMESTAMP && to == Kind.DATE;
+        if (!supported) {
+            throw unsupported(node);
+        }
+    }
+
+    /**
+     * @param typeName target type which bounds the value or null
+     * @throws IllegalArgumentException if the value can not be cast or is out of the range of the type
+     */
+    private static Object cast(Object value, Kind from, Kind to, String typeName) {
+        if (from == Kind.STRING) {
+            return parse((String) value, to, typeName);
+        }
+        return switch (to) {
+            case STRING -> value.toString();
+            case DOUBLE -> ((Number) value).doubleValue();
+            case DECIMAL -> toDecimal(value instanceof Long l ? BigDecimal.valueOf(l) :
+                    value instanceof Double d ? BigDecimal.valueOf(d) : (BigDecimal) value, typeName);
+            case LONG -> {
+                if (value instanceof Long l) {
+                    yield checkRange(l, typeName);
+                }
+                // DuckDB rounds half away from zero
+                BigDecimal decimal = value instanceof Double d ? BigDecimal.valueOf(d) : (BigDecimal) value;
+                try {
+                    yield checkRange(decimal.setScale(0, RoundingMode.HALF_UP).longValueExact(), typeName);
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException("Out of range " + value + " for " + typeName, e);
+                }
+            }
+            case TIMESTAMP -> {
+                if (value instanceof LocalDateTime) {
+                    yield value;
+                }
+                if (value instanceof LocalDate date) {
+                    yield date.atStartOfDay();
+                }
+                throw new IllegalArgumentException("Can not cast " + value + " to " + to);
+            }
+            case DATE -> {
+                if (value instanceof LocalDate) {
+                    yield value;
+                }
+                if (value instanceof LocalDateTime timestamp) {
+                    yield timestamp.toLocalDate();
+                }
+                throw new IllegalArgumentException("Can not cast " + value + " to " + to);
+            }
+            case BOOLEAN -> {
+                if (value instanceof Boolean) {
+                    yield value;
+                }
+                throw new IllegalArgumentException("Can not cast " + value + " to " + to);
+            }
+        };
+    }
+
+    /**
+     * @param typeName type of the value, bounds its range, or null
+     */
+    private static Object parse(String value, Kind kind, String typeName) {
+        String trimmed = value.trim();
+        try {
+            return switch (kind) {
+                case STRING -> value;
+                case LONG -> checkRange(Long.parseLong(trimmed), typeName);
+                case DOUBLE -> Double.parseDouble(trimmed);
+                case DECIMAL -> toDecimal(new BigDecimal(trimmed), typeName);
+                case DATE -> LocalDate.parse(trimmed);
+                case TIMESTAMP -> LocalDateTime.parse(trimmed, TIMESTAMP_FORMAT);
+                case BOOLEAN -> switch (trimmed.toLowerCase(Locale.ROOT)) {
+                    case "true", "t", "1" -> true;
+                    case "false", "f", "0" -> false;
+                    default -> throw new IllegalArgumentException("Can not cast " + value + " to BOOLEAN");
+                };
+            };
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Can not cast " + value + " to " + (typeName == null ? kind : typeName), e);
+        }
+    }
+
+    private static long checkRange(long value, String typeName) {
+        int bits = typeName == null ? 64 : switch (typeName.trim().toUpperCase(Locale.ROOT)) {
+            case "TINYINT", "INT1" -> 8;
+            case "SMALLINT", "INT2" -> 16;
+            case "INTEGER", "INT", "INT4" -> 32;
+            default -> 64;
+        };
+        if (bits < 64 && (value < -(1L << (bits - 1)) || value >= (1L << (bits - 1)))) {
+            throw new IllegalArgumentException("Out of range " + value + " for " + typeName);
+        }
+        return value;
+    }
+
+    /**
+     * Rounds to the scale of the type half away from zero as DuckDB does and checks the precision.
+     * DECIMAL without width and scale is DECIMAL(18,3) in DuckDB.
+     */
+    private static BigDecimal toDecimal(BigDecimal value, String typeName) {
+        if (typeName == null) {
+            return value;
+        }
+        String upper = typeName.replace(" ", "").toUpperCase(Locale.ROOT);
+        int precision = 18;
+        int scale = 3;
+        int open = upper.indexOf('(');
+        if (open > 0) {
+            String[] parts = upper.substring(open + 1, upper.length() - 1).split(",");
+            precision = Integer.parseInt(parts[0]);
+            scale = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        }
+        BigDecimal scaled = value.setScale(scale, RoundingMode.HALF_UP);
+        if (scaled.precision() - scaled.scale() > precision - scale) {
+            throw new IllegalArgumentException("Out of range " + value + " for " + typeName);
+        }
+        return scaled;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object left, Object right, Kind kind) {
+        if (kind == Kind.STRING) {
+            return compareCodePoints((String) left, (String) right);
+        }
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    /**
+     * Same order as DuckDB which compares the utf-8 bytes
+     */
+    private static int compareCodePoints(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            int l = left.codePointAt(i);
+            int r = right.codePointAt(j);
+            if (l != r) {
+                return Integer.compare(l, r);
+            }
+            i += Character.charCount(l);
+            j += Character.charCount(r);
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+
+    static Kind kind(String type) {
+        String upper = type.trim().toUpperCase(Locale.ROOT);
+        if (upper.startsWith("DECIMAL") || upper.startsWith("NUMERIC")) {
+            return Kind.DECIMAL;
+        }
+        // DuckDB ignores the length of VARCHAR(n)
+        if (upper.startsWith("VARCHAR(")) {
+            return Kind.STRING;
+        }
+        return switch (upper) {
+            case "TINYINT", "INT1", "SMALLINT", "INT2", "INTEGER", "INT", "INT4", "BIGINT", "INT8", "LONG" -> Kind.LONG;
+            // FLOAT is not supported since it is compared with the precision of float
+            case "DOUBLE", "FLOAT8" -> Kind.DOUBLE;
+            case "VARCHAR", "STRING", "TEXT" -> Kind.STRING;
+            case "DATE" -> Kind.DATE;
+            case "TIMESTAMP", "DATETIME" -> Kind.TIMESTAMP;
+            case "BOOLEAN", "BOOL" -> Kind.BOOLEAN;
+            default -> throw new UnsupportedOperationException("Unsupported partition type " + type);
+        };
+    }
+
+    private static UnsupportedOperationException unsupported(JsonNode node) {
+        return new UnsupportedOperationException("Unsupported partition filter " + node);
+    }
+}
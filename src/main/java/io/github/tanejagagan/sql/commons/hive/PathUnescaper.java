@@ -0,0 +1,219 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BitVectorHelper;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unescape the %XX escapes of the hive partition values at the byte level.
+ * Escaped bytes are decoded as UTF-8 hence %C3%BC is ü. If the unescaped value is not valid UTF-8 the escaped
+ * bytes are read as characters, for example %E9 is é, which is how the values were unescaped before.
+ * % which is not followed by two hex digits is kept as it is.
+ */
+public class PathUnescaper {
+
+    private static final long PERCENTS = 0x2525252525252525L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    public static String unescape(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[bytes.length];
+        int length = unescape(bytes, 0, bytes.length, result, 0);
+        return new String(result, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unescape list of strings vector into the target vector of the same type. Buffers are copied as they are
+     * if there is no % in the batch, otherwise values are unescaped between two arrays allocated once per batch.
+     * Target is allocated by this method.
+     */
+    public static void unescape(ListVector source, ListVector target) {
+        int count = source.getValueCount();
+        ArrowBuf listOffsets = source.getOffsetBuffer();
+        int elements = count == 0 ? 0 : listOffsets.getInt((long) count * ListVector.OFFSET_WIDTH);
+        target.clear();
+        target.setInitialCapacity(Math.max(count, 1));
+        target.allocateNew();
+        if (count == 0) {
+            target.setValueCount(0);
+            return;
+        }
+        // Structure of the list is unchanged
+        target.getOffsetBuffer().setBytes(0, listOffsets, 0, (long) (count + 1) * ListVector.OFFSET_WIDTH);
+        target.getValidityBuffer().setBytes(0, source.getValidityBuffer(), 0, BitVectorHelper.getValidityBufferSize(count));
+        target.setLastSet(count - 1);
+        if (elements == 0) {
+            // Child of the source can be untyped if all the lists are empty
+            target.setValueCount(count);
+            return;
+        }
+        VarCharVector sourceValues = (VarCharVector) source.getDataVector();
+        ArrowBuf valueOffsets = sourceValues.getOffsetBuffer();
+        int start = valueOffsets.getInt(0);
+        int end = valueOffsets.getInt((long) elements * BaseVariableWidthVector.OFFSET_WIDTH);
+        VarCharVector targetValues = (VarCharVector) target.getDataVector();
+        targetValues.allocateNew(Math.max(end - start, 1), elements);
+        targetValues.getValidityBuffer().setBytes(0, sourceValues.getValidityBuffer(), 0,
+                BitVectorHelper.getValidityBufferSize(elements));
+        ArrowBuf sourceData = sourceValues.getDataBuffer();
+        ArrowBuf targetOffsets = targetValues.getOffsetBuffer();
+        if (!containsPercent(sourceData, start, end)) {
+            targetValues.getDataBuffer().setBytes(0, sourceData, start, end - start);
+            for (int i = 0; i <= elements; i++) {
+                targetOffsets.setInt((long) i * BaseVariableWidthVector.OFFSET_WIDTH,
+                        valueOffsets.getInt((long) i * BaseVariableWidthVector.OFFSET_WIDTH) - start);
+            }
+        } else {
+            byte[] in = new byte[end - start];
+            byte[] out = new byte[end - start];
+            sourceData.getBytes(start, in, 0, in.length);
+            int position = 0;
+            targetOffsets.setInt(0, 0);
+            for (int i = 0; i < elements; i++) {
+                int from = valueOffsets.getInt((long) i * BaseVariableWidthVector.OFFSET_WIDTH) - start;
+                int to = valueOffsets.getInt((long) (i + 1) * BaseVariableWidthVector.OFFSET_WIDTH) - start;
+                position = unescape(in, from, to, out, position);
+                targetOffsets.setInt((long) (i + 1) * BaseVariableWidthVector.OFFSET_WIDTH, position);
+            }
+            targetValues.getDataBuffer().setBytes(0, out, 0, position);
+        }
+        targetValues.setLastSet(elements - 1);
+        targetValues.setValueCount(elements);
+        target.setValueCount(count);
+    }
+
+    /**
+     * Eight bytes at a time, a byte of x is zero only where the byte is %
+     */
+    static boolean containsPercent(ArrowBuf data, long start, long end) {
+        long i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long x = data.getLong(i) ^ PERCENTS;
+            if (((x - LOW_BITS) & ~x & HIGH_BITS) != 0) {
+                return true;
+            }
+        }
+        for (; i < end; i++) {
+            if (data.getByte(i) == '%') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unescaped value is never longer than the escaped value.
+     *
+     * @return position in out after the unescaped value
+     */
+    static int unescape(byte[] in, int start, int end, byte[] out, int position) {
+        int p = position;
+        boolean decodedNonAscii = false;
+        for (int i = start; i < end; i++) {
+            byte b = in[i];
+            int code;
+            if (b == '%' && i + 2 < end && (code = hex(in[i + 1], in[i + 2])) >= 0) {
+                out[p++] = (byte) code;
+                decodedNonAscii |= code >= 0x80;
+                i += 2;
+            } else {
+                out[p++] = b;
+            }
+        }
+        if (!decodedNonAscii || isValidUtf8(out, position, p)) {
+            return p;
+        }
+        // Escaped bytes are characters, 3 bytes of the escape are at least 2 bytes of UTF-8
+        p = position;
+        for (int i = start; i < end; i++) {
+            byte b = in[i];
+            int code;
+            if (b == '%' && i + 2 < end && (code = hex(in[i + 1], in[i + 2])) >= 0) {
+                if (code < 0x80) {
+                    out[p++] = (byte) code;
+                } else {
+                    out[p++] = (byte) (0xC0 | code >> 6);
+                    out[p++] = (byte) (0x80 | code & 0x3F);
+                }
+                i += 2;
+            } else {
+                out[p++] = b;
+            }
+        }
+        return p;
+    }
+
+    private static int hex(byte high, byte low) {
+        int h = hexDigit(high);
+        int l = hexDigit(low);
+        return h < 0 || l < 0 ? -1 : h << 4 | l;
+    }
+
+    private static int hexDigit(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Rejects overlong encodings, surrogates and code points above U+10FFFF
+     */
+    static boolean isValidUtf8(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int length;
+            int min;
+            int codePoint;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+                min = 0x80;
+                codePoint = b & 0x1F;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                min = 0x800;
+                codePoint = b & 0x0F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                min = 0x10000;
+                codePoint = b & 0x07;
+            } else {
+                return false;
+            }
+            if (i + length > end) {
+                return false;
+            }
+            for (int j = 1; j < length; j++) {
+                int c = bytes[i + j] & 0xFF;
+                if ((c & 0xC0) != 0x80) {
+                    return false;
+                }
+                codePoint = codePoint << 6 | c & 0x3F;
+            }
+            if (codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+                return false;
+            }
+            i += length;
+        }
+        return true;
+    }
+}
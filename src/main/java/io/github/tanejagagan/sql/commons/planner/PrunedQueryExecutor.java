@@ -0,0 +1,251 @@
+package io.github.tanejagagan.sql.commons.planner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.delta.kernel.exceptions.KernelEngineException;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.Transformations;
+import io.github.tanejagagan.sql.commons.hive.FileIndex;
+import io.github.tanejagagan.sql.commons.hive.HivePartitionPruning;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.duckdb.DuckDBConnection;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteString;
+
+/**
+ * Prune and execute a query over read_parquet (hive partitioned) and read_delta in one call.
+ * Every read_parquet/read_delta scan of the query, including the ones in joins, CTEs and subqueries,
+ * is pruned with the predicates which apply to it (see {@link ScanPredicates}) and its path is replaced
+ * with the list of remaining files. Named arguments like hive_partitioning and hive_types are kept.
+ * A scan without any remaining file is replaced with a LIMIT 0 subquery over the original path so that
+ * the schema of the query does not change.
+ * <p>
+ * read_delta is replaced with read_parquet over the data files with the partition types of the table. Tables which
+ * use deletion vectors or column mapping, or whose files are not in hive style directories, are not rewritten
+ * and are read with read_delta.
+ */
+public class PrunedQueryExecutor {
+
+    /**
+     * @param filesBeforePruning number of files before pruning or -1 if it is not known. Delta kernel does not report
+     *                           the number of files skipped by the filter hence it is -1 for filtered delta scans
+     */
+    public record ScanStats(String functionName, String path, long filesBeforePruning, int filesAfterPruning) {
+    }
+
+    /**
+     * Time spent in each phase in nanoseconds. Execute is the time to start the query, batches are read
+     * when the reader is consumed.
+     */
+    public record Timings(long parseNanos, long pruneNanos, long rewriteNanos, long executeNanos) {
+    }
+
+    /**
+     * Result of the query. Closing it closes the reader and the connection.
+     * @param sql rewritten sql which is executed
+     */
+    public record Result(ArrowReader reader, String sql, List<ScanStats> scans, Timings timings,
+                         DuckDBConnection connection) implements AutoCloseable {
+        @Override
+        public void close() throws IOException, SQLException {
+            try {
+                reader.close();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    public static Result execute(String sql, BufferAllocator allocator, int batchSize) throws SQLException, IOException {
+        return execute(sql, allocator, batchSize, Map.of());
+    }
+
+    /**
+     * @param fileIndexes index to be used after the partition pruning keyed by the path of read_parquet
+     */
+    public static Result execute(String sql, BufferAllocator allocator, int batchSize,
+                                 Map<String, FileIndex> fileIndexes) throws SQLException, IOException {
+        long start = System.nanoTime();
+        JsonNode tree = Transformations.parseToTree(sql);
+        long parsed = System.nanoTime();
+        List<ScanPredicates.TableScan> scans = ScanPredicates.analyze(tree);
+        List<ScanStats> stats = new ArrayList<>();
+        List<List<FileStatus>> files = new ArrayList<>();
+        List<String[][]> deltaPartitions = new ArrayList<>();
+        List<ScanPredicates.TableScan> prunedScans = new ArrayList<>();
+        for (ScanPredicates.TableScan scan : scans) {
+            String functionName = scan.functionName();
+            if (!hasPathArgument(scan.tableRef())) {
+                continue;
+            }
+            long filesBeforePruning;
+            List<FileStatus> remaining;
+            String[][] deltaPartitionDataTypes = null;
+            switch (functionName) {
+                case "read_parquet" -> {
+                    String[][] partitionDataTypes = getHivePartition(scan.tableRef());
+                    FileIndex fileIndex = fileIndexes.get(scan.path());
+                    // Nothing to prune on, path can be a single file or a glob hence it is not rewritten
+                    if (partitionDataTypes.length == 0 && fileIndex == null) {
+                        continue;
+                    }
+                    HivePartitionPruning.PrunedFiles prunedFiles = HivePartitionPruning.pruneFilesWithCount(scan.path(),
+                            scan.filter(), partitionDataTypes, fileIndex);
+                    filesBeforePruning = prunedFiles.totalFiles();
+                    remaining = prunedFiles.files();
+                }
+                case "read_delta" -> {
+                    try {
+                        deltaPartitionDataTypes = io.github.tanejagagan.sql.commons.delta.PartitionPruning
+                                .getParquetPartitionDataTypes(scan.path());
+                    } catch (UnsupportedOperationException e) {
+                        continue;
+                    }
+                    remaining = pruneDelta(scan.path(), scan.filter());
+                    if (!isHivePartitioned(remaining, deltaPartitionDataTypes)) {
+                        continue;
+                    }
+                    // Rows of the scan batches include the removed files hence they can not be counted either
+                    filesBeforePruning = scan.filter().isNull() ? remaining.size() : -1;
+                }
+                default -> {
+                    continue;
+                }
+            }
+            stats.add(new ScanStats(functionName, scan.path(), filesBeforePruning, remaining.size()));
+            files.add(remaining);
+            deltaPartitions.add(deltaPartitionDataTypes);
+            prunedScans.add(scan);
+        }
+        long pruned = System.nanoTime();
+        for (int i = 0; i < prunedScans.size(); i++) {
+            JsonNode tableRef = prunedScans.get(i).tableRef();
+            List<FileStatus> remaining = files.get(i);
+            if (remaining.isEmpty()) {
+                replaceWithEmptyScan((ObjectNode) tableRef, getHivePartition(tableRef).length);
+            } else {
+                SplitPlanner.replacePathInTableFunction(tableRef,
+                        remaining.stream().map(FileStatus::fileName).toArray(String[]::new));
+                if (deltaPartitions.get(i) != null) {
+                    addHiveArguments(tableRef, deltaPartitions.get(i));
+                }
+            }
+        }
+        String rewritten = Transformations.parseToSql(tree);
+        long rewrote = System.nanoTime();
+        DuckDBConnection connection = ConnectionPool.getConnection();
+        ArrowReader reader;
+        try {
+            reader = ConnectionPool.getReader(connection, allocator, rewritten, batchSize);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        long executed = System.nanoTime();
+        return new Result(reader, rewritten, stats,
+                new Timings(parsed - start, pruned - parsed, rewrote - pruned, executed - rewrote), connection);
+    }
+
+    private static boolean hasPathArgument(JsonNode tableRef) {
+        JsonNode children = tableRef.path("function").path("children");
+        return children.size() > 0 && Transformations.IS_CONSTANT.apply(children.get(0))
+                && children.get(0).get("value").get("type").get("id").asText().equals("VARCHAR");
+    }
+
+    /**
+     * hive_types is optional, without it the files are not pruned on the partitions
+     */
+    private static String[][] getHivePartition(JsonNode tableRef) {
+        for (JsonNode child : tableRef.get("function").get("children")) {
+            if (Transformations.IS_COMPARISON.apply(child)
+                    && child.path("left").path("column_names").path(0).asText().equals("hive_types")) {
+                return Transformations.getHivePartitionFromTable(tableRef);
+            }
+        }
+        return new String[0][];
+    }
+
+    /**
+     * Predicates which can not be converted to delta or evaluated by the delta kernel are ignored and the table is scanned without pruning.
+     */
+    private static List<FileStatus> pruneDelta(String path, JsonNode filter) throws SQLException, IOException {
+        if (filter.isNull()) {
+            return io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, "", null);
+        }
+        try {
+            return io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, filter);
+        } catch (UnsupportedOperationException | KernelEngineException e) {
+            return io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, "", null);
+        }
+    }
+
+    /**
+     * Partition values are not in the data files of a delta table hence they are read from the directories.
+     * Null partition values are written as __HIVE_DEFAULT_PARTITION__ which can not be cast to the partition type.
+     */
+    private static boolean isHivePartitioned(List<FileStatus> files, String[][] partitionDataTypes) {
+        for (FileStatus file : files) {
+            for (String[] partitionDataType : partitionDataTypes) {
+                if (!file.fileName().contains("/" + partitionDataType[0] + "=")
+                        || file.fileName().contains("=__HIVE_DEFAULT_PARTITION__")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add hive_partitioning and hive_types to read_parquet so that the partition columns of a delta table have
+     * the types of the table. Partitioning is disabled for a table without partitions.
+     */
+    private static void addHiveArguments(JsonNode tableRef, String[][] partitionDataTypes) throws SQLException, IOException {
+        String sql;
+        if (partitionDataTypes.length == 0) {
+            sql = "SELECT * FROM read_parquet('f', hive_partitioning = false)";
+        } else {
+            StringJoiner types = new StringJoiner(", ", "{", "}");
+            for (String[] partitionDataType : partitionDataTypes) {
+                types.add(quoteString(partitionDataType[0]) + ": " + quoteString(partitionDataType[1]));
+            }
+            sql = String.format("SELECT * FROM read_parquet('f', hive_partitioning = true, hive_types = %s)", types);
+        }
+        JsonNode template = Transformations.getFirstStatementNode(Transformations.parseToTree(sql))
+                .get("from_table").get("function").get("children");
+        ArrayNode children = (ArrayNode) tableRef.get("function").get("children");
+        for (int i = 1; i < template.size(); i++) {
+            children.add(template.get(i));
+        }
+    }
+
+    /**
+     * Replace the scan with (SELECT * FROM scan LIMIT 0) so that only the schema is read.
+     * Path of read_parquet is replaced with the glob used for listing the partitions.
+     */
+    private static void replaceWithEmptyScan(ObjectNode tableRef, int partitionsLen) throws SQLException, IOException {
+        JsonNode template = Transformations.getFirstStatementNode(
+                Transformations.parseToTree("SELECT * FROM (SELECT * FROM t LIMIT 0)")).get("from_table");
+        ObjectNode subquery = template.deepCopy();
+        ObjectNode inner = (ObjectNode) subquery.get("subquery").get("node");
+        ObjectNode scan = tableRef.deepCopy();
+        scan.put("alias", "");
+        if (scan.get("function").get("function_name").asText().equals("read_parquet")) {
+            ObjectNode path = (ObjectNode) scan.get("function").get("children").get(0).get("value");
+            path.put("value", HivePartitionPruning.getReadBlobPath(path.get("value").asText(), partitionsLen, "parquet"));
+        }
+        inner.set("from_table", scan);
+        subquery.put("alias", tableRef.get("alias").asText());
+        tableRef.removeAll();
+        tableRef.setAll(subquery);
+    }
+}
@@ -0,0 +1,337 @@
+package io.github.tanejagagan.sql.commons.planner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.Transformations;
+
+import java.util.*;
+
+import static io.github.tanejagagan.sql.commons.ExpressionConstants.*;
+
+/**
+ * Find every table scan of a query and the conjuncts which can be used to prune it.
+ * Walks set operations, CTEs, joins and subqueries in the from clause as well as in the expressions.
+ * For each select
+ * 1. Conjuncts of the where clause and of the inner join conditions are pushed to both sides of the join.
+ * 2. For LEFT, SEMI and ANTI joins the outer conjuncts are pushed only to the left side and the join condition
+ * only to the right side. RIGHT join is the mirror. Nothing is pushed through a FULL join.
+ * 3. Equalities between the columns in an inner context imply the single column conjuncts on the other column,
+ * for example a.dt = b.dt and a.dt = '2024-01-01' implies b.dt = '2024-01-01'.
+ * 4. A conjunct is used for a scan only if all its column references are qualified with the scan alias,
+ * or it is unqualified and the select has only one relation, and it has no subquery.
+ * Predicates are not pushed into sub queries and CTEs. They are analyzed with their own where clauses.
+ * References to CTEs are not table scans.
+ */
+public class ScanPredicates {
+
+    /**
+     * @param tableRef   BASE_TABLE or TABLE_FUNCTION node of the parse tree
+     * @param binding    alias, table name or function name by which the columns can be qualified
+     * @param conjuncts  conjuncts which are true for every row of the scan which can contribute to the result
+     */
+    public record TableScan(JsonNode tableRef, String binding, List<JsonNode> conjuncts) {
+
+        /**
+         * @return AND of the conjuncts with the column references unqualified, or NullNode if there is no conjunct.
+         * It can be used as the where clause to prune the files of the scan.
+         */
+        public JsonNode filter() {
+            if (conjuncts.isEmpty()) {
+                return NullNode.getInstance();
+            }
+            List<JsonNode> unqualified = new ArrayList<>(conjuncts.size());
+            for (JsonNode conjunct : conjuncts) {
+                JsonNode copy = conjunct.deepCopy();
+                Transformations.find(copy, Transformations.IS_REFERENCE, ref -> {
+                    ArrayNode names = (ArrayNode) ref.get("column_names");
+                    String last = names.get(names.size() - 1).asText();
+                    names.removeAll();
+                    names.add(last);
+                });
+                unqualified.add(copy);
+            }
+            if (unqualified.size() == 1) {
+                return unqualified.get(0);
+            }
+            ObjectNode result = JsonNodeFactory.instance.objectNode();
+            result.put("class", CONJUNCTION_CLASS);
+            result.put("type", CONJUNCTION_TYPE_AND);
+            result.put("alias", "");
+            result.put("query_location", 0);
+            result.putArray("children").addAll(unqualified);
+            return result;
+        }
+
+        /**
+         * @return path, the first argument of the TABLE_FUNCTION scan, for example read_parquet('path'),
+         * table name for the BASE_TABLE scan
+         */
+        public String path() {
+            JsonNode function = tableRef.get("function");
+            if (function == null) {
+                return tableRef.get("table_name").asText();
+            }
+            return function.get("children").get(0).path("value").path("value").asText();
+        }
+
+        /**
+         * @return function name for the TABLE_FUNCTION scan, null otherwise
+         */
+        public String functionName() {
+            JsonNode function = tableRef.get("function");
+            return function == null ? null : function.get("function_name").asText();
+        }
+    }
+
+    private static final class Relation {
+        final JsonNode tableRef;
+        final String binding;
+        final boolean scan;
+        final List<JsonNode> conjuncts = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+
+        Relation(JsonNode tableRef, String binding, boolean scan) {
+            this.tableRef = tableRef;
+            this.binding = binding;
+            this.scan = scan;
+        }
+    }
+
+    /**
+     * @param tree parse tree returned by Transformations.parseToTree
+     * @return table scans of all the statements in the order they appear in the tree
+     */
+    public static List<TableScan> analyze(JsonNode tree) {
+        List<TableScan> result = new ArrayList<>();
+        for (JsonNode statement : tree.get("statements")) {
+            analyzeQuery(statement.get("node"), Set.of(), result);
+        }
+        return result;
+    }
+
+    private static void analyzeQuery(JsonNode node, Set<String> outerCtes, List<TableScan> result) {
+        if (node == null || node.isNull()) {
+            return;
+        }
+        Set<String> ctes = new HashSet<>(outerCtes);
+        JsonNode cteEntries = node.path("cte_map").path("map");
+        for (JsonNode entry : cteEntries) {
+            ctes.add(entry.get("key").asText().toLowerCase(Locale.ROOT));
+        }
+        for (JsonNode entry : cteEntries) {
+            analyzeQuery(entry.path("value").path("query").get("node"), ctes, result);
+        }
+        if (Transformations.IS_SELECT.apply(node)) {
+            analyzeSelect(node, ctes, result);
+        } else {
+            // Set operation and recursive cte
+            analyzeQuery(node.get("left"), ctes, result);
+            analyzeQuery(node.get("right"), ctes, result);
+        }
+    }
+
+    private static void analyzeSelect(JsonNode node, Set<String> ctes, List<TableScan> result) {
+        List<Relation> relations = new ArrayList<>();
+        JsonNode from = node.get("from_table");
+        collectRelations(from, ctes, relations, result);
+        Relation single = relations.size() == 1 ? relations.get(0) : null;
+        push(from, splitConjuncts(node.get("where_clause")), relations, single);
+        for (Relation relation : relations) {
+            if (relation.scan) {
+                result.add(new TableScan(relation.tableRef, relation.binding, List.copyOf(relation.conjuncts)));
+            }
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (field.getKey().equals("cte_map") || field.getKey().equals("from_table")) {
+                continue;
+            }
+            for (JsonNode subquery : Transformations.collectSubQueries(field.getValue())) {
+                analyzeQuery(subquery.path("subquery").get("node"), ctes, result);
+            }
+        }
+    }
+
+    private static void collectRelations(JsonNode from, Set<String> ctes, List<Relation> relations,
+                                         List<TableScan> result) {
+        String type = from.get("type").asText();
+        String alias = from.path("alias").asText();
+        switch (type) {
+            case "BASE_TABLE" -> {
+                String tableName = from.get("table_name").asText();
+                boolean cte = from.get("schema_name").asText().isEmpty()
+                        && ctes.contains(tableName.toLowerCase(Locale.ROOT));
+                relations.add(new Relation(from, alias.isEmpty() ? tableName : alias, !cte));
+            }
+            case "TABLE_FUNCTION" -> {
+                String functionName = from.get("function").get("function_name").asText();
+                relations.add(new Relation(from, alias.isEmpty() ? functionName : alias, true));
+            }
+            case "JOIN" -> {
+                collectRelations(from.get("left"), ctes, relations, result);
+                collectRelations(from.get("right"), ctes, relations, result);
+                for (JsonNode subquery : Transformations.collectSubQueries(from.get("condition"))) {
+                    analyzeQuery(subquery.path("subquery").get("node"), ctes, result);
+                }
+            }
+            case SUBQUERY_TYPE -> {
+                relations.add(new Relation(from, alias, false));
+                analyzeQuery(from.path("subquery").get("node"), ctes, result);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void push(JsonNode from, List<JsonNode> conjuncts, List<Relation> relations, Relation single) {
+        String type = from.get("type").asText();
+        if (type.equals("JOIN")) {
+            List<JsonNode> on = splitConjuncts(from.get("condition"));
+            JsonNode left = from.get("left");
+            JsonNode right = from.get("right");
+            switch (from.get("join_type").asText()) {
+                case "INNER" -> {
+                    List<JsonNode> all = new ArrayList<>(conjuncts);
+                    all.addAll(on);
+                    all.addAll(impliedConjuncts(all));
+                    push(left, all, relations, single);
+                    push(right, all, relations, single);
+                }
+                case "LEFT", "SEMI", "ANTI" -> {
+                    push(left, conjuncts, relations, single);
+                    push(right, on, relations, single);
+                }
+                case "RIGHT" -> {
+                    push(left, on, relations, single);
+                    push(right, conjuncts, relations, single);
+                }
+                default -> {
+                    push(left, List.of(), relations, single);
+                    push(right, List.of(), relations, single);
+                }
+            }
+            return;
+        }
+        for (Relation relation : relations) {
+            if (relation.tableRef != from || !relation.scan) {
+                continue;
+            }
+            for (JsonNode conjunct : conjuncts) {
+                if (appliesTo(conjunct, relation, single) && relation.seen.add(conjunct.toString())) {
+                    relation.conjuncts.add(conjunct);
+                }
+            }
+        }
+    }
+
+    private static boolean appliesTo(JsonNode conjunct, Relation relation, Relation single) {
+        List<JsonNode> references = Transformations.collectReferences(conjunct);
+        // Conjunct without reference could be non deterministic, for example random() < 0.5
+        if (references.isEmpty() || !Transformations.collectSubQueries(conjunct).isEmpty()) {
+            return false;
+        }
+        for (JsonNode ref : references) {
+            JsonNode names = ref.get("column_names");
+            if (names.size() == 1) {
+                if (relation != single) {
+                    return false;
+                }
+            } else if (!names.get(names.size() - 2).asText().equalsIgnoreCase(relation.binding)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return conjuncts on a single column rewritten for every column which is equal to it
+     */
+    private static List<JsonNode> impliedConjuncts(List<JsonNode> conjuncts) {
+        Map<String, String> parent = new HashMap<>();
+        Map<String, JsonNode> refs = new HashMap<>();
+        for (JsonNode conjunct : conjuncts) {
+            if (isColumnEquality(conjunct)) {
+                String left = key(conjunct.get("left"));
+                String right = key(conjunct.get("right"));
+                refs.put(left, conjunct.get("left"));
+                refs.put(right, conjunct.get("right"));
+                parent.put(find(parent, left), find(parent, right));
+            }
+        }
+        List<JsonNode> result = new ArrayList<>();
+        if (parent.isEmpty()) {
+            return result;
+        }
+        for (JsonNode conjunct : conjuncts) {
+            if (isColumnEquality(conjunct) || !Transformations.collectSubQueries(conjunct).isEmpty()) {
+                continue;
+            }
+            List<JsonNode> references = Transformations.collectReferences(conjunct);
+            Set<String> keys = new HashSet<>();
+            references.forEach(r -> keys.add(key(r)));
+            if (keys.size() != 1) {
+                continue;
+            }
+            String column = keys.iterator().next();
+            String root = find(parent, column);
+            for (Map.Entry<String, JsonNode> other : refs.entrySet()) {
+                if (other.getKey().equals(column) || !find(parent, other.getKey()).equals(root)) {
+                    continue;
+                }
+                JsonNode copy = conjunct.deepCopy();
+                Transformations.find(copy, Transformations.IS_REFERENCE,
+                        ref -> ((ObjectNode) ref).set("column_names", other.getValue().get("column_names").deepCopy()));
+                result.add(copy);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isColumnEquality(JsonNode conjunct) {
+        return Transformations.IS_COMPARISON.apply(conjunct)
+                && conjunct.get("type").asText().equals(COMPARE_TYPE_EQUAL)
+                && Transformations.IS_REFERENCE.apply(conjunct.get("left"))
+                && Transformations.IS_REFERENCE.apply(conjunct.get("right"));
+    }
+
+    private static String key(JsonNode ref) {
+        StringBuilder sb = new StringBuilder();
+        for (JsonNode name : ref.get("column_names")) {
+            sb.append(name.asText().toLowerCase(Locale.ROOT)).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    private static String find(Map<String, String> parent, String key) {
+        String current = key;
+        String next;
+        while ((next = parent.get(current)) != null && !next.equals(current)) {
+            current = next;
+        }
+        return current;
+    }
+
+    private static List<JsonNode> splitConjuncts(JsonNode expression) {
+        List<JsonNode> result = new ArrayList<>();
+        if (expression == null || expression.isNull()) {
+            return result;
+        }
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            JsonNode current = stack.pop();
+            if (Transformations.IS_CONJUNCTION_AND.apply(current)) {
+                JsonNode children = current.get("children");
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            } else {
+                result.add(current);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.tanejagagan.sql.commons.planner;
+
+import io.github.tanejagagan.sql.commons.FileStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Groups the files into splits in the order they are accepted. A split is closed once its size exceeds
+ * maxSplitSize and is passed to the consumer, call {@link #finish()} to pass the last split.
+ */
+class SplitBuilder implements Consumer<FileStatus> {
+
+    private final long maxSplitSize;
+    private final Consumer<List<FileStatus>> consumer;
+    private List<FileStatus> current = new ArrayList<>();
+    private long currentSize = 0;
+
+    SplitBuilder(long maxSplitSize, Consumer<List<FileStatus>> consumer) {
+        this.maxSplitSize = maxSplitSize;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void accept(FileStatus fileStatus) {
+        current.add(fileStatus);
+        currentSize += fileStatus.size();
+        if (currentSize > maxSplitSize) {
+            consumer.accept(current);
+            current = new ArrayList<>();
+            currentSize = 0;
+        }
+    }
+
+    public void finish() {
+        if (!current.isEmpty()) {
+            consumer.accept(current);
+            current = new ArrayList<>();
+            currentSize = 0;
+        }
+    }
+}
@@ -4,14 +4,24 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
 import io.github.tanejagagan.sql.commons.ExpressionFactory;
 import io.github.tanejagagan.sql.commons.FileStatus;
 import io.github.tanejagagan.sql.commons.Transformations;
 import io.github.tanejagagan.sql.commons.hive.HivePartitionPruning;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.duckdb.DuckDBConnection;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static io.github.tanejagagan.sql.commons.ExpressionFactory.createFunction;
 
@@ -23,14 +33,30 @@ public interface SplitPlanner {
                                                    long maxSplitSize) throws SQLException, IOException {
         var filterExpression = Transformations.getWhereClause(tree);
         var catalogSchemaAndTable = Transformations.getTableOrPath(tree, null, null);
-        var tableFunction = Transformations.getTableFunction(tree);
-        var path = catalogSchemaAndTable.tableOrPath();
+        var fromTable = Transformations.getFirstStatementNode(tree).get("from_table");
+        return getSplits(fromTable, catalogSchemaAndTable.tableOrPath(), filterExpression, maxSplitSize);
+    }
+
+    /**
+     * Splits of one table scan of a query. Use {@link ScanPredicates#analyze(JsonNode)} to find the table scans
+     * of a query with joins, CTEs and subqueries.
+     */
+    public static List<List<FileStatus>> getSplits(ScanPredicates.TableScan scan,
+                                                   long maxSplitSize) throws SQLException, IOException {
+        return getSplits(scan.tableRef(), scan.path(), scan.filter(), maxSplitSize);
+    }
+
+    private static List<List<FileStatus>> getSplits(JsonNode fromTable,
+                                                    String path,
+                                                    JsonNode filterExpression,
+                                                    long maxSplitSize) throws SQLException, IOException {
+        var tableFunction = fromTable.path("function").path("function_name").asText();
         List<FileStatus> fileStatuses;
         switch (tableFunction) {
             case "read_parquet" -> {
-                var partitionDataTypes  = Transformations.getHivePartition(tree);
-                fileStatuses = HivePartitionPruning.pruneFiles(path,
-                        tree, partitionDataTypes);
+                var partitionDataTypes  = Transformations.getHivePartitionFromTable(fromTable);
+                fileStatuses = HivePartitionPruning.pruneFilesWithWhereClause(path,
+                        filterExpression, partitionDataTypes);
             }
             case "read_delta" ->
                     fileStatuses = io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, filterExpression);
@@ -43,28 +69,81 @@ public interface SplitPlanner {
 
     private static ArrayList<List<FileStatus>> getSplits(long maxSplitSize, List<FileStatus> fileStatuses) {
         var result = new ArrayList<List<FileStatus>>();
-        var current = new ArrayList<FileStatus>();
-        long currentSize = 0;
-        for (FileStatus fileStatus : fileStatuses) {
-            current.add(fileStatus);
-            currentSize += fileStatus.size();
-            if(currentSize > maxSplitSize) {
-                result.add(current);
-                current = new ArrayList<>();
-                currentSize = 0;
+        var splitBuilder = new SplitBuilder(maxSplitSize, result::add);
+        fileStatuses.forEach(splitBuilder);
+        splitBuilder.finish();
+        return result;
+    }
+
+    public static void forEachSplit(JsonNode tree,
+                                    long maxSplitSize,
+                                    Consumer<List<FileStatus>> consumer) throws SQLException, IOException {
+        var filterExpression = Transformations.getWhereClause(tree);
+        var catalogSchemaAndTable = Transformations.getTableOrPath(tree, null, null);
+        var fromTable = Transformations.getFirstStatementNode(tree).get("from_table");
+        forEachSplit(fromTable, catalogSchemaAndTable.tableOrPath(), filterExpression, maxSplitSize, consumer);
+    }
+
+    /**
+     * Streaming variant of {@link #getSplits(ScanPredicates.TableScan, long)}. Every split is passed to the consumer
+     * as soon as it is complete hence the files of the table are never held in memory together.
+     * Files of a hive table are ordered by last modified time, in DuckDB, as in getSplits.
+     * Files of a delta table are in the order of the delta log.
+     */
+    public static void forEachSplit(ScanPredicates.TableScan scan,
+                                    long maxSplitSize,
+                                    Consumer<List<FileStatus>> consumer) throws SQLException, IOException {
+        forEachSplit(scan.tableRef(), scan.path(), scan.filter(), maxSplitSize, consumer);
+    }
+
+    private static void forEachSplit(JsonNode fromTable,
+                                     String path,
+                                     JsonNode filterExpression,
+                                     long maxSplitSize,
+                                     Consumer<List<FileStatus>> consumer) throws SQLException, IOException {
+        var tableFunction = fromTable.path("function").path("function_name").asText();
+        var splitBuilder = new SplitBuilder(maxSplitSize, consumer);
+        switch (tableFunction) {
+            case "read_parquet" -> {
+                var partitionDataTypes = Transformations.getHivePartitionFromTable(fromTable);
+                try (DuckDBConnection connection = ConnectionPool.getConnection();
+                     BufferAllocator allocator = new RootAllocator();
+                     ArrowReader reader = HivePartitionPruning.pruneFilesAsReader(connection, allocator, path,
+                             filterExpression, partitionDataTypes, 1000)) {
+                    while (reader.loadNextBatch()) {
+                        VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                        VarCharVector filename = (VarCharVector) root.getVector("filename");
+                        BigIntVector size = (BigIntVector) root.getVector("size");
+                        BigIntVector lastModified = (BigIntVector) root.getVector("last_modified");
+                        for (int i = 0; i < root.getRowCount(); i++) {
+                            splitBuilder.accept(new FileStatus(new String(filename.get(i), StandardCharsets.UTF_8),
+                                    size.get(i), lastModified.get(i)));
+                        }
+                    }
+                }
             }
+            case "read_delta" ->
+                    io.github.tanejagagan.sql.commons.delta.PartitionPruning.forEachFile(path, filterExpression, splitBuilder);
+            default -> throw new SQLException("unsupported type : " + tableFunction);
         }
-        if(!current.isEmpty()) {
-            result.add(current);
-        }
-        return result;
+        splitBuilder.finish();
     }
 
     public static void replacePathInFromClause(JsonNode tree, String[] paths) {
+        var from = Transformations.getFirstStatementNode(tree).get("from_table");
+        replacePathInTableFunction(from, paths);
+    }
+
+    /**
+     * Replace the path of the table function with the list of files. read_delta is replaced with read_parquet.
+     * Named arguments of read_parquet, for example hive_partitioning and hive_types, are kept so that the partition
+     * columns are still part of the output.
+     * @param tableRef TABLE_FUNCTION node. It is modified in place.
+     */
+    public static void replacePathInTableFunction(JsonNode tableRef, String[] paths) {
         var formatToFunction = Map.of("read_delta", "read_parquet");
-        var format = Transformations.getTableFunction(tree);
+        var format = tableRef.get("function").get("function_name").asText();
         var functionName = formatToFunction.getOrDefault(format, format);
-        var from = (ObjectNode) Transformations.getFirstStatementNode(tree).get("from_table");
         var listChildren = new ArrayNode(JsonNodeFactory.instance);
         for (String path : paths) {
             listChildren.add(ExpressionFactory.constant(path));
@@ -72,7 +151,13 @@ public interface SplitPlanner {
         var listFunction = createFunction("list_value", "main", "", listChildren);
         var parquetChildren = new ArrayNode(JsonNodeFactory.instance);
         parquetChildren.add(listFunction);
+        if (functionName.equals(format)) {
+            var children = tableRef.get("function").get("children");
+            for (int i = 1; i < children.size(); i++) {
+                parquetChildren.add(children.get(i));
+            }
+        }
         var readParquetFunction = createFunction(functionName, "", "", parquetChildren);
-        from.set("function", readParquetFunction);
+        ((ObjectNode) tableRef).set("function", readParquetFunction);
     }
 }
@@ -18,6 +18,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 
@@ -99,6 +100,27 @@ public class ConnectionPoolTest {
         }
     }
 
+    @Test
+    public void testWarmUp() throws Exception {
+        ConnectionPool.warmUpAsync(List.of("json"),
+                List.of("select * from generate_series(10) where generate_series > 5")).get();
+        Assertions.assertTrue(ConnectionPool.isWarmedUp());
+        Assertions.assertTrue(ConnectionPool.getWarmUpMillis() >= 0);
+        assertEquals("true", ConnectionPool.collectFirst("select cast(loaded as varchar) from duckdb_extensions() where extension_name = 'json'", String.class));
+    }
+
+    @Test
+    public void testWarmUpFailureDoesNotStopWarmUp() throws Exception {
+        Path workload = Files.createTempFile("duckdb-sql-commons-", ".sql");
+        Files.writeString(workload, "select * from missing_table\n\nselect 1\n");
+        Properties properties = new Properties();
+        properties.setProperty(ConnectionPool.WARM_UP_EXTENSIONS_PROPERTY, "no_such_extension, json");
+        properties.setProperty(ConnectionPool.WARM_UP_WORKLOAD_PROPERTY, workload.toString());
+        Assertions.assertEquals(2, ConnectionPool.warmUpAsync(properties).get());
+        Assertions.assertTrue(ConnectionPool.isWarmedUp());
+        Assertions.assertNull(ConnectionPool.warmUpAsync(new Properties()));
+    }
+
     @Test
     public void testCollectAll() throws SQLException, NoSuchMethodException {
         record LongAndString( String s, Long l){};
@@ -0,0 +1,56 @@
+package io.github.tanejagagan.sql.commons;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap used by the listing of one million files of a table partitioned by date and hour,
+ * as ArrayList of FileStatus and as FileStatusList.
+ */
+public class FileStatusListBenchmark {
+
+    public static void main(String[] args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String basePath = "/mnt/warehouse/analytics/events_v2";
+        System.out.printf("%-15s %10d MB%n", "ArrayList", measure(() -> {
+            List<FileStatus> list = new ArrayList<>();
+            fill(list, basePath, files);
+            return list;
+        }));
+        System.out.printf("%-15s %10d MB%n", "FileStatusList", measure(() -> {
+            FileStatusList list = new FileStatusList();
+            fill(list, basePath, files);
+            list.trimToSize();
+            return list;
+        }));
+    }
+
+    private static void fill(List<FileStatus> list, String basePath, int files) {
+        for (int i = 0; i < files; i++) {
+            int partition = i / 100;
+            // Same string as the listing which creates a new String per file
+            String fileName = new StringBuilder(basePath).append("/dt=2024-").append(partition / 24 % 12 + 1)
+                    .append('-').append(partition / 288 % 28 + 1).append("/hour=").append(partition % 24)
+                    .append("/part-").append(i).append("-c000.snappy.parquet").toString();
+            list.add(new FileStatus(fileName, 128L * 1024 * 1024, 1_700_000_000_000L + i));
+        }
+    }
+
+    private static long measure(java.util.function.Supplier<List<FileStatus>> supplier) {
+        long before = usedMemory();
+        List<FileStatus> list = supplier.get();
+        long used = usedMemory() - before;
+        if (list.size() == 42) {
+            System.out.println(list.get(0));
+        }
+        return used / 1024 / 1024;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.tanejagagan.sql.commons;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class FileStatusListTest {
+
+    private static List<FileStatus> files() {
+        List<FileStatus> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(new FileStatus(String.format("/data/t/dt=2024-01-%02d/p=ü/part-%s.parquet", i % 10 + 1, i), i * 10L, 1000 - i));
+        }
+        files.add(new FileStatus("relative.parquet", 1, 2));
+        return files;
+    }
+
+    @Test
+    public void testSameAsList() {
+        List<FileStatus> expected = files();
+        FileStatusList list = new FileStatusList(expected);
+        Assertions.assertEquals(expected, list);
+        Assertions.assertEquals(expected.hashCode(), list.hashCode());
+        Assertions.assertEquals(11, list.directoryCount());
+        list.trimToSize();
+        Assertions.assertEquals(expected, list);
+        Assertions.assertEquals(expected.subList(10, 20), list.subList(10, 20));
+
+        expected.sort(Comparator.comparing(FileStatus::lastModified));
+        list.sort(Comparator.comparing(FileStatus::lastModified));
+        Assertions.assertEquals(expected, list);
+
+        FileStatus replaced = new FileStatus("/other/x.parquet", 5, 6);
+        Assertions.assertEquals(expected.set(3, replaced), list.set(3, replaced));
+        Assertions.assertEquals(expected, list);
+        list.add("/other/y.parquet", 7, 8);
+        expected.add(new FileStatus("/other/y.parquet", 7, 8));
+        Assertions.assertEquals(expected, list);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> list.get(list.size()));
+        list.clear();
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void testInsertAndRemove() {
+        List<FileStatus> expected = files();
+        FileStatusList list = new FileStatusList(expected);
+        FileStatus inserted = new FileStatus("/other/x.parquet", 5, 6);
+        expected.add(0, inserted);
+        list.add(0, inserted);
+        expected.add(50, inserted);
+        list.add(50, inserted);
+        Assertions.assertEquals(expected, list);
+        Assertions.assertEquals(expected.remove(0), list.remove(0));
+        Assertions.assertEquals(expected.remove(expected.size() - 1), list.remove(list.size() - 1));
+        Assertions.assertEquals(expected, list);
+
+        Assertions.assertTrue(list.removeIf(f -> f.size() % 20 == 0));
+        expected.removeIf(f -> f.size() % 20 == 0);
+        Assertions.assertEquals(expected, list);
+        Assertions.assertFalse(list.removeIf(f -> f.size() % 20 == 0));
+
+        var it = list.iterator();
+        it.next();
+        it.remove();
+        expected.remove(0);
+        list.subList(0, 5).clear();
+        expected.subList(0, 5).clear();
+        Assertions.assertEquals(expected, list);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> list.add(list.size() + 1, inserted));
+    }
+}
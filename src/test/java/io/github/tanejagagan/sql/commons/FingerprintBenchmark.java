@@ -0,0 +1,119 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares the fingerprint implementations on already parsed trees so that only the fingerprint cost is measured.
+ * legacy is the earlier implementation: two toString, DuckDB round trip to log the sql and String.format hex.
+ */
+public class FingerprintBenchmark {
+
+    // Baseline of the fingerprint before the prepared statements, the json is not escaped
+    private static final String LEGACY_JSON_DESERIALIZE_SQL = "SELECT json_deserialize_sql( cast('%s' as json))";
+
+    public static void main(String[] args) throws Exception {
+        final int iteration = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<JsonNode> trees = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            StringBuilder sb = new StringBuilder("select a, b, sum(c) from t where dt = '2024-01-0" + i + "'");
+            for (int j = 0; j < 20 * (i + 1); j++) {
+                sb.append(" and (c").append(j).append(" > ").append(j).append(" or s").append(j).append(" = 'v").append(j).append("')");
+            }
+            sb.append(" group by a, b");
+            trees.add(Transformations.parseToTree(sb.toString()));
+        }
+
+        // Warm up
+        for (int i = 0; i < 20; i++) {
+            for (JsonNode tree : trees) {
+                legacy(tree, true);
+                sha256(tree);
+                Fingerprint.hash(tree);
+            }
+        }
+
+        time("legacy", () -> {
+            for (int i = 0; i < iteration / 100; i++) {
+                for (JsonNode tree : trees) {
+                    legacy(tree, true);
+                }
+            }
+            return (long) (iteration / 100) * trees.size();
+        });
+        time("legacy without DuckDB", () -> {
+            for (int i = 0; i < iteration; i++) {
+                for (JsonNode tree : trees) {
+                    legacy(tree, false);
+                }
+            }
+            return (long) iteration * trees.size();
+        });
+        time("sha256 streaming", () -> {
+            for (int i = 0; i < iteration; i++) {
+                for (JsonNode tree : trees) {
+                    sha256(tree);
+                }
+            }
+            return (long) iteration * trees.size();
+        });
+        time("hash64", () -> {
+            long h = 0;
+            for (int i = 0; i < iteration; i++) {
+                for (JsonNode tree : trees) {
+                    h ^= Fingerprint.hash(tree);
+                }
+            }
+            if (h == 42) {
+                System.out.println(h);
+            }
+            return (long) iteration * trees.size();
+        });
+    }
+
+    private static String legacy(JsonNode tree, boolean withDuckDB) {
+        try {
+            JsonNode fingerPrintedNode = Transformations.transform(tree.deepCopy(), Transformations.IS_CONSTANT,
+                    Transformations.REPLACE_CONSTANT);
+            String jsonString = fingerPrintedNode.toString();
+            if (withDuckDB) {
+                ConnectionPool.collectFirst(String.format(LEGACY_JSON_DESERIALIZE_SQL, jsonString), String.class);
+            }
+            byte[] hashBytes = MessageDigest.getInstance("SHA-256")
+                    .digest(fingerPrintedNode.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hashBytes) {
+                hexString.append(String.format("%02x", b));
+            }
+            return hexString.toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sha256(JsonNode tree) {
+        try {
+            JsonNode fingerPrintedNode = Transformations.transform(tree.deepCopy(), Transformations.IS_CONSTANT,
+                    Transformations.REPLACE_CONSTANT);
+            var digest = MessageDigest.getInstance("SHA-256");
+            try (var out = new java.security.DigestOutputStream(java.io.OutputStream.nullOutputStream(), digest)) {
+                Fingerprint.objectMapper.writeValue(out, fingerPrintedNode);
+            }
+            digest.digest();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void time(String name, Supplier<Long> supplier) {
+        long start = System.nanoTime();
+        long count = supplier.get();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-25s %10.2f us/op%n", name, elapsed / 1000.0 / count);
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.tanejagagan.sql.commons;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FingerprintJobTest {
+
+    @Test
+    public void testRun() throws SQLException, IOException {
+        Path dir = Files.createTempDirectory("duckdb-sql-commons-");
+        String log = dir.resolve("log.parquet").toString();
+        // 2500 queries of one shape, 500 of another and 10 which can not be parsed
+        ConnectionPool.execute(String.format("COPY (" +
+                "SELECT 'select * from t where a = ' || range || ' and b = ''x' || range || '''' AS query FROM range(2500) " +
+                "UNION ALL SELECT 'select count(*) from t where c > ' || range || '.5' FROM range(500) " +
+                "UNION ALL SELECT 'select from where ' || range FROM range(10)) TO '%s' (FORMAT PARQUET)", log));
+        String output = dir.resolve("fingerprints.parquet").toString();
+        FingerprintJob.Stats stats = FingerprintJob.run(log, "query", output, 4);
+        Assertions.assertEquals(3010, stats.queries());
+        Assertions.assertEquals(10, stats.errors());
+        Assertions.assertEquals(2, stats.fingerprints());
+        Assertions.assertTrue(stats.queriesPerSecond() > 0);
+
+        List<Long> counts = new ArrayList<>();
+        ConnectionPool.collectFirstColumn(ConnectionPool.getConnection(),
+                String.format("SELECT count FROM '%s'", output), Long.class).forEach(counts::add);
+        Assertions.assertEquals(List.of(2500L, 500L), counts);
+        String sql = "select * from t where a = 7 and b = 'x7'";
+        Assertions.assertEquals(Fingerprint.generate(sql), ConnectionPool.collectFirst(
+                String.format("SELECT fingerprint FROM '%s' ORDER BY count DESC LIMIT 1", output), String.class));
+        Assertions.assertEquals(Fingerprint.generateTemplate(sql).sql(), ConnectionPool.collectFirst(
+                String.format("SELECT template FROM '%s' ORDER BY count DESC LIMIT 1", output), String.class));
+    }
+
+    @Test
+    public void testCsv() throws SQLException, IOException {
+        // Quotes in the paths and the column are escaped
+        Path dir = Files.createDirectory(Files.createTempDirectory("duckdb-sql-commons-").resolve("it's"));
+        Path log = dir.resolve("log.csv");
+        Files.writeString(log, "user,\"the \"\"sql\"\"\"\nu1,select 1\nu2,select 2\nu3,select 'a'\n");
+        FingerprintJob.Stats stats = FingerprintJob.run(log.toString(), "the \"sql\"", dir.resolve("out.parquet").toString(), 2);
+        Assertions.assertEquals(3, stats.queries());
+        Assertions.assertEquals(2, stats.fingerprints());
+    }
+}
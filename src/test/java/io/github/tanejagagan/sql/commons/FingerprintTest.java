@@ -3,10 +3,19 @@ package io.github.tanejagagan.sql.commons;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FingerprintTest {
 
@@ -22,4 +31,78 @@ public class FingerprintTest {
         }
         assertEquals (1, Arrays.stream(res).distinct().toArray().length);
     }
+
+    @Test
+    public void literalLengthTest() throws SQLException, IOException {
+        String sql1 = "select * from t where num > 1 and num2 >= 1.5 and str = 'a'";
+        String sql2 = "select * from t where num > 12345 and num2 >= 1234.75 and str = 'a longer string'";
+        assertEquals(64, Fingerprint.generate(sql1).length());
+        assertEquals(Fingerprint.generate(sql1), Fingerprint.generate(sql2));
+        assertNotEquals(Fingerprint.generate(sql1), Fingerprint.generate(sql1.replace("num2", "num3")));
+    }
+
+    @Test
+    public void fastFingerprintTest() throws SQLException, IOException {
+        String sql1 = "select * from t where num > 1 and num2 >= 1.0 and str = 'str1' and date in ('2014-01-01')";
+        String sql2 = "select * from t where num > 20 and num2 >= 22.05 and str = 'a longer string' and date in ('2014-01-02')";
+        assertEquals(16, Fingerprint.generateFast(sql1).length());
+        assertEquals(Fingerprint.generateFast(sql1), Fingerprint.generateFast(sql2));
+        assertNotEquals(Fingerprint.generateFast(sql1), Fingerprint.generateFast(sql1.replace("num2", "num3")));
+        assertNotEquals(Fingerprint.generateFast(sql1), Fingerprint.generateFast(sql1.replace(">=", "<=")));
+        assertNotEquals(Fingerprint.generateFast("select a, b from t"), Fingerprint.generateFast("select b, a from t"));
+        // Only VARCHAR, INTEGER and DECIMAL constants are replaced
+        assertNotEquals(Fingerprint.generateFast("select * from t where b = 12345678901"),
+                Fingerprint.generateFast("select * from t where b = 12345678902"));
+    }
+
+    @Test
+    public void templateTest() throws SQLException, IOException {
+        String sql1 = "select count(*), 'a' from range(100) t(num) where num > 10 and num < 20.5 and 'x' || num = 'x15' group by 2 order by 1";
+        String sql2 = "select count(*), 'b' from range(100) t(num) where num > 11 and num < 2.25 and 'y' || num = 'y1' group by 2 order by 1";
+        Fingerprint.Template template1 = Fingerprint.generateTemplate(sql1);
+        Fingerprint.Template template2 = Fingerprint.generateTemplate(sql2);
+        assertEquals(template1.sql(), template2.sql());
+        assertEquals(Fingerprint.generate(sql1), template1.fingerprint());
+        assertEquals(List.of(new Fingerprint.Parameter("VARCHAR", "a"), new Fingerprint.Parameter("INTEGER", 10),
+                new Fingerprint.Parameter("DECIMAL", new BigDecimal("20.5")), new Fingerprint.Parameter("VARCHAR", "x"),
+                new Fingerprint.Parameter("VARCHAR", "x15")), template1.parameters());
+        try (Connection connection = ConnectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(template1.sql())) {
+            template1.bind(statement);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getLong(1));
+                assertEquals("a", rs.getString(2));
+            }
+            template2.bind(statement);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertFalse(rs.next());
+            }
+        }
+        // Path of the table function and the positional references are not parameters
+        assertEquals(0, Fingerprint.generateTemplate("select a from read_parquet('/tmp/x.parquet') group by 1 order by 1").parameters().size());
+    }
+
+    @Test
+    public void normalizationTest() throws SQLException, IOException {
+        var all = Fingerprint.Normalization.ALL;
+        String sql = "select a as x from t where a in (1, 2, 3) and b > 10 and (c = 'x' or d < 1.5)";
+        String[] same = {
+                "select a as x from t where a in (4) and b > 11 and (c = 'y' or d < 2.5)",
+                "select a as x from t where (d < 2.5 or c = 'y') and 11 < b and a in (5, 6)",
+                "select a as y from t as t1 where b > 11 and a in (7, 8, 9, 10) and (c = 'z' or 1.5 > d)"};
+        for (String other : same) {
+            assertEquals(Fingerprint.generate(sql, all), Fingerprint.generate(other, all), other);
+            assertNotEquals(Fingerprint.generate(sql), Fingerprint.generate(other), other);
+        }
+        // Each normalisation is optional
+        assertNotEquals(Fingerprint.generate(sql, EnumSet.of(Fingerprint.Normalization.IN_LIST)),
+                Fingerprint.generate(same[1], EnumSet.of(Fingerprint.Normalization.IN_LIST)));
+        assertEquals(Fingerprint.generate("select * from t where 10 <= a", EnumSet.of(Fingerprint.Normalization.COMPARISON_ORIENTATION)),
+                Fingerprint.generate("select * from t where a >= 10", EnumSet.of(Fingerprint.Normalization.COMPARISON_ORIENTATION)));
+        // Structure is still different
+        assertNotEquals(Fingerprint.generate(sql, all), Fingerprint.generate(sql.replace("b > 10", "b < 10"), all));
+        assertNotEquals(Fingerprint.generate(sql, all), Fingerprint.generate(sql.replace(" or ", " and "), all));
+        assertNotEquals(Fingerprint.generate(sql, all), Fingerprint.generate(sql.replace("a in", "a not in"), all));
+    }
 }
@@ -0,0 +1,70 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParseTreeCacheTest {
+
+    @Test
+    public void testCachedTreeIsNotCorrupted() throws SQLException, JsonProcessingException {
+        String sql = "select * from t where a = 1 and p = 'not corrupted'";
+        long misses = Transformations.getParseTreeCache().getMissCount();
+        JsonNode first = Transformations.parseToTree(sql);
+        Assertions.assertEquals(misses + 1, Transformations.getParseTreeCache().getMissCount());
+        JsonNode expected = first.deepCopy();
+        ((ObjectNode) Transformations.getFirstStatementNode(first)).set("where_clause", null);
+        long hits = Transformations.getParseTreeCache().getHitCount();
+        JsonNode second = Transformations.parseToTree(sql);
+        Assertions.assertEquals(expected, second);
+        Assertions.assertEquals(hits + 1, Transformations.getParseTreeCache().getHitCount());
+        Transformations.transform(second, Transformations.IS_CONSTANT, Transformations.REPLACE_CONSTANT);
+        Assertions.assertEquals(expected, Transformations.parseToTree(sql));
+    }
+
+    @Test
+    public void testEviction() {
+        ParseTreeCache cache = new ParseTreeCache(2);
+        ObjectNode tree = new ObjectNode(null);
+        cache.put("a", tree);
+        cache.put("b", tree);
+        Assertions.assertNotNull(cache.get("a"));
+        cache.put("c", tree);
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertNotNull(cache.get("a"));
+        Assertions.assertNotNull(cache.get("c"));
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertEquals(0.75, cache.getHitRate());
+        cache.resize(0);
+        Assertions.assertEquals(0, cache.size());
+        cache.put("d", tree);
+        Assertions.assertNull(cache.get("d"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JsonNode>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String sql = "select * from t where a = " + (i % 10);
+                futures.add(executorService.submit(() -> Transformations.parseToTree(sql)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                JsonNode where = Transformations.getWhereClause(futures.get(i).get());
+                Assertions.assertEquals(i % 10, where.get("right").get("value").get("value").asInt());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.tanejagagan.sql.commons;
+
+import io.github.tanejagagan.sql.commons.hive.HivePartitionPruning;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class PartitionListingCacheTest {
+
+    static final String[][] partition = {{"p", "INTEGER"}, {"s", "VARCHAR"}};
+
+    private static String createTable() throws IOException {
+        String path = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, range %% 3 AS p, " +
+                "CASE WHEN range %% 2 = 0 THEN 'a' ELSE 'c' END AS s FROM range(30)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p, s))", path));
+        makeOld(path);
+        return path;
+    }
+
+    // Listings of the recently modified directories are not cached
+    private static void makeOld(String path) throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(1).toMillis());
+        try (Stream<Path> paths = Files.walk(Path.of(path))) {
+            for (Path p : paths.filter(Files::isDirectory).toList()) {
+                Files.setLastModifiedTime(p, old);
+            }
+        }
+    }
+
+    private static List<FileStatus> prune(String path, String filter, PartitionListingCache cache) throws SQLException, IOException {
+        var where = filter.isEmpty() ? null :
+                Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filter));
+        return HivePartitionPruning.pruneFilesWithCount(path, where, partition, null,
+                        HivePartitionPruning.Listing.WALK, cache).files()
+                .stream().sorted(Comparator.comparing(FileStatus::fileName)).toList();
+    }
+
+    @Test
+    public void testOnlyModifiedDirectoriesAreListed() throws SQLException, IOException {
+        String path = createTable();
+        PartitionListingCache cache = new PartitionListingCache(1000);
+        List<FileStatus> expected = prune(path, "", null);
+        // base directory, 3 p directories and 6 s directories
+        Assertions.assertEquals(expected, prune(path, "", cache));
+        Assertions.assertEquals(10, cache.getMissCount());
+        Assertions.assertEquals(expected, prune(path, "", cache));
+        Assertions.assertEquals(10, cache.getHitCount());
+        Assertions.assertEquals(prune(path, "p = 1", null), prune(path, "p = 1", cache));
+        Assertions.assertEquals(10, cache.getMissCount());
+
+        Path added = Path.of(path, "p=1", "s=b");
+        Files.createDirectories(added);
+        Files.copy(Path.of(expected.get(0).fileName()), added.resolve("data.parquet"));
+        long misses = cache.getMissCount();
+        List<FileStatus> files = prune(path, "p = 1", cache);
+        Assertions.assertEquals(prune(path, "p = 1", null), files);
+        Assertions.assertTrue(files.stream().anyMatch(f -> f.fileName().endsWith("s=b/data.parquet")));
+        // p=1 and the new s=b
+        Assertions.assertEquals(misses + 2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictionAndTtl() throws SQLException, IOException {
+        String path = createTable();
+        PartitionListingCache small = new PartitionListingCache(4);
+        prune(path, "", small);
+        Assertions.assertTrue(small.size() <= 4);
+        Assertions.assertTrue(small.getEvictionCount() > 0);
+
+        PartitionListingCache expired = new PartitionListingCache(1000, Duration.ZERO);
+        prune(path, "", expired);
+        prune(path, "", expired);
+        Assertions.assertEquals(0, expired.getHitCount());
+        Assertions.assertEquals(20, expired.getMissCount());
+
+        PartitionListingCache disabled = new PartitionListingCache(0);
+        Assertions.assertEquals(prune(path, "", null), prune(path, "", disabled));
+        Assertions.assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void testDeltaTable() throws SQLException, IOException {
+        // Checked in table is copied since the modification times are changed
+        Path source = Path.of("example/delta_table");
+        Path copy = Files.createTempDirectory("duckdb-sql-commons-").resolve("delta_table");
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path p : paths.toList()) {
+                Files.copy(p, copy.resolve(source.relativize(p).toString()));
+            }
+        }
+        String path = copy.toString();
+        makeOld(path + "/_delta_log");
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where p = 'x'"));
+        PartitionListingCache cache = new PartitionListingCache(1000);
+        var expected = io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, where);
+        Assertions.assertEquals(expected, io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, where, cache));
+        Assertions.assertEquals(expected, io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, where, cache));
+        Assertions.assertEquals(1, cache.getHitCount());
+        // Same filter at a different position of the query
+        var moved = Transformations.getWhereClause(Transformations.parseToTree("select a, b from t where p = 'x'"));
+        Assertions.assertEquals(expected, io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, moved, cache));
+        Assertions.assertEquals(2, cache.getHitCount());
+        // Cached result can be sorted without changing the cache
+        var dt = Transformations.getWhereClause(Transformations.parseToTree("select * from t where dt = cast('2024-01-01' as date)"));
+        var files = io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, dt, cache);
+        var unsorted = List.copyOf(files);
+        files.sort(Comparator.comparing(FileStatus::fileName).reversed());
+        Assertions.assertEquals(unsorted, io.github.tanejagagan.sql.commons.delta.PartitionPruning.pruneFiles(path, dt, cache));
+        Assertions.assertEquals(3, cache.getHitCount());
+    }
+}
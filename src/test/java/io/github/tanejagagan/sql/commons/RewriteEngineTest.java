@@ -0,0 +1,73 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+public class RewriteEngineTest {
+
+    private static JsonNode deepOr(int depth) {
+        JsonNode result = ExpressionFactory.equalExpr(ExpressionFactory.reference(new String[]{"a"}),
+                ExpressionFactory.constant("0"));
+        for (int i = 1; i < depth; i++) {
+            JsonNode next = ExpressionFactory.equalExpr(ExpressionFactory.reference(new String[]{"a"}),
+                    ExpressionFactory.constant(String.valueOf(i)));
+            result = ExpressionFactory.orFilters(result, next);
+        }
+        return result;
+    }
+
+    @Test
+    public void testDeepTree() {
+        int depth = 20000;
+        JsonNode tree = deepOr(depth);
+        List<JsonNode> references = Transformations.collectReferences(tree);
+        Assertions.assertEquals(depth, references.size());
+        JsonNode result = Transformations.transform(tree, Transformations.IS_REFERENCE,
+                n -> ExpressionFactory.reference(new String[]{"b"}));
+        for (JsonNode reference : Transformations.collectReferences(result)) {
+            Assertions.assertEquals("b", reference.get("column_names").get(0).asText());
+        }
+    }
+
+    @Test
+    public void testMultipleRulesSinglePass() throws SQLException, JsonProcessingException {
+        JsonNode tree = Transformations.parseToTree("select * from t where a = 1 and b = 2 and c > 'x'");
+        RewriteEngine engine = new RewriteEngine(List.of(
+                new RewriteEngine.Rule("reference", Transformations.IS_REFERENCE,
+                        n -> ExpressionFactory.reference(new String[]{"z"})),
+                new RewriteEngine.Rule("constant", Transformations.IS_CONSTANT,
+                        n -> ExpressionFactory.constant("0"))));
+        JsonNode result = engine.rewrite(tree);
+        Assertions.assertEquals(Map.of("reference", 3L, "constant", 3L), engine.getFiringCounts());
+        Assertions.assertEquals(1, engine.getPasses());
+        Assertions.assertEquals("SELECT * FROM t WHERE ((z = '0') AND (z = '0') AND (z > '0'))",
+                Transformations.parseToSql(result));
+    }
+
+    @Test
+    public void testFixedPoint() {
+        JsonNode tree = deepOr(3);
+        // Each pass unwraps only the outer most OR of a nested chain of ORs
+        List<RewriteEngine.Rule> rules = List.of(new RewriteEngine.Rule("unwrap", Transformations.IS_CONJUNCTION_OR,
+                n -> n.get("children").get(0)));
+        RewriteEngine engine = new RewriteEngine(rules, true, 10);
+        JsonNode result = engine.rewrite(tree);
+        Assertions.assertTrue(Transformations.IS_COMPARISON.apply(result));
+        Assertions.assertEquals("0", result.get("right").get("value").get("value").asText());
+        Assertions.assertEquals(2L, engine.getFiringCounts().get("unwrap"));
+        Assertions.assertEquals(3, engine.getPasses());
+
+        // maxPasses applies to every rewrite of the same engine
+        RewriteEngine limited = new RewriteEngine(rules, true, 3);
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertTrue(Transformations.IS_COMPARISON.apply(limited.rewrite(deepOr(3))));
+        }
+        Assertions.assertEquals(6, limited.getPasses());
+    }
+}
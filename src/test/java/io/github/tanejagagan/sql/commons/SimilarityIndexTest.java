@@ -0,0 +1,69 @@
+package io.github.tanejagagan.sql.commons;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+public class SimilarityIndexTest {
+
+    private static final List<String> TEMPLATES = List.of(
+            "select a, b, sum(c) from orders where dt = '2024-01-01' and region = 'x' group by a, b",
+            "select count(*) from lineitem l join orders o on l.id = o.id where l.qty > 10",
+            "select name from customers where id in (1, 2, 3) order by name limit 10",
+            "select * from read_parquet('/data/events/*.parquet') where event_type = 'click' and ts > '2024-01-01'");
+
+    private static SimilarityIndex build() throws SQLException, IOException {
+        SimilarityIndex index = new SimilarityIndex();
+        for (String template : TEMPLATES) {
+            index.add(template, template);
+        }
+        return index;
+    }
+
+    @Test
+    public void testTopK() throws SQLException, IOException {
+        SimilarityIndex index = build();
+        Assertions.assertEquals(4, index.size());
+        // Same structure with other literals
+        var matches = index.topK("select a, b, sum(c) from orders where dt = '2025-02-02' and region = 'y' group by a, b", 2);
+        Assertions.assertEquals(TEMPLATES.get(0), matches.get(0).key());
+        Assertions.assertEquals(1.0, matches.get(0).similarity());
+        // One more column in the select and the group by
+        matches = index.topK("select a, b, d, sum(c) from orders where dt = '2025-02-02' and region = 'y' group by a, b, d", 2);
+        Assertions.assertEquals(TEMPLATES.get(0), matches.get(0).key());
+        Assertions.assertTrue(matches.get(0).similarity() > 0.5 && matches.get(0).similarity() < 1.0);
+        matches = index.topK("select name, city from customers where id in (5) order by name", 1);
+        Assertions.assertEquals(List.of(TEMPLATES.get(2)), matches.stream().map(SimilarityIndex.Match::key).toList());
+        // Nothing in common
+        Assertions.assertEquals(List.of(), index.topK("select 1", 3));
+    }
+
+    @Test
+    public void testFeatures() throws SQLException, IOException {
+        var features = SimilarityIndex.features(Transformations.parseToTree(TEMPLATES.get(1)));
+        Assertions.assertTrue(features.containsAll(List.of("table:lineitem", "table:orders", "join:INNER",
+                "column:qty", "predicate:COMPARE_GREATERTHAN:qty", "function:count_star", "clause:where")), features.toString());
+        Assertions.assertEquals(SimilarityIndex.features(Transformations.parseToTree(TEMPLATES.get(1))),
+                SimilarityIndex.features(Transformations.parseToTree(TEMPLATES.get(1).replace("10", "20"))));
+    }
+
+    @Test
+    public void testSnapshot() throws SQLException, IOException {
+        SimilarityIndex index = build();
+        Path path = Files.createTempDirectory("duckdb-sql-commons-").resolve("similarity.idx");
+        index.save(path);
+        SimilarityIndex loaded = SimilarityIndex.load(path);
+        Assertions.assertEquals(index.size(), loaded.size());
+        for (String template : TEMPLATES) {
+            Assertions.assertEquals(index.topK(template, 3), loaded.topK(template, 3));
+        }
+        // Key is added only once
+        loaded.add(TEMPLATES.get(0), TEMPLATES.get(0));
+        Assertions.assertEquals(4, loaded.size());
+    }
+}
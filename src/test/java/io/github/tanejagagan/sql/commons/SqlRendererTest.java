@@ -0,0 +1,43 @@
+package io.github.tanejagagan.sql.commons;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.sql.SQLException;
+
+public class SqlRendererTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "p = 1 and q <> 'x' and r >= 2.50 and s < 12345678901",
+            "dt = date '2024-01-01' or (dt > cast('2024-01-02' as date) and p is not null)",
+            "\"we\"\"ird col\" = 'it''s' and t.c is null",
+            "p in (1, 2, 3) and q not in ('a', 'b') and not (r between 1 and 10)",
+            "lower(p) like 'a%' and p not like 'b%' and main.list_value(1, 2) = [1, 2] and -p > 1",
+            "case when p = 1 then 'a' when p = 2 then 'b' else 'c' end = 'a'",
+            "try_cast(p as decimal(10, 2)) = 1.5 and cast(q as int[]) = [1] and d = 1.5e3 and e = 1e-5",
+            "a is distinct from b and a is not distinct from c and true and not false",
+            "count(distinct a) > 1 and g = NULL and a || b = 'x' and (a + 1) * 2 = 4"
+    })
+    public void testRender(String where) throws SQLException, JsonProcessingException {
+        String sql = "select * from t where " + where;
+        JsonNode tree = Transformations.parseToTree(sql);
+        String rendered = SqlRenderer.render(Transformations.getWhereClause(tree));
+        JsonNode renderedTree = Transformations.parseToTree("select * from t where " + rendered);
+        Assertions.assertEquals(Transformations.parseToSql(tree), Transformations.parseToSql(renderedTree), rendered);
+    }
+
+    @Test
+    public void testUnsupported() throws SQLException, JsonProcessingException {
+        for (String where : new String[]{"x in (select y from t2)", "f collate nocase = 'a'",
+                "sum(x) filter (where y > 1) > 1"}) {
+            JsonNode tree = Transformations.parseToTree("select * from t where " + where);
+            Assertions.assertThrows(UnsupportedOperationException.class,
+                    () -> SqlRenderer.render(Transformations.getWhereClause(tree)));
+        }
+    }
+}
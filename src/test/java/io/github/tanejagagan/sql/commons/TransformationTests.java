@@ -9,8 +9,10 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 
@@ -40,6 +42,48 @@ public class TransformationTests {
         Assertions.assertEquals(1, qs.size());
     }
 
+    @Test
+    public void testParseWithQuotes() throws SQLException, JsonProcessingException {
+        String sql = "select 'it''s' as s from t where x = 'a''b'";
+        String result = Transformations.parseToSql(Transformations.parseToTree(sql));
+        Assertions.assertEquals("SELECT 'it''s' AS s FROM t WHERE (x = 'a''b')", result);
+    }
+
+    @Test
+    public void testBatchParse() throws SQLException, JsonProcessingException {
+        List<String> sqls = new ArrayList<>();
+        for (int i = 0; i < Transformations.BATCH_SIZE + 10; i++) {
+            sqls.add(String.format("select * from batch_t where x = '%s''%s'", i, i));
+        }
+        List<JsonNode> trees = Transformations.parseToTrees(sqls);
+        Assertions.assertEquals(sqls.size(), trees.size());
+        List<String> result = Transformations.parseToSqls(trees);
+        for (int i = 0; i < sqls.size(); i++) {
+            Assertions.assertEquals(Transformations.parseToSql(Transformations.parseToTree(sqls.get(i))), result.get(i));
+            Assertions.assertEquals(String.format("SELECT * FROM batch_t WHERE (x = '%s''%s')", i, i), result.get(i));
+        }
+    }
+
+    @Test
+    public void testPartialTree() throws SQLException, JsonProcessingException {
+        String sql = "with c as (select 1) select a, b, c from read_parquet('x/y', hive_partitioning = true) " +
+                "where a = 1 and b in (select 2); select 1";
+        JsonNode full = Transformations.parseToTree(sql);
+        JsonNode partial = Transformations.parseToPartialTree(sql, Set.of("where_clause", "from_table"));
+        Assertions.assertEquals(Transformations.getWhereClause(full), Transformations.getWhereClause(partial));
+        Assertions.assertEquals("read_parquet", Transformations.getTableFunction(partial));
+        Assertions.assertEquals("x/y", Transformations.getTableOrPath(partial, null, null).tableOrPath());
+        JsonNode node = Transformations.getFirstStatementNode(partial);
+        List<String> fields = new ArrayList<>();
+        node.fieldNames().forEachRemaining(fields::add);
+        Assertions.assertEquals(List.of("type", "from_table", "where_clause"), fields);
+        Assertions.assertEquals(1, partial.get("statements").size());
+        JsonNode noWhere = Transformations.parseToPartialTree("select * from t", Set.of("where_clause"));
+        Assertions.assertTrue(Transformations.getWhereClause(noWhere).isNull());
+        Assertions.assertThrows(SQLException.class,
+                () -> Transformations.parseToPartialTree("selec * frm t", Set.of("where_clause")));
+    }
+
     @Test
     public void getCast() throws SQLException, JsonProcessingException {
         //var schema = "a int, b string, c STRUCT(i  int), d Map(string, string), e Int[]";
@@ -0,0 +1,103 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.tanejagagan.sql.commons.ExpressionConstants;
+import io.github.tanejagagan.sql.commons.ExpressionFactory;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.sql.SQLException;
+import java.util.List;
+
+public class AstConverterTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "select * from t",
+            "select a, b as x from s.t where a = 1 and (b > 2.5 or c in ('x', 'y')) and d is not null",
+            "select lower(a) as la, count(distinct b) filter (where c > 1), try_cast(d as int), a::decimal(10,2) " +
+                    "from read_parquet('x', hive_partitioning = true) as r where f(a) and not g(b) and a + 1 > 2",
+            "select * from t1 join t2 on t1.id = t2.id where t1.p = date '2024-01-01' and t2.x between 1 and 10",
+            "with c as (select * from t3) select count(*) from c where x = 1 group by y having count(*) > 1 order by 1 limit 10"
+    })
+    public void testRoundTrip(String sql) throws SQLException, JsonProcessingException {
+        JsonNode tree = Transformations.parseToTree(sql);
+        JsonNode statement = Transformations.getFirstStatementNode(tree);
+        Select select = AstConverter.toSelect(statement);
+        JsonNode result = AstConverter.toJson(select);
+        Assertions.assertEquals(statement, result);
+        Assertions.assertEquals(statement.toString(), result.toString());
+        Assertions.assertEquals(Transformations.parseToSql(tree),
+                Transformations.parseToSql(AstConverter.withFirstSelect(tree, select)));
+    }
+
+    @Test
+    public void testTypedNodes() throws SQLException, JsonProcessingException {
+        String sql = "select * from read_parquet('x') where a = 1 and not g(b) and c in (1, 2)";
+        Select select = AstConverter.firstSelect(Transformations.parseToTree(sql));
+        Assertions.assertInstanceOf(TableRef.TableFunction.class, select.fromTable());
+        Assertions.assertEquals("read_parquet", ((TableRef.TableFunction) select.fromTable()).function().functionName());
+        Expression.Conjunction and = (Expression.Conjunction) select.whereClause();
+        Assertions.assertTrue(and.isAnd());
+        Assertions.assertInstanceOf(Expression.Comparison.class, and.children().get(0));
+        Assertions.assertInstanceOf(Expression.Operator.class, and.children().get(1));
+        Assertions.assertEquals("COMPARE_IN", ((Expression.Operator) and.children().get(2)).type());
+    }
+
+    @Test
+    public void testAggregateFilterIsTraversed() throws SQLException, JsonProcessingException {
+        JsonNode tree = Transformations.parseToTree("select sum(b) filter (where a = 1) from t");
+        Select select = AstConverter.firstSelect(tree);
+        Expression.Function sum = (Expression.Function) select.selectList().get(0);
+        Assertions.assertEquals(1, sum.arguments().size());
+        Assertions.assertEquals(2, sum.children().size());
+        Expression renamed = sum.transformUp(e -> e instanceof Expression.ColumnRef ref && ref.lastName().equals("a") ?
+                new Expression.ColumnRef("z") : e);
+        Assertions.assertSame(sum.arguments().get(0), ((Expression.Function) renamed).arguments().get(0));
+        JsonNode result = AstConverter.withFirstSelect(tree, select.withSelectList(List.of(renamed)));
+        Assertions.assertEquals("SELECT sum(b) FILTER (WHERE (z = 1)) FROM t", Transformations.parseToSql(result));
+    }
+
+    @Test
+    public void testFactoryNodes() {
+        JsonNode trueExpression = ExpressionFactory.trueExpression();
+        Expression expression = AstConverter.toExpression(trueExpression);
+        Assertions.assertInstanceOf(Expression.Cast.class, expression);
+        Assertions.assertEquals(trueExpression, AstConverter.toJson(expression));
+    }
+
+    @Test
+    public void testNodeWithoutAlias() {
+        ObjectNode node = (ObjectNode) ExpressionFactory.trueExpression().deepCopy();
+        node.remove("alias");
+        Expression expression = AstConverter.toExpression(node);
+        Assertions.assertInstanceOf(Expression.Other.class, expression);
+        Assertions.assertEquals(node, AstConverter.toJson(expression));
+    }
+
+    @Test
+    public void testStructuralSharing() throws SQLException, JsonProcessingException {
+        String sql = "select * from t where (a = 1 and b = 2) or (c = 3 and p = 4)";
+        Select select = AstConverter.firstSelect(Transformations.parseToTree(sql));
+        Expression where = select.whereClause();
+        Expression unchanged = where.transformUp(e -> e);
+        Assertions.assertSame(where, unchanged);
+        Expression renamed = where.transformUp(e -> {
+            if (e instanceof Expression.ColumnRef ref && ref.lastName().equals("p")) {
+                return new Expression.ColumnRef("q");
+            }
+            return e;
+        });
+        Expression.Conjunction before = (Expression.Conjunction) where;
+        Expression.Conjunction after = (Expression.Conjunction) renamed;
+        Assertions.assertNotSame(before, after);
+        Assertions.assertSame(before.children().get(0), after.children().get(0));
+        Assertions.assertNotSame(before.children().get(1), after.children().get(1));
+        Assertions.assertEquals(ExpressionConstants.CONJUNCTION_TYPE_OR, after.type());
+    }
+}
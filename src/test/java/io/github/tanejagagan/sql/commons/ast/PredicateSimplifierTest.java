@@ -0,0 +1,90 @@
+package io.github.tanejagagan.sql.commons.ast;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+public class PredicateSimplifierTest {
+
+    private static String simplify(String where, PredicateSimplifier.NormalForm normalForm, int maxClauses)
+            throws SQLException, JsonProcessingException {
+        JsonNode tree = Transformations.parseToTree("select * from t where " + where);
+        Select select = AstConverter.firstSelect(tree);
+        Expression simplified = PredicateSimplifier.simplify(select.whereClause(), normalForm, maxClauses);
+        String sql = Transformations.parseToSql(AstConverter.withFirstSelect(tree, select.withWhereClause(simplified)));
+        return sql.substring(sql.indexOf("WHERE ") + "WHERE ".length());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "true and p = 1 | (p = 1)",
+            "true and true | CAST('t' AS BOOLEAN)",
+            "p = 1 and false | CAST('f' AS BOOLEAN)",
+            "p = 1 or true | CAST('t' AS BOOLEAN)",
+            "p = 1 or false | (p = 1)",
+            "not true or p = 1 | (p = 1)",
+            "not not p | p",
+            "1 = 1 and 2 > 3 | CAST('f' AS BOOLEAN)",
+            "'a' = 'a' and p = 1 | (p = 1)",
+            "p = 1 and (q = 2 and (r = 3 and p = 1)) | ((p = 1) AND (q = 2) AND (r = 3))",
+            "p = 1 or (q = 2 or p = 1) | ((p = 1) OR (q = 2))",
+            "random() > 0.5 and random() > 0.5 | ((random() > 0.5) AND (random() > 0.5))"
+    })
+    public void testSimplify(String where, String expected) throws SQLException, JsonProcessingException {
+        Assertions.assertEquals(expected, simplify(where, PredicateSimplifier.NormalForm.NONE, 0));
+    }
+
+    @Test
+    public void testNormalForm() throws SQLException, JsonProcessingException {
+        String where = "(p = 1 and q = 2) or r = 3";
+        Assertions.assertEquals("(((p = 1) OR (r = 3)) AND ((q = 2) OR (r = 3)))",
+                simplify(where, PredicateSimplifier.NormalForm.CNF, PredicateSimplifier.DEFAULT_MAX_CLAUSES));
+        Assertions.assertEquals("(((p = 1) AND (q = 2)) OR (r = 3))",
+                simplify(where, PredicateSimplifier.NormalForm.DNF, PredicateSimplifier.DEFAULT_MAX_CLAUSES));
+        // CNF of this has 8 clauses which exceeds the bound
+        String large = "(a = 1 and b = 1) or (c = 1 and d = 1) or (e = 1 and f = 1)";
+        Assertions.assertEquals("(((a = 1) AND (b = 1)) OR ((c = 1) AND (d = 1)) OR ((e = 1) AND (f = 1)))",
+                simplify(large, PredicateSimplifier.NormalForm.CNF, 4));
+    }
+
+    @Test
+    public void testRemoveNonPartitionColumns() throws SQLException, JsonProcessingException {
+        Set<String> partitions = Set.of("p");
+        String[][] cases = {
+                {"select * from t where c = 10 and p = 50", "SELECT * FROM t WHERE (p = 50)"},
+                {"select * from t where c = 10 and d = 1", "SELECT * FROM t"},
+                {"select * from t where p = 50 and false", "SELECT * FROM t WHERE CAST('f' AS BOOLEAN)"},
+                {"select * from t where p in (1, 2) and c in (3, 4)", "SELECT * FROM t WHERE (p IN (1, 2))"},
+                {"select * from t where p between 1 and 5 and c = 1", "SELECT * FROM t WHERE (p BETWEEN 1 AND 5)"},
+                {"select * from t where p is not null and c is null", "SELECT * FROM t WHERE (p IS NOT NULL)"},
+                {"select * from t where (p = 1 and c = 2) or p = 3", "SELECT * FROM t WHERE ((p = 1) OR (p = 3))"},
+                {"select * from t where p = 1 or c = 2", "SELECT * FROM t"},
+                {"select * from t where not (p = 1 or c = 2)", "SELECT * FROM t WHERE (NOT (p = 1))"},
+                {"select * from t where not (p = 1 and c = 2)", "SELECT * FROM t"},
+                {"select * from t where not not (p = 1 and c = 2)", "SELECT * FROM t WHERE (p = 1)"},
+                {"select * from t where p in (select p from u)", "SELECT * FROM t"},
+                {"select * from t where p = 1 and exists (select 1 from u where u.p = t.p)", "SELECT * FROM t WHERE (p = 1)"},
+                {"select * from t where p = 1 and p = 1 and c = 2", "SELECT * FROM t WHERE (p = 1)"}
+        };
+        for (String[] c : cases) {
+            JsonNode tree = Transformations.parseToTree(c[0]);
+            JsonNode result = Transformations.transform(tree, Transformations.IS_SELECT,
+                    Transformations.removeNonPartitionColumnsPredicatesInQuery(partitions));
+            Assertions.assertEquals(c[1], Transformations.parseToSql(result));
+        }
+        // Input is not modified and is returned as it is if it only refers to the partitions
+        JsonNode where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where c = 1 or p = 2"));
+        JsonNode expected = where.deepCopy();
+        Transformations.removeNonPartitionColumnsPredicates(where, partitions);
+        Assertions.assertEquals(expected, where);
+        JsonNode partitionOnly = Transformations.getWhereClause(Transformations.parseToTree("select * from t where p = 2"));
+        Assertions.assertSame(partitionOnly, Transformations.removeNonPartitionColumnsPredicates(partitionOnly, partitions));
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BloomFilterIndexTest {
+
+    static final String[][] partition = {{"p", "INTEGER"}};
+    static final String[][] columns = {{"id", "BIGINT"}, {"name", "VARCHAR"}};
+    static String basePath;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        basePath = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        // Values are spread over all the files hence min/max statistics can not prune
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, 'x' || range AS name, range %% 3 AS p FROM range(300)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p))", basePath));
+    }
+
+    private static List<String> prune(FileIndex index, String filter) throws SQLException, IOException {
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filter));
+        return HivePartitionPruning.pruneFilesWithWhereClause(basePath, where, partition, index).stream()
+                .map(f -> Path.of(f.fileName()).getParent().getFileName().toString())
+                .sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testPrune() throws SQLException, IOException {
+        var index = new BloomFilterIndex(Files.createTempDirectory("duckdb-sql-commons-").resolve("index.bin"), columns);
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id = 150"));
+        Assertions.assertEquals(3, index.update(basePath, partition));
+        Assertions.assertEquals(0, index.update(basePath, partition));
+        Assertions.assertEquals(List.of("p=0"), prune(index, "id = 150"));
+        Assertions.assertEquals(List.of("p=0"), prune(index, "150 = id and name <> 'a'"));
+        Assertions.assertEquals(List.of("p=0"), prune(index, "id = '150'"));
+        Assertions.assertEquals(List.of("p=1", "p=2"), prune(index, "id in (4, 5, 1000)"));
+        Assertions.assertEquals(List.of("p=2"), prune(index, "name = 'x5'"));
+        Assertions.assertEquals(List.of(), prune(index, "id = 150 and name = 'x5'"));
+        Assertions.assertEquals(List.of(), prune(index, "id = 1000"));
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id = 150 or name = 'x5'"));
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id > 150"));
+        Assertions.assertEquals(List.of("p=0"), prune(index, "ID = 150"));
+    }
+
+    @Test
+    public void testConstantOfOtherType() throws SQLException, IOException {
+        String path = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT CASE WHEN range = 0 THEN '01' ELSE 'x' || range END AS name, " +
+                "range %% 3 AS p FROM range(30)) TO '%s' (FORMAT PARQUET, PARTITION_BY (p))", path));
+        for (String type : new String[]{"TEXT", "STRING", "VARCHAR(10)", "VARCHAR"}) {
+            var index = new BloomFilterIndex(Files.createTempDirectory("duckdb-sql-commons-").resolve("index.bin"),
+                    new String[][]{{"name", type}});
+            index.update(path, partition);
+            // name = 1 is true for '01' since the column is cast to integer hence the constant is not used
+            var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where name = 1"));
+            Assertions.assertEquals(3, HivePartitionPruning.pruneFilesWithWhereClause(path, where, partition, index).size(), type);
+            where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where name = '1'"));
+            Assertions.assertEquals(0, HivePartitionPruning.pruneFilesWithWhereClause(path, where, partition, index).size(), type);
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws SQLException, IOException {
+        Path path = Files.createTempDirectory("duckdb-sql-commons-").resolve("index.bin");
+        var index = new BloomFilterIndex(path, columns);
+        List<FileStatus> files = HivePartitionPruning.pruneFiles(basePath, "", partition);
+        Assertions.assertEquals(2, index.update(files.subList(0, 2)));
+        Assertions.assertEquals(1, index.update(files));
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where id = 1000"));
+        Assertions.assertEquals(List.of(), new BloomFilterIndex(path, columns).prune(files, where));
+        // Modified file is never pruned using the old filter
+        FileStatus modified = new FileStatus(files.get(0).fileName(), files.get(0).size(), files.get(0).lastModified() + 1);
+        Assertions.assertEquals(List.of(modified), index.prune(List.of(modified), where));
+        // Index for different columns is rebuilt
+        Assertions.assertEquals(3, new BloomFilterIndex(path, new String[][]{{"id", "BIGINT"}}).update(files));
+    }
+
+    @Test
+    public void testChain() throws SQLException, IOException {
+        Path dir = Files.createTempDirectory("duckdb-sql-commons-");
+        var bloom = new BloomFilterIndex(dir.resolve("index.bin"), columns);
+        var stats = new HiveStatisticsIndex(dir.resolve("index.parquet"), columns);
+        bloom.update(basePath, partition);
+        stats.update(basePath, partition);
+        // Bloom filters keep p=0 and p=1 and only p=2 has the max value 299
+        Assertions.assertEquals(List.of("p=0", "p=1"), prune(bloom, "id in (150, 151) and id >= 299"));
+        Assertions.assertEquals(List.of("p=2"), prune(stats, "id in (150, 151) and id >= 299"));
+        Assertions.assertEquals(List.of(), prune(bloom.andThen(stats), "id in (150, 151) and id >= 299"));
+    }
+}
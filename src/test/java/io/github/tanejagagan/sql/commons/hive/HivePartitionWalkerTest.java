@@ -0,0 +1,91 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+
+public class HivePartitionWalkerTest {
+
+    static final String[][] partition = {{"p", "INTEGER"}, {"s", "VARCHAR"}};
+    static String basePath;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        basePath = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, range %% 3 AS p, " +
+                "CASE WHEN range %% 2 = 0 THEN 'a/b' ELSE 'c' END AS s FROM range(30)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p, s))", basePath));
+    }
+
+    private static List<FileStatus> prune(String filter, HivePartitionPruning.Listing listing) throws SQLException, IOException {
+        var where = filter.isEmpty() ? null :
+                Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filter));
+        return HivePartitionPruning.pruneFilesWithCount(basePath, where, partition, null, listing).files()
+                .stream().sorted(Comparator.comparing(FileStatus::fileName)).toList();
+    }
+
+    @Test
+    public void testSameAsReadBlob() throws SQLException, IOException {
+        for (String filter : List.of("", "p = 1", "p = 1 and s = 'a/b'", "s = 'c'", "p = 1 or s = 'c'",
+                "p in (0, 2) and id > 5", "p > 5", "p = 1 and p = 2", "upper(s) = 'C'")) {
+            List<FileStatus> expected = prune(filter, HivePartitionPruning.Listing.READ_BLOB);
+            Assertions.assertEquals(expected, prune(filter, HivePartitionPruning.Listing.WALK), filter);
+            Assertions.assertEquals(expected, prune(filter, HivePartitionPruning.Listing.READ_BLOB_DUCKDB), filter);
+        }
+        Assertions.assertEquals(6, prune("", HivePartitionPruning.Listing.WALK).size());
+        Assertions.assertEquals(1, prune("p = 1 and s = 'a/b'", HivePartitionPruning.Listing.WALK).size());
+        // Filter which is not compiled is applied in DuckDB which also counts the files
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where upper(s) = 'C'"));
+        var pruned = HivePartitionPruning.pruneFilesWithCount(basePath, where, partition, null, HivePartitionPruning.Listing.READ_BLOB);
+        Assertions.assertEquals(3, pruned.files().size());
+        Assertions.assertEquals(6, pruned.totalFiles());
+    }
+
+    @Test
+    public void testPrunedDirectoryIsNotListed() throws SQLException, IOException {
+        String path = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, range %% 2 AS p, range %% 5 AS s FROM range(10)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p, s))", path));
+        // Partition value which can not be cast to INTEGER fails the pruning only if its directory is listed
+        Path bad = Path.of(path, "p=0", "s=x");
+        Files.createDirectories(bad);
+        Files.copy(Path.of(path, "p=0", "s=0").toFile().listFiles()[0].toPath(), bad.resolve("data.parquet"));
+        String[][] types = {{"p", "INTEGER"}, {"s", "INTEGER"}};
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where p = 1 and s > 0"));
+        var walked = HivePartitionPruning.pruneFilesWithCount(path, where, types, null, HivePartitionPruning.Listing.WALK);
+        Assertions.assertEquals(4, walked.files().size());
+        Assertions.assertEquals(-1, walked.totalFiles());
+        Assertions.assertThrows(SQLException.class,
+                () -> HivePartitionPruning.pruneFilesWithCount(path, where, types, null, HivePartitionPruning.Listing.READ_BLOB));
+    }
+
+    @Test
+    public void testReadBlobInDuckDB() throws SQLException, IOException {
+        String path = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, range %% 2 AS p, 'a/b' AS s FROM range(10)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p, s))", path));
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where p = 1 or s = 'é'"));
+        var expected = HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, HivePartitionPruning.Listing.READ_BLOB);
+        var inDuckDB = HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, HivePartitionPruning.Listing.READ_BLOB_DUCKDB);
+        Assertions.assertEquals(1, inDuckDB.files().size());
+        Assertions.assertEquals(expected.totalFiles(), inDuckDB.totalFiles());
+        // Not valid UTF-8 for url_decode, falls back to the read_blob pruning
+        Path latin = Path.of(path, "p=0", "s=%E9");
+        Files.createDirectories(latin);
+        Files.copy(Path.of(inDuckDB.files().get(0).fileName()), latin.resolve("data.parquet"));
+        expected = HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, HivePartitionPruning.Listing.READ_BLOB);
+        inDuckDB = HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, HivePartitionPruning.Listing.READ_BLOB_DUCKDB);
+        Assertions.assertEquals(2, expected.files().size());
+        Assertions.assertEquals(expected, inDuckDB);
+    }
+}
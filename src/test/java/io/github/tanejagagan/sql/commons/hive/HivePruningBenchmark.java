@@ -0,0 +1,40 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.Transformations;
+
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Compares the pruning pipelines on a table with p partitions times 10 escaped s partitions, one file each.
+ * READ_BLOB filters in java when the filter can be compiled to {@link PartitionFilter} and otherwise through
+ * a temp table, READ_BLOB_DUCKDB unescapes and filters in the listing statement.
+ */
+public class HivePruningBenchmark {
+
+    static final String[][] partition = {{"p", "INTEGER"}, {"s", "VARCHAR"}};
+
+    public static void main(String[] args) throws Exception {
+        int partitions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int iteration = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String path = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, range %% %s AS p, 'a/b ' || (range // %s %% 10) AS s " +
+                "FROM range(%s)) TO '%s' (FORMAT PARQUET, PARTITION_BY (p, s))", partitions, partitions, partitions * 10, path));
+        for (String filter : List.of("true", "p = 5", "p between 10 and 20 and s = 'a/b 1'", "upper(s) = 'A/B 1'")) {
+            JsonNode where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filter));
+            for (HivePartitionPruning.Listing listing : List.of(HivePartitionPruning.Listing.READ_BLOB,
+                    HivePartitionPruning.Listing.READ_BLOB_DUCKDB)) {
+                HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, listing);
+                long start = System.nanoTime();
+                int files = 0;
+                for (int i = 0; i < iteration; i++) {
+                    files = HivePartitionPruning.pruneFilesWithCount(path, where, partition, null, listing).files().size();
+                }
+                System.out.printf("%-40s %-17s %6d files %10.2f ms/op%n", filter, listing, files,
+                        (System.nanoTime() - start) / 1_000_000.0 / iteration);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.FileStatus;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class HiveStatisticsIndexTest {
+
+    static final String[][] partition = {{"p", "INTEGER"}};
+    static final String[][] columns = {{"id", "BIGINT"}, {"name", "VARCHAR"}};
+    static String basePath;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        basePath = Files.createTempDirectory("duckdb-sql-commons-").toString();
+        // p = 0 has id 0 to 9, p = 1 has id 10 to 19 and p = 2 has id 20 to 29
+        ConnectionPool.execute(String.format("COPY (SELECT range AS id, 'x' || range AS name, range // 10 AS p FROM range(30)) " +
+                "TO '%s' (FORMAT PARQUET, PARTITION_BY (p))", basePath));
+    }
+
+    private static List<String> prune(FileIndex index, String filter) throws SQLException, IOException {
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where " + filter));
+        return HivePartitionPruning.pruneFilesWithWhereClause(basePath, where, partition, index).stream()
+                .map(f -> Path.of(f.fileName()).getParent().getFileName().toString())
+                .sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testPrune() throws SQLException, IOException {
+        var index = new HiveStatisticsIndex(Files.createTempDirectory("duckdb-sql-commons-").resolve("index.parquet"), columns);
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id = 15"));
+        Assertions.assertEquals(3, index.update(basePath, partition));
+        Assertions.assertEquals(0, index.update(basePath, partition));
+        Assertions.assertEquals(List.of("p=1"), prune(index, "id = 15"));
+        Assertions.assertEquals(List.of("p=2"), prune(index, "id >= 25"));
+        Assertions.assertEquals(List.of("p=0"), prune(index, "5 > id"));
+        Assertions.assertEquals(List.of("p=0", "p=1"), prune(index, "name = 'x15'"));
+        Assertions.assertEquals(List.of(), prune(index, "id = 15 and p = 2"));
+        Assertions.assertEquals(List.of(), prune(index, "id = 100"));
+        // Only conjunctions of comparisons with a constant are used
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id = 15 or p = 0"));
+        Assertions.assertEquals(List.of("p=0", "p=1", "p=2"), prune(index, "id + 1 = 16"));
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws SQLException, IOException {
+        var index = new HiveStatisticsIndex(Files.createTempDirectory("duckdb-sql-commons-").resolve("index.parquet"), columns);
+        List<FileStatus> files = HivePartitionPruning.pruneFiles(basePath, "", partition);
+        Assertions.assertEquals(2, index.update(files.subList(0, 2)));
+        Assertions.assertEquals(1, index.update(files));
+        // Modified file is read again and is never pruned using the old statistics
+        FileStatus first = files.get(0);
+        FileStatus modified = new FileStatus(first.fileName(), first.size(), first.lastModified() + 1000);
+        var where = Transformations.getWhereClause(Transformations.parseToTree("select * from t where id = -1"));
+        Assertions.assertEquals(List.of(), index.prune(files, where));
+        Assertions.assertEquals(List.of(modified), index.prune(List.of(first, modified), where));
+        Files.setLastModifiedTime(Path.of(first.fileName()), FileTime.fromMillis(modified.lastModified()));
+        Assertions.assertEquals(1, index.update(basePath, partition));
+        // Removed files are removed from the index
+        Assertions.assertEquals(0, index.update(files.subList(1, 3)));
+        Assertions.assertEquals(1, index.update(basePath, partition));
+        // Index created for other columns is rebuilt
+        var other = new HiveStatisticsIndex(index.getIndexPath(), new String[][]{{"id", "BIGINT"}});
+        Assertions.assertEquals(3, other.update(basePath, partition));
+        Assertions.assertEquals(List.of("p=1"), prune(other, "id = 15"));
+        Assertions.assertEquals(0, other.update(List.of()));
+        Assertions.assertFalse(Files.exists(other.getIndexPath()));
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PartitionFilterTest {
+
+    static final String[][] partition = {{"dt", "DATE"}, {"hr", "INTEGER"}, {"region", "VARCHAR"}, {"ts", "TIMESTAMP"},
+            {"d", "DECIMAL(10,2)"}};
+
+    static final List<List<String>> rows = List.of(
+            List.of("2024-01-01", "0", "us", "2024-01-01 00:00:00", "1.005"),
+            List.of("2024-01-02", "5", "eu/west", "2024-01-02 10:30:00", "-1.005"),
+            List.of("2024-02-01", "23", "Eu", "2024-02-01 23:59:59", "12.5"),
+            List.of("2023-12-31", "12", "ü", "2023-12-31 12:00:00", "0.004"));
+
+    private static List<Boolean> evaluateInDuckDB(String filter) {
+        List<Boolean> result = new ArrayList<>();
+        for (List<String> row : rows) {
+            String sql = String.format("SELECT coalesce(%s, false) FROM (SELECT cast('%s' AS DATE) AS dt, cast('%s' AS INTEGER) AS hr, " +
+                    "'%s' AS region, cast('%s' AS TIMESTAMP) AS ts, " +
+                    "cast('%s' AS DECIMAL(10,2)) AS d)", filter, row.get(0), row.get(1), row.get(2), row.get(3), row.get(4));
+            result.add(ConnectionPool.collectFirst(ConnectionPool.getConnection(), sql, Boolean.class));
+        }
+        return result;
+    }
+
+    private static PartitionFilter compile(String filter) throws SQLException, IOException {
+        return PartitionFilter.compile(Transformations.getWhereClause(
+                Transformations.parseToTree("select * from t where " + filter)), partition);
+    }
+
+    @Test
+    public void testSameAsDuckDB() throws SQLException, IOException {
+        for (String filter : List.of("dt = '2024-01-02'", "dt >= date '2024-01-02'", "hr > 4 and hr < 20",
+                "hr in (0, 23)", "hr not in (0, 23)", "hr between 1 and 12", "region = 'eu/west' or region = 'us'",
+                "not (region = 'us')", "region > 'Z'", "region < 'zz'", "dt < ts", "ts > '2024-01-01 12:00:00'",
+                "cast(hr as varchar) = '5'", "hr = '23'", "hr > 4.5", "hr = 5.0", "dt is null", "dt is not null",
+                "hr <> 5 and (dt in ('2024-01-01', '2024-02-01') or region = 'ü')", "true", "false",
+                "d = 1.01", "d = -1.01", "d = '1.005'", "d > 1", "d = 0", "d = 12.50", "cast(d as integer) = 13",
+                "cast(hr as decimal(3,1)) = 5", "cast('1.005' as decimal(10,2)) = d", "cast(d as decimal(10,1)) = 1.0")) {
+            PartitionFilter compiled = compile(filter);
+            List<Boolean> actual = new ArrayList<>();
+            for (List<String> row : rows) {
+                actual.add(compiled.test(compiled.convert(row)));
+            }
+            Assertions.assertEquals(evaluateInDuckDB(filter), actual, filter);
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws SQLException, IOException {
+        for (String filter : List.of("upper(region) = 'US'", "hr + 1 = 2", "other = 1", "hr = null", "try_cast(region as int) = 1",
+                "cast(region as float) = 1", "cast('1000' as tinyint) = hr")) {
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> compile(filter), filter);
+        }
+        // Only the used partitions are converted
+        PartitionFilter filter = compile("region = 'us'");
+        Assertions.assertTrue(filter.test(filter.convert(List.of("not a date", "x", "us", "y", "z"))));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> compile("hr = 1").convert(List.of("2024-01-01", "x", "us", "y", "z")));
+        // Cast is checked against the range of the target type as DuckDB does
+        PartitionFilter tinyint = compile("cast(hr as tinyint) = 1");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> tinyint.test(tinyint.convert(List.of("2024-01-01", "1000", "us", "y", "z"))));
+    }
+}
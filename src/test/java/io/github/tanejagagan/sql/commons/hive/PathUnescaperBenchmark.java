@@ -0,0 +1,121 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListReader;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.complex.reader.VarCharReader;
+import org.apache.arrow.vector.util.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unescapes the partitions of one million paths (dt, region, and a value which is escaped for 1 in 10 paths)
+ * in batches of 1000 the way the listing is read.
+ * legacy is the earlier implementation: Text to String, substring and parseInt per escape and a new Text per value.
+ */
+public class PathUnescaperBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) {
+        int paths = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        try (BufferAllocator allocator = new RootAllocator()) {
+            List<ListVector> plain = batches(allocator, paths, false);
+            List<ListVector> escaped = batches(allocator, paths, true);
+            for (int i = 0; i < 5; i++) {
+                run(allocator, plain, true);
+                run(allocator, plain, false);
+            }
+            System.out.printf("%-25s %10d ms%n", "legacy no escape", run(allocator, plain, true));
+            System.out.printf("%-25s %10d ms%n", "byte level no escape", run(allocator, plain, false));
+            System.out.printf("%-25s %10d ms%n", "legacy escaped", run(allocator, escaped, true));
+            System.out.printf("%-25s %10d ms%n", "byte level escaped", run(allocator, escaped, false));
+            plain.forEach(ListVector::close);
+            escaped.forEach(ListVector::close);
+        }
+    }
+
+    private static List<ListVector> batches(BufferAllocator allocator, int paths, boolean escaped) {
+        List<ListVector> result = new ArrayList<>();
+        for (int start = 0; start < paths; start += BATCH_SIZE) {
+            ListVector vector = ListVector.empty("partitions", allocator);
+            UnionListWriter writer = vector.getWriter();
+            int count = Math.min(BATCH_SIZE, paths - start);
+            for (int i = 0; i < count; i++) {
+                int n = start + i;
+                writer.setPosition(i);
+                writer.startList();
+                writer.writeVarChar(new Text(String.format("2024-%02d-%02d", n % 12 + 1, n % 28 + 1)));
+                writer.writeVarChar(new Text("region-" + n % 17));
+                writer.writeVarChar(new Text(escaped && n % 10 == 0 ? "a%2Fb%20%C3%BC" + n : "value" + n));
+                writer.endList();
+            }
+            vector.setValueCount(count);
+            result.add(vector);
+        }
+        return result;
+    }
+
+    private static long run(BufferAllocator allocator, List<ListVector> batches, boolean legacy) {
+        long start = System.nanoTime();
+        for (ListVector batch : batches) {
+            try (ListVector target = (ListVector) HivePartitionPruning.UNSCAPE_PARTITION_FIELD.createVector(allocator)) {
+                target.allocateNew();
+                target.setValueCount(batch.getValueCount());
+                if (legacy) {
+                    legacy(batch, target);
+                } else {
+                    HivePartitionPruning.UNESCAPE_FN.apply(List.of(batch), target);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static void legacy(ListVector f, ListVector resultVector) {
+        UnionListReader reader = f.getReader();
+        UnionListWriter writer = resultVector.getWriter();
+        for (int i = 0; i < f.getValueCount(); i++) {
+            reader.setPosition(i);
+            writer.startList();
+            writer.setPosition(i);
+            while (reader.next()) {
+                VarCharReader reader1 = reader.reader();
+                Text text = reader1.readText();
+                String res = legacyUnescape(text.toString());
+                writer.writeVarChar(new Text(res));
+            }
+            writer.endList();
+        }
+    }
+
+    private static String legacyUnescape(String path) {
+        StringBuilder sb = new StringBuilder();
+        var i = 0;
+        while (i < path.length()) {
+            var c = path.charAt(i);
+            if (c == '%' && i + 2 < path.length()) {
+                int code;
+                try {
+                    code = Integer.parseInt(path.substring(i + 1, i + 3), 16);
+                } catch (Exception e) {
+                    code = -1;
+                }
+                if (code >= 0) {
+                    sb.append((char) code);
+                    i += 3;
+                } else {
+                    sb.append(c);
+                    i += 1;
+                }
+            } else {
+                sb.append(c);
+                i += 1;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.tanejagagan.sql.commons.hive;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.util.Text;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathUnescaperTest {
+
+    @Test
+    public void testString() {
+        Assertions.assertEquals("abc", PathUnescaper.unescape("abc"));
+        Assertions.assertEquals("a/b c", PathUnescaper.unescape("a%2Fb%20c"));
+        Assertions.assertEquals("a/b", PathUnescaper.unescape("a%2fb"));
+        Assertions.assertEquals("ü=€", PathUnescaper.unescape("%C3%BC%3D%E2%82%AC"));
+        Assertions.assertEquals("ü%", PathUnescaper.unescape("ü%"));
+        // Not valid UTF-8, escaped bytes are characters
+        Assertions.assertEquals("é", PathUnescaper.unescape("%E9"));
+        Assertions.assertEquals("%zz%4", PathUnescaper.unescape("%zz%4"));
+        Assertions.assertEquals("%", PathUnescaper.unescape("%25"));
+        Assertions.assertEquals(PathUnescaper.unescape("%2F"), HivePartitionPruning.unescapePathName("%2F"));
+    }
+
+    private static List<List<String>> unescape(BufferAllocator allocator, List<List<String>> values) {
+        try (ListVector source = ListVector.empty("partitions", allocator);
+             ListVector target = (ListVector) HivePartitionPruning.UNSCAPE_PARTITION_FIELD.createVector(allocator)) {
+            UnionListWriter writer = source.getWriter();
+            for (int i = 0; i < values.size(); i++) {
+                writer.setPosition(i);
+                writer.startList();
+                for (String value : values.get(i)) {
+                    writer.writeVarChar(new Text(value));
+                }
+                writer.endList();
+            }
+            source.setValueCount(values.size());
+            target.allocateNew();
+            HivePartitionPruning.UNESCAPE_FN.apply(List.of(source), target);
+            List<List<String>> result = new ArrayList<>();
+            for (int i = 0; i < target.getValueCount(); i++) {
+                result.add(target.getObject(i).stream().map(Object::toString).toList());
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testVector() {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            List<List<String>> plain = List.of(List.of("2024-01-01", "us"), List.of(), List.of("2024-01-02", "eu-west-1"));
+            Assertions.assertEquals(plain, unescape(allocator, plain));
+            List<List<String>> escaped = List.of(List.of("a%2Fb", "c"), List.of("%C3%BC", "x%E9"), List.of(), List.of("%", "50%25"));
+            Assertions.assertEquals(List.of(List.of("a/b", "c"), List.of("ü", "xé"), List.of(), List.of("%", "50%")),
+                    unescape(allocator, escaped));
+            Assertions.assertEquals(List.of(), unescape(allocator, List.of()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.tanejagagan.sql.commons.planner;
+
+import io.github.tanejagagan.sql.commons.ConnectionPool;
+import io.github.tanejagagan.sql.commons.delta.PartitionPruning;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.github.tanejagagan.sql.commons.SqlRenderer.quoteString;
+
+public class PrunedQueryExecutorTest {
+
+    private static final String HIVE_TABLE = "read_parquet('example/hive_table', hive_partitioning = true, " +
+            "hive_types = {'dt': DATE, 'p': VARCHAR})";
+
+    private static long count(PrunedQueryExecutor.Result result) throws IOException {
+        long rows = 0;
+        while (result.reader().loadNextBatch()) {
+            rows += result.reader().getVectorSchemaRoot().getRowCount();
+        }
+        return rows;
+    }
+
+    @Test
+    public void testHive() throws SQLException, IOException {
+        String sql = "select * from " + HIVE_TABLE + " where dt = '2025-01-01' and key = 'k1'";
+        try (BufferAllocator allocator = new RootAllocator();
+             PrunedQueryExecutor.Result result = PrunedQueryExecutor.execute(sql, allocator, 1000)) {
+            Assertions.assertEquals(List.of(new PrunedQueryExecutor.ScanStats("read_parquet", "example/hive_table", 3, 2)),
+                    result.scans());
+            VectorSchemaRoot root = result.reader().getVectorSchemaRoot();
+            // Partition columns are still part of the output
+            Assertions.assertNotNull(root.getVector("dt"));
+            Assertions.assertNotNull(root.getVector("p"));
+            Assertions.assertEquals(2, count(result));
+            Assertions.assertTrue(result.timings().pruneNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testNoRemainingFile() throws SQLException, IOException {
+        String sql = "select dt, p, key from " + HIVE_TABLE + " h where h.dt = '2023-01-01'";
+        try (BufferAllocator allocator = new RootAllocator();
+             PrunedQueryExecutor.Result result = PrunedQueryExecutor.execute(sql, allocator, 1000)) {
+            Assertions.assertEquals(0, result.scans().get(0).filesAfterPruning());
+            Assertions.assertEquals(3, result.reader().getVectorSchemaRoot().getSchema().getFields().size());
+            Assertions.assertEquals(0, count(result));
+        }
+    }
+
+    @Test
+    public void testJoin() throws SQLException, IOException {
+        String sql = "select * from " + HIVE_TABLE + " h join read_delta('example/delta_table') d on h.key = d.key " +
+                "where h.p = 'x' and d.dt = date '2025-01-01'";
+        try (BufferAllocator allocator = new RootAllocator();
+             PrunedQueryExecutor.Result result = PrunedQueryExecutor.execute(sql, allocator, 1000)) {
+            Assertions.assertEquals(2, result.scans().size());
+            Assertions.assertEquals(1, result.scans().get(0).filesAfterPruning());
+            Assertions.assertEquals(-1, result.scans().get(1).filesBeforePruning());
+            Assertions.assertTrue(result.scans().get(1).filesAfterPruning() < 8);
+            // Same query over all the files of both the tables, DuckDB delta extension may not be available
+            String allFiles = PartitionPruning.pruneFiles("example/delta_table", "", null).stream()
+                    .map(f -> quoteString(f.fileName())).collect(Collectors.joining(", ", "[", "]"));
+            String unpruned = sql.replace("'example/hive_table'", "'example/hive_table/*/*/*.parquet'")
+                    .replace("read_delta('example/delta_table')", "read_parquet(" + allFiles +
+                            ", hive_partitioning = true, hive_types = {'dt': DATE, 'p': VARCHAR})");
+            long expected = ConnectionPool.collectFirst("select count(*) from (" + unpruned + ")", Long.class);
+            Assertions.assertTrue(expected > 0);
+            Assertions.assertEquals(expected, count(result));
+        }
+    }
+
+    @Test
+    public void testDeltaProtocol() throws IOException {
+        Assertions.assertArrayEquals(new String[][]{{"dt", "DATE"}, {"p", "VARCHAR"}},
+                PartitionPruning.getParquetPartitionDataTypes("example/delta_table"));
+        Path source = Path.of("example/delta_table");
+        Path copy = Files.createTempDirectory("duckdb-sql-commons-").resolve("delta_table");
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path p : paths.toList()) {
+                Files.copy(p, copy.resolve(source.relativize(p).toString()));
+            }
+        }
+        // Deletion vectors are applied only by read_delta
+        Files.writeString(copy.resolve("_delta_log/00000000000000000003.json"),
+                "{\"protocol\":{\"minReaderVersion\":3,\"minWriterVersion\":7," +
+                        "\"readerFeatures\":[\"deletionVectors\"],\"writerFeatures\":[\"deletionVectors\"]}}\n");
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> PartitionPruning.getParquetPartitionDataTypes(copy.toString()));
+    }
+}
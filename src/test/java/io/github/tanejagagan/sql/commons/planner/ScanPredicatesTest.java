@@ -0,0 +1,78 @@
+package io.github.tanejagagan.sql.commons.planner;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.tanejagagan.sql.commons.SqlRenderer;
+import io.github.tanejagagan.sql.commons.Transformations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ScanPredicatesTest {
+
+    private static Map<String, String> filters(String sql) throws SQLException, JsonProcessingException {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (ScanPredicates.TableScan scan : ScanPredicates.analyze(Transformations.parseToTree(sql))) {
+            JsonNode filter = scan.filter();
+            result.put(scan.binding(), filter.isNull() ? "" : SqlRenderer.render(filter));
+        }
+        return result;
+    }
+
+    @Test
+    public void testInnerJoin() throws SQLException, JsonProcessingException {
+        String sql = "select * from a join b on a.id = b.id and b.p = 1 " +
+                "where a.dt = '2024-01-01' and a.dt = b.dt and a.x + b.y > 1";
+        Assertions.assertEquals(Map.of(
+                "a", "(\"dt\" = '2024-01-01')",
+                "b", "((\"p\" = 1) AND (\"dt\" = '2024-01-01'))"), filters(sql));
+    }
+
+    @Test
+    public void testOuterJoins() throws SQLException, JsonProcessingException {
+        String left = "select * from a left join b on a.id = b.id and b.p = 1 and a.q = 2 where a.dt = 1 and b.dt = 2";
+        Assertions.assertEquals(Map.of("a", "(\"dt\" = 1)", "b", "(\"p\" = 1)"), filters(left));
+        String right = "select * from a right join b on a.id = b.id and a.p = 1 where b.dt = 2";
+        Assertions.assertEquals(Map.of("a", "(\"p\" = 1)", "b", "(\"dt\" = 2)"), filters(right));
+        String full = "select * from a full join b on a.id = b.id and a.p = 1 where a.dt = 1";
+        Assertions.assertEquals(Map.of("a", "", "b", ""), filters(full));
+    }
+
+    @Test
+    public void testCteAndSubqueries() throws SQLException, JsonProcessingException {
+        String sql = "with c as (select * from read_parquet('x') as r where r.p = 1) " +
+                "select * from c join (select * from t where t.q = 2) s on c.id = s.id " +
+                "where c.z = 3 and c.id in (select id from u where v = 4)";
+        Map<String, String> filters = filters(sql);
+        Assertions.assertEquals(List.of("r", "t", "u"), List.copyOf(filters.keySet()));
+        Assertions.assertEquals("(\"p\" = 1)", filters.get("r"));
+        Assertions.assertEquals("(\"q\" = 2)", filters.get("t"));
+        Assertions.assertEquals("(\"v\" = 4)", filters.get("u"));
+    }
+
+    @Test
+    public void testUnqualifiedColumns() throws SQLException, JsonProcessingException {
+        Assertions.assertEquals(Map.of("t", "(\"p\" = 1)"), filters("select * from t where p = 1 and random() < 0.5"));
+        Assertions.assertEquals(Map.of("a", "", "b", ""), filters("select * from a, b where p = 1"));
+        Assertions.assertEquals(Map.of("a", "(\"p\" = 1)", "b", ""),
+                filters("select * from a where p = 1 union all select * from b where x in (select 1)"));
+    }
+
+    @Test
+    public void testSplitsPerScan() throws SQLException, IOException {
+        String sql = "select * from read_parquet('example/hive_table', hive_partitioning = true, " +
+                "hive_types = {'dt': DATE, 'p': VARCHAR}) as h join read_delta('example/delta_table') as d " +
+                "on h.id = d.id where h.dt = '2025-01-01'";
+        List<ScanPredicates.TableScan> scans = ScanPredicates.analyze(Transformations.parseToTree(sql));
+        Assertions.assertEquals(2, scans.size());
+        var hiveSplits = SplitPlanner.getSplits(scans.get(0), 1024 * 1024 * 1024);
+        Assertions.assertEquals(2, hiveSplits.get(0).size());
+        var deltaSplits = SplitPlanner.getSplits(scans.get(1), 1024 * 1024 * 1024);
+        Assertions.assertEquals(8, deltaSplits.get(0).size());
+    }
+}
@@ -1,10 +1,14 @@
 package io.github.tanejagagan.sql.commons.planner;
 
+import io.github.tanejagagan.sql.commons.FileStatus;
 import io.github.tanejagagan.sql.commons.Transformations;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -31,4 +35,20 @@ public class SplitPlannerTest {
         assertEquals(1, splits.size());
         assertEquals(8, splits.get(0).size());
     }
+
+    @Test
+    public void testForEachSplit() throws SQLException, IOException {
+        var hive = Transformations.parseToTree("select * from read_parquet('example/hive_table', hive_partitioning = true, " +
+                "hive_types = {'dt': DATE, 'p': VARCHAR}) where p = 'b' or dt > '2024-01-01'");
+        var streamed = new ArrayList<List<FileStatus>>();
+        SplitPlanner.forEachSplit(hive, 1, streamed::add);
+        assertEquals(SplitPlanner.getSplits(hive, 1), streamed);
+
+        var delta = Transformations.parseToTree("select * from read_delta('example/delta_table') where p = 'x' or value = 'v1'");
+        var deltaSplits = new ArrayList<List<FileStatus>>();
+        SplitPlanner.forEachSplit(delta, 1, deltaSplits::add);
+        var expected = SplitPlanner.getSplits(delta, 1);
+        assertEquals(expected.size(), deltaSplits.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(deltaSplits));
+    }
 }